@@ -149,6 +149,12 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.LOCKED).body(errBody);
     }
 
+    @ExceptionHandler(BackpressureException.class)
+    public ResponseEntity<Map<String, Object>> handleBackpressure(BackpressureException ex) {
+        var errBody = ApiResponses.GetErrResponse("server is too busy please try again shortly");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errBody);
+    }
+
     @ExceptionHandler(InternalAuthenticationServiceException.class)
     public ResponseEntity<Map<String, Object>> handleAccountLockedException(InternalAuthenticationServiceException ex) {
         if(ex.getCause() instanceof AppLockedException) {
@@ -2,8 +2,22 @@ package com.example.multitenant.common.annotations.contract;
 
 import java.lang.annotation.*;
 
+import org.slf4j.event.Level;
+
+/**
+ * times the method into the 'app.method.duration' histogram and logs its arguments and result with the logger of its class.
+ * nothing is rendered unless that logger has 'level' enabled, then only 'sampleRate' of the calls are logged and every
+ * argument and the result are cut to 'maxLength' characters (collections and maps are rendered element by element up to it).
+ * the method can be turned on and off at runtime through the 'logmethods' actuator endpoint.
+ */
 @Documented
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface LogMethod {
+    Level level() default Level.DEBUG;
+
+    // the fraction of the calls that are logged, between 0 and 1
+    double sampleRate() default 1.0;
+
+    int maxLength() default 200;
 }
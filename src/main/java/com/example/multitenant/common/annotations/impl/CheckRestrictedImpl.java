@@ -13,6 +13,7 @@ import org.springframework.stereotype.Component;
 import com.example.multitenant.common.annotations.contract.CheckRestricted;
 import com.example.multitenant.models.User;
 import com.example.multitenant.services.cache.RestrictionsCacheSerivce;
+import com.example.multitenant.services.security.RequestAuthContextService;
 import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
 
@@ -24,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 @Aspect
 @Component
 public class CheckRestrictedImpl {
+    private final RequestAuthContextService requestAuthContextService;
     private final RestrictionsCacheSerivce restrictionsCacheSerivce;
 
     // * combining both with '||' does not work and make 'checkRestricted' gets received as null on methods
@@ -40,7 +42,7 @@ public class CheckRestrictedImpl {
     private Object checkRestriction(ProceedingJoinPoint joinPoint, CheckRestricted checkRestricted) throws Throwable {
         User user;
         if (!checkRestricted.isWebsocket()) {
-            user = SecurityUtils.getUserFromAuth();
+            user = this.requestAuthContextService.getUser();
         } else {
             var principal = this.extractPrincipalFromJoinPoint(joinPoint);
             user = SecurityUtils.getUserFromPrincipal(principal);
@@ -50,7 +52,10 @@ public class CheckRestrictedImpl {
             throw new AccessDeniedException("user not authenticated");
         }
         
-        var isRestricted = this.restrictionsCacheSerivce.getIsRestricted(user.getId());
+        // there is no security context on the stomp inbound threads, the websocket path asks the cache directly
+        var isRestricted = checkRestricted.isWebsocket()
+            ? this.restrictionsCacheSerivce.getIsRestricted(user.getId())
+            : this.requestAuthContextService.isRestricted(user.getId());
         if (isRestricted) {
             throw new AccessDeniedException("access denied due to restriction");
         }
@@ -1,39 +1,254 @@
 package com.example.multitenant.common.annotations.impl;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 import org.aspectj.lang.annotation.*;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.aspectj.lang.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.example.multitenant.common.annotations.contract.LogMethod;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * the state of every {@link LogMethod} method is built on its first call (logger, timer, parameter names), a call then
+ * costs a map lookup and the timer record unless the logger level is enabled and the call is sampled.
+ * the methods are named 'SimpleClassName.methodName' (the overloads share their state) by the 'logmethods' endpoint.
+ */
 @Slf4j
 @Aspect
 @Component
 public class LogMethodImpl {
+    private static final String TRUNCATED = "...";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final List<String> disabledMethods;
+
+    private final ConcurrentHashMap<Method, MethodState> states = new ConcurrentHashMap<>();
+    // the runtime changes of the methods that were not called yet, applied to their state when it is built
+    private final ConcurrentHashMap<String, Toggle> pendingToggles = new ConcurrentHashMap<>();
+
+    public LogMethodImpl(MeterRegistry meterRegistry,
+        @Value("${app.log-method.enabled:true}") boolean enabled,
+        @Value("${app.log-method.disabled-methods:}") List<String> disabledMethods) {
+
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.disabledMethods = disabledMethods;
+    }
 
     @Pointcut("@annotation(com.example.multitenant.common.annotations.contract.LogMethod)")
     public void loggableMethod() {}
 
     @Around("loggableMethod()")
     public Object logMethodResult(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!this.enabled) {
+            return joinPoint.proceed();
+        }
+
         var method = ((MethodSignature) joinPoint.getSignature()).getMethod();
-        var methodName = method.getName();
+        var state = this.states.computeIfAbsent(method, this::newState);
+        if (!state.enabled) {
+            return joinPoint.proceed();
+        }
+
+        var logged = state.logger.isEnabledForLevel(state.level)
+            && (state.sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < state.sampleRate);
+        if (logged) {
+            state.logger.atLevel(state.level).log("executing method: {} of class: {} with arguments: {}",
+                state.methodName, state.className, this.renderArguments(state, joinPoint.getArgs()));
+        }
+
+        var start = System.nanoTime();
+        try {
+            var result = joinPoint.proceed();
+            if (logged) {
+                state.logger.atLevel(state.level).log("method {} from class {} was executed with result: {}",
+                    state.methodName, state.className, render(result, state.maxLength));
+            }
+
+            return result;
+        } finally {
+            state.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public List<LogMethodView> getMethods() {
+        var views = new ArrayList<LogMethodView>();
+        for (var state : this.states.values()) {
+            views.add(new LogMethodView(state.name, state.enabled, state.sampleRate, state.level, state.maxLength,
+                state.timer.count(), state.timer.mean(TimeUnit.MILLISECONDS), state.timer.max(TimeUnit.MILLISECONDS)));
+        }
+
+        views.sort(Comparator.comparing(LogMethodView::name));
+        return views;
+    }
+
+    /**
+     * turns the method on or off and/or changes its sample rate, a null value keeps the current one.
+     * a method that was not called yet gets the change when it is.
+     */
+    public void update(String name, Boolean enabled, Double sampleRate) {
+        var found = false;
+        for (var state : this.states.values()) {
+            if (state.name.equals(name)) {
+                state.apply(enabled, sampleRate);
+                found = true;
+            }
+        }
+
+        if (!found) {
+            this.pendingToggles.merge(name, new Toggle(enabled, sampleRate), Toggle::merge);
+        }
+
+        log.info("log method {} updated, enabled: {}, sample rate: {}", name, enabled, sampleRate);
+    }
+
+    private MethodState newState(Method method) {
+        var annotation = method.getAnnotation(LogMethod.class);
         var className = method.getDeclaringClass().getSimpleName();
-        var arguments = joinPoint.getArgs();
-        var parameters = method.getParameters();
+        var name = className + "." + method.getName();
+        var parameterNames = Arrays.stream(method.getParameters()).map(Parameter::getName).toArray(String[]::new);
+        var timer = Timer.builder("app.method.duration")
+            .description("execution time of the @LogMethod methods")
+            .tag("class", className)
+            .tag("method", method.getName())
+            .publishPercentileHistogram()
+            .register(this.meterRegistry);
+
+        var state = new MethodState(name, className, method.getName(), parameterNames, LoggerFactory.getLogger(method.getDeclaringClass()),
+            annotation.level(), annotation.maxLength(), timer);
+        state.sampleRate = annotation.sampleRate();
+        state.enabled = !this.disabledMethods.contains(name);
 
+        var toggle = this.pendingToggles.get(name);
+        if (toggle != null) {
+            state.apply(toggle.enabled(), toggle.sampleRate());
+        }
+
+        return state;
+    }
+
+    private String renderArguments(MethodState state, Object[] arguments) {
         var argsLog = new StringBuilder();
         for (int i = 0; i < arguments.length; i++) {
-            argsLog.append(parameters[i].getName()).append(": ").append(arguments[i]).append(" ");
+            argsLog.append(state.parameterNames[i]).append(": ").append(render(arguments[i], state.maxLength)).append(" ");
+        }
+
+        return argsLog.toString();
+    }
+
+    // the value cut to 'maxLength', the elements of a collection, map or array past it are not rendered at all
+    private static String render(Object value, int maxLength) {
+        var out = new StringBuilder();
+        switch (value) {
+            case null -> out.append("null");
+            case Collection<?> collection -> renderElements(out, collection, collection.size(), maxLength, '[', ']');
+            case Map<?, ?> map -> renderElements(out, map.entrySet(), map.size(), maxLength, '{', '}');
+            case Map.Entry<?, ?> entry -> {
+                out.append(render(entry.getKey(), maxLength)).append('=');
+                out.append(render(entry.getValue(), Math.max(1, maxLength - out.length())));
+            }
+            case Object array when array.getClass().isArray() -> {
+                var length = Array.getLength(array);
+                var elements = new ArrayList<Object>();
+                for (int i = 0; i < length && i < maxLength; i++) {
+                    elements.add(Array.get(array, i));
+                }
+
+                renderElements(out, elements, length, maxLength, '[', ']');
+            }
+            default -> {
+                var text = String.valueOf(value);
+                return (text.length() > maxLength) ? text.substring(0, maxLength) + TRUNCATED : text;
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static void renderElements(StringBuilder out, Iterable<?> elements, int size, int maxLength, char open, char close) {
+        out.append("(size=").append(size).append(") ").append(open);
+        var first = true;
+        for (var element : elements) {
+            if (out.length() >= maxLength) {
+                out.append(TRUNCATED);
+                break;
+            }
+
+            if (!first) {
+                out.append(", ");
+            }
+
+            out.append(render(element, maxLength - out.length()));
+            first = false;
         }
 
-        log.info("executing method: {} of class: {} with arguments: {}", methodName, className, argsLog);
-        var result = joinPoint.proceed();
-        log.info("method {} from class {} was executed with result: {}", methodName, className, result.toString());
+        out.append(close);
+    }
+
+    public record LogMethodView(String name, boolean enabled, double sampleRate, Level level, int maxLength,
+        long calls, double meanMillis, double maxMillis) {}
+
+    private record Toggle(Boolean enabled, Double sampleRate) {
+        Toggle merge(Toggle next) {
+            return new Toggle((next.enabled != null) ? next.enabled : this.enabled,
+                (next.sampleRate != null) ? next.sampleRate : this.sampleRate);
+        }
+    }
 
-        return result;
+    private static class MethodState {
+        private final String name;
+        private final String className;
+        private final String methodName;
+        private final String[] parameterNames;
+        private final Logger logger;
+        private final Level level;
+        private final int maxLength;
+        private final Timer timer;
+        private volatile boolean enabled;
+        private volatile double sampleRate;
+
+        MethodState(String name, String className, String methodName, String[] parameterNames, Logger logger, Level level,
+            int maxLength, Timer timer) {
+
+            this.name = name;
+            this.className = className;
+            this.methodName = methodName;
+            this.parameterNames = parameterNames;
+            this.logger = logger;
+            this.level = level;
+            this.maxLength = maxLength;
+            this.timer = timer;
+        }
+
+        void apply(Boolean enabled, Double sampleRate) {
+            if (enabled != null) {
+                this.enabled = enabled;
+            }
+
+            if (sampleRate != null) {
+                this.sampleRate = sampleRate;
+            }
+        }
     }
-}
\ No newline at end of file
+}
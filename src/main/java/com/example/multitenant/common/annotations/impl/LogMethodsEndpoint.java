@@ -0,0 +1,40 @@
+package com.example.multitenant.common.annotations.impl;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.example.multitenant.common.annotations.impl.LogMethodImpl.LogMethodView;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * '/actuator/logmethods': the {@link LogMethodImpl} methods called so far with their settings and timings.
+ * POST '/actuator/logmethods/{name}' with '{"enabled": false}' and/or '{"sampleRate": 0.01}' changes a method on this node.
+ */
+@RequiredArgsConstructor
+@Component
+@Endpoint(id = "logmethods")
+public class LogMethodsEndpoint {
+    private final LogMethodImpl logMethodImpl;
+
+    @ReadOperation
+    public List<LogMethodView> methods() {
+        return this.logMethodImpl.getMethods();
+    }
+
+    @WriteOperation
+    public void update(@Selector String name, @Nullable Boolean enabled, @Nullable Double sampleRate) {
+        if (sampleRate != null && (sampleRate < 0 || sampleRate > 1)) {
+            throw new InvalidEndpointRequestException("sample rate must be between 0 and 1", "invalid sample rate");
+        }
+
+        this.logMethodImpl.update(name, enabled, sampleRate);
+    }
+}
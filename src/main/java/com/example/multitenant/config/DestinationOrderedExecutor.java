@@ -0,0 +1,57 @@
+package com.example.multitenant.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+/**
+ * runs the messages of the broker channel off the publisher thread while keeping their order per destination:
+ * the destination picks one of 'stripes' serial virtual threads, so two publishes to the same destination (a topic or
+ * the resolved queue of a session) are handled in the order they were sent and different destinations run in parallel.
+ */
+class DestinationOrderedExecutor implements Executor {
+    private final ExecutorService[] stripes;
+
+    DestinationOrderedExecutor(String threadNamePrefix, int stripes) {
+        this.stripes = new ExecutorService[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = Executors.newSingleThreadExecutor(Thread.ofVirtual().name(threadNamePrefix + i).factory());
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String destination = null;
+        if (task instanceof MessageHandlingRunnable runnable) {
+            destination = SimpMessageHeaderAccessor.getDestination(runnable.getMessage().getHeaders());
+        }
+
+        var stripe = (destination != null) ? Math.floorMod(destination.hashCode(), this.stripes.length) : 0;
+        this.stripes[stripe].execute(task);
+    }
+
+    // the messages already queued on a stripe are still delivered, the wait is shared by all the stripes
+    void shutdown(long timeoutMillis) {
+        for (var stripe : this.stripes) {
+            stripe.shutdown();
+        }
+
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (var stripe : this.stripes) {
+                if (!stripe.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    stripe.shutdownNow();
+                }
+            }
+        } catch (InterruptedException ex) {
+            for (var stripe : this.stripes) {
+                stripe.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
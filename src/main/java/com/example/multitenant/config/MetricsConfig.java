@@ -0,0 +1,19 @@
+package com.example.multitenant.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.multitenant.services.metrics.TenantMetricTags;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+
+    // with the opt-in tenant id tag, the tenants past the limit are not recorded instead of growing the series without bound
+    @Bean
+    MeterFilter tenantTagLimitMeterFilter(@Value("${app.metrics.tenant-id-tag.max-values:1000}") int maxTenants) {
+        return MeterFilter.maximumAllowableTags("app.", TenantMetricTags.TENANT_TAG, maxTenants, MeterFilter.deny());
+    }
+}
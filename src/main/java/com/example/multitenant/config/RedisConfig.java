@@ -1,24 +1,35 @@
 package com.example.multitenant.config;
 
+import java.time.Duration;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisIndexedHttpSession;
 
+import com.example.multitenant.services.cache.NearCacheService;
+
 import io.github.bucket4j.distributed.proxy.ProxyManager;
 import io.github.bucket4j.redis.lettuce.Bucket4jLettuce;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.codec.*;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
 
 
 @Configuration(proxyBeanMethods = false)
@@ -40,16 +51,37 @@ public class RedisConfig {
     @Value("${spring.data.redis.ssl.enabled}")
     private boolean isSsl;
 
+    /*
+     * shared by every lettuce client of the app, each redis command is timed into the 'lettuce.command.completion' and
+     * 'lettuce.command.firstresponse' histograms tagged by command type and redis node (not by key)
+     */
+    @Bean(destroyMethod = "shutdown")
+    ClientResources lettuceClientResources(MeterRegistry meterRegistry,
+        @Value("${app.metrics.redis.histogram:true}") boolean histogram,
+        @Value("${app.metrics.redis.max-latency:PT5S}") Duration maxLatency) {
+
+        var options = MicrometerOptions.builder()
+            .histogram(histogram)
+            .localDistinction(false)
+            .maxLatency(maxLatency)
+            .build();
+
+        return ClientResources.builder()
+            .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry, options))
+            .build();
+    }
+
     // for sessions and spring JPA and also redis-templates
     @Bean
-    LettuceConnectionFactory connectionFactory() {
+    LettuceConnectionFactory connectionFactory(ClientResources clientResources) {
         var config = new RedisStandaloneConfiguration();
         config.setHostName(host);
         config.setPort(port);
         config.setPassword(password);
         config.setDatabase(database);
 
-        var clientConfigBuilder = LettuceClientConfiguration.builder();
+        var clientConfigBuilder = LettuceClientConfiguration.builder()
+            .clientResources(clientResources);
             
         if(isSsl) {
             clientConfigBuilder.useSsl();
@@ -62,8 +94,8 @@ public class RedisConfig {
 
     // this is only used with the Bucket4j
     @Bean
-    ProxyManager<String> lettuceBasedProxyManager() {
-        RedisClient redisClient = redisClient();
+    ProxyManager<String> lettuceBasedProxyManager(ClientResources clientResources) {
+        RedisClient redisClient = redisClient(clientResources);
         StatefulRedisConnection<String, byte[]> redisStatefulConnection = redisClient
             .connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
 
@@ -71,8 +103,8 @@ public class RedisConfig {
             .build();
     }
     
-    RedisClient redisClient() {
-        return RedisClient.create(RedisURI.builder()
+    RedisClient redisClient(ClientResources clientResources) {
+        return RedisClient.create(clientResources, RedisURI.builder()
             .withHost(host)
             .withPort(port)
             .withDatabase(database)
@@ -80,32 +112,37 @@ public class RedisConfig {
             .build());
     }
 
+    // values are encoded/decoded by the CacheValueCodec, the template only moves the raw bytes
     @Bean
-    RedisTemplate<String, Object> generalRedisTemplate(RedisConnectionFactory connectionFactory) {
-        var template = new RedisTemplate<String, Object>();
+    RedisTemplate<String, byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        var template = new RedisTemplate<String, byte[]>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
-        // template.setDefaultSerializer(new Jackson2JsonRedisSerializer<>(Object.class));
+        template.setValueSerializer(RedisSerializer.byteArray());
 
         return template;
     }
 
+    // cross-node pub/sub subscriptions (near-cache invalidations, websocket fan-out).
+    // the listeners run on the subscription thread in the order the messages were received, by default every message
+    // gets a thread of its own and two fanned out messages to the same destination could be delivered out of order.
+    // the listeners only hand the message over (near-cache eviction, broker channel), they do not block it
     @Bean
-    RedisTemplate<String, Long> counterRedisTemplate(RedisConnectionFactory connectionFactory) {
-        var template = new RedisTemplate<String, Long>();
-        template.setConnectionFactory(connectionFactory);
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new GenericToStringSerializer<>(Long.class));
+    RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory, NearCacheService nearCacheService) {
+        var container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(new SyncTaskExecutor());
+        container.addMessageListener(nearCacheService, new ChannelTopic(NearCacheService.INVALIDATION_CHANNEL));
 
-        return template;
+        return container;
     }
 
     @Bean
-    RedisTemplate<String, Boolean> booleanRedisTemplate(RedisConnectionFactory connectionFactory) {
-        var template = new RedisTemplate<String, Boolean>();
+    RedisTemplate<String, Long> counterRedisTemplate(RedisConnectionFactory connectionFactory) {
+        var template = new RedisTemplate<String, Long>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new GenericToStringSerializer<>(Boolean.class));
+        template.setValueSerializer(new GenericToStringSerializer<>(Long.class));
 
         return template;
     }
@@ -28,6 +28,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import com.example.multitenant.dtos.auth.UserPrincipal;
 import com.example.multitenant.models.User;
 import com.example.multitenant.services.security.CustomUserDetailsService;
+import com.example.multitenant.services.security.GlobalPermissions;
 
 @Configuration
 @EnableJpaAuditing(auditorAwareRef = "auditorProvider")
@@ -67,6 +68,9 @@ public class SecurityConfig {
             auth.requestMatchers("/api/organizations").authenticated();
             auth.requestMatchers("/webhook").permitAll();
             auth.requestMatchers("/api/auth/login", "/api/auth/register").anonymous();
+            auth.requestMatchers("/actuator/logmethods/**").hasAuthority(GlobalPermissions.DASH_OBSERVABILITY_MANAGE);
+            // the scraper authenticates (http basic) as a user with the observability permission
+            auth.requestMatchers("/actuator/prometheus").hasAuthority(GlobalPermissions.DASH_OBSERVABILITY_MANAGE);
 
             // we are using `PreAuthorize` instead
             auth.requestMatchers("/**").permitAll();
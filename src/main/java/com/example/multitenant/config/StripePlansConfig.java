@@ -4,6 +4,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.example.multitenant.exceptions.AppStripeException;
+import com.example.multitenant.models.enums.RateLimitBucket;
 import com.example.multitenant.models.enums.StripeLimit;
 import com.example.multitenant.models.enums.StripePlan;
 
@@ -68,6 +69,31 @@ public class StripePlansConfig {
     @Value("${stripe.tiers.enterprise.org-category-channels}")
     private Integer enterpriseMaxCategoryChannels;
 
+    // tenant requests per rate limit period (app.rate-limit.period), shared by all the tenant users
+    @Value("${stripe.tiers.free.rate-limit.general}")
+    private Integer freeRateLimitGeneral;
+
+    @Value("${stripe.tiers.free.rate-limit.write}")
+    private Integer freeRateLimitWrite;
+
+    @Value("${stripe.tiers.starter.rate-limit.general}")
+    private Integer starterRateLimitGeneral;
+
+    @Value("${stripe.tiers.starter.rate-limit.write}")
+    private Integer starterRateLimitWrite;
+
+    @Value("${stripe.tiers.pro.rate-limit.general}")
+    private Integer proRateLimitGeneral;
+
+    @Value("${stripe.tiers.pro.rate-limit.write}")
+    private Integer proRateLimitWrite;
+
+    @Value("${stripe.tiers.enterprise.rate-limit.general}")
+    private Integer enterpriseRateLimitGeneral;
+
+    @Value("${stripe.tiers.enterprise.rate-limit.write}")
+    private Integer enterpriseRateLimitWrite;
+
     @PostConstruct
     public void validateConfig() {
         validate(starterMaxCategories, "starter org-max-categories");
@@ -89,6 +115,15 @@ public class StripePlansConfig {
         validate(freeMaxRoles, "free org-max-roles");
         validate(freeMaxMembers, "free org-max-members");
         validate(freeMaxCategoryChannels, "free org-max-category-channels");
+
+        validate(freeRateLimitGeneral, "free rate-limit.general");
+        validate(freeRateLimitWrite, "free rate-limit.write");
+        validate(starterRateLimitGeneral, "starter rate-limit.general");
+        validate(starterRateLimitWrite, "starter rate-limit.write");
+        validate(proRateLimitGeneral, "pro rate-limit.general");
+        validate(proRateLimitWrite, "pro rate-limit.write");
+        validate(enterpriseRateLimitGeneral, "enterprise rate-limit.general");
+        validate(enterpriseRateLimitWrite, "enterprise rate-limit.write");
     }
 
     public Integer getMaxAllowed(StripeLimit limit, StripePlan plan) {
@@ -125,6 +160,28 @@ public class StripePlansConfig {
         };
     }
 
+    public Integer getTenantRateLimit(RateLimitBucket bucket, StripePlan plan) {
+        if (bucket == null || plan == null) {
+            throw new IllegalArgumentException("bucket and plan must not be null");
+        }
+
+        return switch (bucket) {
+            case GENERAL -> switch (plan) {
+                case STARTER -> this.getStarterRateLimitGeneral();
+                case PRO -> this.getProRateLimitGeneral();
+                case ENTERPRISE -> this.getEnterpriseRateLimitGeneral();
+                case FREE -> this.getFreeRateLimitGeneral();
+            };
+            case WRITE -> switch (plan) {
+                case STARTER -> this.getStarterRateLimitWrite();
+                case PRO -> this.getProRateLimitWrite();
+                case ENTERPRISE -> this.getEnterpriseRateLimitWrite();
+                case FREE -> this.getFreeRateLimitWrite();
+            };
+            default -> throw new IllegalArgumentException("bucket is not tenant scoped: " + bucket);
+        };
+    }
+
     private void validate(Integer value, String configName) {
         if (value == null) {
             var errMsg = "missing stripe config value: " + configName;
@@ -1,25 +1,138 @@
 package com.example.multitenant.config;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.http.server.*;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.*;
 
+import com.example.multitenant.models.enums.WebSocketBrokerMode;
+import com.example.multitenant.models.enums.WebSocketExecutorMode;
+import com.example.multitenant.services.websocket.WebSocketSessionMetricsDecoratorFactory;
+
+import jakarta.annotation.PreDestroy;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private static final int BROKER_STRIPES = 64;
+    private static final long BROKER_SHUTDOWN_TIMEOUT_MS = 5000;
+
+    @Value("${app.websocket.broker:SIMPLE}")
+    private WebSocketBrokerMode brokerMode;
+
+    @Value("${app.websocket.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.relay.port:61613}")
+    private Integer relayPort;
+
+    @Value("${app.websocket.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${app.websocket.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${app.websocket.relay.virtual-host:/}")
+    private String relayVirtualHost;
+
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private Integer sendBufferSizeLimit;
+
+    @Value("${app.websocket.send-time-limit:PT10S}")
+    private Duration sendTimeLimit;
+
+    @Value("${app.websocket.channels.inbound-executor:POOL}")
+    private WebSocketExecutorMode inboundExecutor;
+
+    @Value("${app.websocket.channels.outbound-executor:POOL}")
+    private WebSocketExecutorMode outboundExecutor;
+
+    @Value("${app.websocket.channels.broker-executor:POOL}")
+    private WebSocketExecutorMode brokerExecutor;
+
+    @Autowired
+    private WebSocketSessionMetricsDecoratorFactory sessionMetricsDecoratorFactory;
+
+    // created by the broker registration, it is not a bean so its stripes are shut down with this configuration
+    private DestinationOrderedExecutor brokerChannelExecutor;
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // a virtual thread per message has no ordering of its own, the messages of a session are handed over one at a time
+        registry.setPreserveReceiveOrder(this.inboundExecutor == WebSocketExecutorMode.VIRTUAL);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
 
+    // slow subscribers are disconnected once their buffered frames exceed the limits instead of growing the heap
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registry) {
+        registry.setSendBufferSizeLimit(this.sendBufferSizeLimit)
+            .setSendTimeLimit((int) this.sendTimeLimit.toMillis())
+            .addDecoratorFactory(this.sessionMetricsDecoratorFactory);
+    }
+
+    // the handlers do blocking jpa/redis work, on virtual threads a slow database no longer exhausts the inbound pool
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (this.inboundExecutor == WebSocketExecutorMode.VIRTUAL) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (this.outboundExecutor == WebSocketExecutorMode.VIRTUAL) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-outbound-"));
+        }
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/user", "/queue");
+        if (this.brokerMode == WebSocketBrokerMode.RELAY) {
+            registry.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(this.relayHost)
+                .setRelayPort(this.relayPort)
+                .setClientLogin(this.relayLogin)
+                .setClientPasscode(this.relayPasscode)
+                .setSystemLogin(this.relayLogin)
+                .setSystemPasscode(this.relayPasscode)
+                .setVirtualHost(this.relayVirtualHost)
+                // user destinations that are not resolved on this node are broadcasted to the other nodes,
+                // and the user sessions registry is shared so 'convertAndSendToUser' finds users connected elsewhere
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/simp-user-registry");
+        } else {
+            // the REDIS mode keeps a local broker, the fan-out happens in the WebSocketFanoutService
+            registry.enableSimpleBroker("/topic", "/user", "/queue");
+        }
+
+        // the frames sent to a session keep the order they were published in whatever executor delivers them
+        registry.setPreservePublishOrder(this.outboundExecutor == WebSocketExecutorMode.VIRTUAL
+            || this.brokerExecutor == WebSocketExecutorMode.VIRTUAL);
+
+        // the broker channel is synchronous by default, on virtual threads the publisher does not wait for the fan-out
+        // and the publishes to the same destination still reach the broker in order
+        if (this.brokerExecutor == WebSocketExecutorMode.VIRTUAL) {
+            this.brokerChannelExecutor = new DestinationOrderedExecutor("ws-broker-", BROKER_STRIPES);
+            registry.configureBrokerChannel().executor(this.brokerChannelExecutor);
+        }
+
         registry.setApplicationDestinationPrefixes("/app");
         registry.setUserDestinationPrefix("/user");
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void shutdownBrokerChannelExecutor() {
+        if (this.brokerChannelExecutor != null) {
+            this.brokerChannelExecutor.shutdown(BROKER_SHUTDOWN_TIMEOUT_MS);
+        }
+    }
+}
@@ -41,9 +41,9 @@ public class ChannelsController {
     public ResponseEntity<Object> getChannelById(@PathVariable @ValidateNumberId Integer id, @PathVariable @ValidateNumberId Integer categoryId) {
         var tenantId = AppUtils.getTenantId();
         
-        // null case handled inside
-        var channel = this.channelsService.findWithMessagesByIdAndOrganizationId(id, tenantId, categoryId);
-        var bodyResponse = ApiResponses.OneKey("channel", channel.toViewDTOWithMessages());
+        // null case handled inside, the messages are paginated by the channel messages endpoint
+        var channel = this.channelsService.findByIdAndOrganizationId(id, tenantId, categoryId);
+        var bodyResponse = ApiResponses.OneKey("channel", channel.toViewDTO());
         
         return ResponseEntity.ok(bodyResponse);
     }
@@ -101,7 +101,7 @@ public class ChannelsController {
         var tenantId = AppUtils.getTenantId();
 
         this.channelsService.delete(id, tenantId, categoryId);
-        this.subscriptionLimitChecker.decrementCategoryChannelsCount(id, categoryId);
+        this.subscriptionLimitChecker.decrementCategoryChannelsCount(tenantId, categoryId);
         
         return ResponseEntity.noContent().build();
     }
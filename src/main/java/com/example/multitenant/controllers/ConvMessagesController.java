@@ -4,22 +4,29 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.multitenant.common.annotations.contract.CheckRestricted;
+import com.example.multitenant.common.resolvers.contract.HandleSize;
 import com.example.multitenant.common.validators.contract.ValidateNumberId;
+import com.example.multitenant.dtos.apiresponse.ApiResponses;
 import com.example.multitenant.dtos.conversationmessages.ConversationMessageUpdateDTO;
 import com.example.multitenant.dtos.messages.OrgMessageUpdateDTO;
 import com.example.multitenant.models.User;
+import com.example.multitenant.services.conversations.ConversationInboxService;
 import com.example.multitenant.services.conversations.ConversationsService;
 import com.example.multitenant.services.websocket.WebSocketService;
 import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
 
+import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -33,7 +40,32 @@ import lombok.extern.slf4j.Slf4j;
 public class ConvMessagesController {
     private final WebSocketService webSocketService;
     private final ConversationsService conversationsService;
+    private final ConversationInboxService conversationInboxService;
 
+    // the conversations of the current user, the most recently active first
+    @GetMapping("")
+    public ResponseEntity<Object> getInbox(@RequestParam(required = false) String cursor,
+        @HandleSize @RequestParam(defaultValue = "20") Integer size) {
+
+        var user = SecurityUtils.getUserFromAuth();
+        var page = this.conversationInboxService.getInbox(user.getId(), cursor, size);
+
+        var body = ApiResponses.CursorResponse("conversations", page.getData(), page.isHasNext(), page.getNextCursor());
+        body.put("unreadConversations", this.conversationInboxService.countUnreadConversations(user.getId()));
+
+        return ResponseEntity.ok(body);
+    }
+
+    @PatchMapping("/{conversationId}/read")
+    public ResponseEntity<Void> markAsRead(@ValidateNumberId @PathVariable Integer conversationId) {
+        var user = SecurityUtils.getUserFromAuth();
+        this.conversationInboxService.markAsRead(user.getId(), conversationId);
+
+        return ResponseEntity.noContent().build();
+    }
+
+    // the websocket message is recorded in the transaction of the update (outbox)
+    @Transactional
     @PutMapping("/{conversationId}/message/{messageId}")
     public ResponseEntity<Object> updateMessageContent(
         @ValidateNumberId @PathVariable Integer messageId,
@@ -51,6 +83,7 @@ public class ConvMessagesController {
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
     }
 
+    @Transactional
     @DeleteMapping("/{conversationId}/message/{messageId}")
     public ResponseEntity<Object> deleteMessage(@ValidateNumberId @PathVariable Integer messageId,
         @ValidateNumberId @PathVariable Integer conversationId) {
@@ -12,6 +12,7 @@ import com.example.multitenant.models.enums.InvitiationAction;
 import com.example.multitenant.models.enums.LogEventType;
 import com.example.multitenant.services.invitations.InvitationsService;
 import com.example.multitenant.services.logs.LogsService;
+import com.example.multitenant.services.websocket.PresenceService;
 import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
 
@@ -28,6 +29,7 @@ import org.springframework.web.bind.annotation.*;
 public class InvitationsController {
     private final InvitationsService invitationsService;
     private final LogsService logsService;
+    private final PresenceService presenceService;
 
     @GetMapping("")
     public ResponseEntity<Object> getYourInvitiations(Integer cursor, @ValidateSize Integer size) {
@@ -114,6 +116,7 @@ public class InvitationsController {
         }
 
         this.invitationsService.acceptInvitationAndCreateMembership(inv);
+        this.presenceService.joinOrganization(orgId, inv.getRecipientId());
         this.logsService.createInvitationLog(user, inv.getRecipientId(), orgId, LogEventType.INVITE_ACCEPTED);
 
         return ResponseEntity.accepted().build();
@@ -3,12 +3,15 @@ package com.example.multitenant.controllers;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 
 import com.example.multitenant.common.annotations.contract.CheckRestricted;
+import com.example.multitenant.common.resolvers.contract.HandleSize;
 import com.example.multitenant.common.validators.contract.ValidateNumberId;
 import com.example.multitenant.dtos.messages.*;
 import com.example.multitenant.models.enums.LogEventType;
+import com.example.multitenant.services.channels.ChannelsService;
 import com.example.multitenant.services.logs.LogsService;
 import com.example.multitenant.services.messages.OrgMessagesService;
 import com.example.multitenant.services.websocket.WebSocketService;
@@ -16,6 +19,7 @@ import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
 import com.github.javafaker.App;
 
+import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -30,9 +34,30 @@ import org.springframework.web.bind.annotation.*;
 public class OrgMessagesController {
 
     private final OrgMessagesService messagesService;
+    private final ChannelsService channelsService;
     private final WebSocketService webSocketService;
     private final LogsService logsService;
     
+    @GetMapping("")
+    @PreAuthorize("@customSPEL.hasOrgAuthority(@orgPermissions.CATEGORY_VIEW)" + " and @customSPEL.hasCategoryAccess(#categoryId)")
+    public ResponseEntity<Object> getChannelMessages(
+        @ValidateNumberId @PathVariable Integer categoryId,
+        @ValidateNumberId @PathVariable Integer channelId,
+        @RequestParam(required = false) Integer before,
+        @RequestParam(required = false) Integer after,
+        @HandleSize(defaultSize = 50) @RequestParam(defaultValue = "50") Integer size) {
+
+        var tenantId = AppUtils.getTenantId();
+
+        // null case and category mismatch handled inside
+        this.channelsService.findByIdAndOrganizationId(channelId, tenantId, categoryId);
+        var page = this.messagesService.getChannelHistory(channelId, tenantId, before, after, size);
+
+        return ResponseEntity.ok(page.toApiResponse("messages", null));
+    }
+
+    // the websocket message is recorded in the transaction of the update (outbox)
+    @Transactional
     @PutMapping("/{id}")
     public ResponseEntity<Object> updateMessageContent(
         @ValidateNumberId @PathVariable(name = "id") Integer messageId,
@@ -50,6 +75,7 @@ public class OrgMessagesController {
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
     }
 
+    @Transactional
     @DeleteMapping("/{id}")
     public ResponseEntity<Object> deleteMessage(
         @ValidateNumberId @PathVariable(name = "id") Integer messageId,
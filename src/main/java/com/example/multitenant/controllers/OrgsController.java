@@ -13,6 +13,7 @@ import com.example.multitenant.services.files.FilesService;
 import com.example.multitenant.services.logs.LogsService;
 import com.example.multitenant.services.membership.MemberShipService;
 import com.example.multitenant.services.organizations.OrgsService;
+import com.example.multitenant.services.websocket.PresenceService;
 import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
 
@@ -39,6 +40,7 @@ public class OrgsController {
     private final OrgsService organizationsService;
     private final MemberShipService memberShipService;
     private final LogsService logsService;
+    private final PresenceService presenceService;
 
     @CheckRestricted
     @PostMapping("")
@@ -65,6 +67,16 @@ public class OrgsController {
         return ResponseEntity.ok(body);
     }
 
+    // ids of the members connected to the websocket endpoint, the changes are pushed to '/topic/tenants/{id}/presence'
+    @GetMapping("/members/online")
+    @PreAuthorize("@customSPEL.hasOrgAuthority(@orgPermissions.CATEGORY_VIEW)")
+    public ResponseEntity<Object> getOnlineMembers() {
+        var orgId = AppUtils.getTenantId();
+        var body = ApiResponses.OneKey("onlineMembers", this.presenceService.getOnlineMemberIds(orgId));
+
+        return ResponseEntity.ok(body);
+    }
+
     @CheckRestricted
     @PatchMapping("/memberships/{userId}/kick")
     @PreAuthorize("@customSPEL.hasOrgAuthority(@orgPermissions.USER_KICK)")
@@ -73,6 +85,7 @@ public class OrgsController {
         var user = SecurityUtils.getUserFromAuth();
         
         this.memberShipService.kickUserFromOrganization(orgId, userId);
+        this.presenceService.leaveOrganization(orgId, userId);
         this.logsService.createKickLog(user, userId, orgId, LogEventType.KICK);
 
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
@@ -84,6 +97,7 @@ public class OrgsController {
         var user = SecurityUtils.getUserFromAuth();
 
         this.memberShipService.kickUserFromOrganization(orgId, user.getId());
+        this.presenceService.leaveOrganization(orgId, user.getId());
         this.logsService.createMembershipLog(user, orgId, LogEventType.LEAVE);
 
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
@@ -14,11 +14,13 @@ import com.example.multitenant.common.annotations.contract.CheckRestricted;
 import com.example.multitenant.dtos.auth.UserPrincipal;
 import com.example.multitenant.dtos.conversationmessages.ConversationMessageCreateDTO;
 import com.example.multitenant.dtos.messages.*;
+import com.example.multitenant.dtos.websocket.ReadReceiptDTO;
 import com.example.multitenant.exceptions.UnauthorizedUserException;
 import com.example.multitenant.models.User;
 import com.example.multitenant.services.conversations.ConversationsService;
 import com.example.multitenant.services.messages.OrgMessagesService;
 import com.example.multitenant.services.users.UsersService;
+import com.example.multitenant.services.websocket.ChatActivityService;
 import com.example.multitenant.services.websocket.WebSocketService;
 import com.example.multitenant.utils.AppUtils;
 import com.example.multitenant.utils.SecurityUtils;
@@ -35,7 +37,11 @@ public class WebSocketMessagesController {
     private final OrgMessagesService orgMessagesService;
     private final WebSocketService webSocketService;
     private final ConversationsService conversationsService;
+    private final ChatActivityService chatActivityService;
 
+    // the websocket message is recorded in the transaction of the new message (outbox), a message buffered by the
+    // write-behind is not inserted yet and its event goes to the in-memory queue instead
+    @Transactional
     @CheckRestricted(isWebsocket = true)
     @MessageMapping("/tenants/{tenantId}/categories/{categoryId}/channels/{channelId}/send")
     public void handleSendMessageToChannel(@Payload @Validated OrgMessageCreateDTO payload,
@@ -51,7 +57,11 @@ public class WebSocketMessagesController {
             message.setSender(user);
 
             var createdMsg = this.orgMessagesService.create(message, channelId, tenantId);
-            this.webSocketService.publishNewOrgMessage(createdMsg, tenantId, categoryId);
+            if (this.orgMessagesService.isWriteBehindEnabled()) {
+                this.webSocketService.publishBufferedOrgMessage(createdMsg, tenantId, categoryId);
+            } else {
+                this.webSocketService.publishNewOrgMessage(createdMsg, tenantId, categoryId);
+            }
             
         } else {
             log.error("user was not found during attempt to fetch it from principal");
@@ -59,6 +69,8 @@ public class WebSocketMessagesController {
         }
     }
 
+    // the websocket message is recorded in the transaction of the new message (outbox)
+    @Transactional
     @CheckRestricted(isWebsocket = true)
     @MessageMapping("/conversations/{conversationId}")
     public void handleSendMessageToUser(@Payload @Validated ConversationMessageCreateDTO payload,
@@ -83,10 +95,55 @@ public class WebSocketMessagesController {
         }
     }
 
+    // typing indicators and read receipts are aggregated and sent in periodic activity frames, nothing is persisted
+    @CheckRestricted(isWebsocket = true)
+    @MessageMapping("/tenants/{tenantId}/categories/{categoryId}/channels/{channelId}/typing")
+    public void handleChannelTyping(@DestinationVariable Integer tenantId, @DestinationVariable Integer categoryId,
+        @DestinationVariable Integer channelId, Principal principal) {
+
+        var user = this.getUser(principal);
+        this.chatActivityService.channelTyping(tenantId, categoryId, channelId, user.getId());
+    }
+
+    @CheckRestricted(isWebsocket = true)
+    @MessageMapping("/tenants/{tenantId}/categories/{categoryId}/channels/{channelId}/read")
+    public void handleChannelRead(@Payload @Validated ReadReceiptDTO payload, @DestinationVariable Integer tenantId,
+        @DestinationVariable Integer categoryId, @DestinationVariable Integer channelId, Principal principal) {
+
+        var user = this.getUser(principal);
+        this.chatActivityService.channelRead(tenantId, categoryId, channelId, user.getId(), payload.getMessageId());
+    }
+
+    @CheckRestricted(isWebsocket = true)
+    @MessageMapping("/conversations/{conversationId}/typing")
+    public void handleConversationTyping(@DestinationVariable Integer conversationId, Principal principal) {
+        var user = this.getUser(principal);
+        this.chatActivityService.conversationTyping(conversationId, user);
+    }
+
+    @CheckRestricted(isWebsocket = true)
+    @MessageMapping("/conversations/{conversationId}/read")
+    public void handleConversationRead(@Payload @Validated ReadReceiptDTO payload,
+        @DestinationVariable Integer conversationId, Principal principal) {
+
+        var user = this.getUser(principal);
+        this.chatActivityService.conversationRead(conversationId, user, payload.getMessageId());
+    }
+
     @MessageExceptionHandler
     @SendToUser("/queue/errors")
     public String handleException(Throwable exception) {
         log.warn("websocket error occurred: {}", exception.getMessage());
         return exception.getMessage();
     }
+
+    private User getUser(Principal principal) {
+        var user = SecurityUtils.getUserFromPrincipal(principal);
+        if(user == null) {
+            log.error("user was not found during attempt to fetch it from principal");
+            throw new UnauthorizedUserException("unauthorized");
+        }
+
+        return user;
+    }
 }
@@ -0,0 +1,42 @@
+package com.example.multitenant.controllers.dashboard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.multitenant.common.annotations.contract.CheckRestricted;
+import com.example.multitenant.dtos.apiresponse.ApiResponses;
+import com.example.multitenant.services.cache.CacheWarmupService;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@CheckRestricted
+@Slf4j
+@Validated
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/api/dashboard/cache")
+public class AppDashboardCacheController {
+    private final CacheWarmupService cacheWarmupService;
+
+    @PostMapping("/warmup")
+    @PreAuthorize("hasAuthority(@globalPermissions.DASH_CACHE_WARMUP)")
+    public ResponseEntity<Object> warmUpCaches(
+        @Min(value = 1, message = "tenants must be at least {value}")
+        @Max(value = 1000, message = "tenants must be at most {value}")
+        @RequestParam(name = "tenants", required = false) Integer tenants) {
+
+        var limit = tenants == null ? this.cacheWarmupService.getTenantsCount() : tenants;
+        var result = this.cacheWarmupService.warmUp(limit);
+        if(result == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiResponses.GetErrResponse("cache warm-up is already running"));
+        }
+
+        return ResponseEntity.ok().body(ApiResponses.OneKey("warmup", result));
+    }
+}
@@ -19,6 +19,7 @@ import com.example.multitenant.dtos.organizations.OrgUpdateDTO;
 import com.example.multitenant.exceptions.InvalidOperationException;
 import com.example.multitenant.exceptions.ResourceNotFoundException;
 import com.example.multitenant.models.Organization;
+import com.example.multitenant.services.logs.LogsService;
 import com.example.multitenant.services.membership.MemberShipService;
 import com.example.multitenant.services.organizations.OrgsService;
 import com.example.multitenant.services.users.UsersService;
@@ -38,6 +39,7 @@ import lombok.extern.slf4j.Slf4j;
 public class OrgDashboardController {
     private final OrgsService organizationsService;
     private final MemberShipService memberShipService;
+    private final LogsService logsService;
 
     @PutMapping("/{id}")
     @PreAuthorize("@customSPEL.hasOrgAuthority(@globalPermissions.DASH_ORGANIZATION_UPDATE)")
@@ -48,6 +50,18 @@ public class OrgDashboardController {
         return ResponseEntity.status(HttpStatus.ACCEPTED).body(respBody);
     }
 
+    // the audit log of the organization, newest first
+    @GetMapping("/logs")
+    @PreAuthorize("@customSPEL.hasOrgRole('Org-Owner')")
+    public ResponseEntity<Object> getLogs(@RequestParam(required = false) String cursor,
+        @HandleSize @RequestParam(defaultValue = "20") Integer size) {
+
+        var tenantId = AppUtils.getTenantId();
+        var page = this.logsService.getAllOrgLogs(tenantId, cursor, size);
+
+        return ResponseEntity.ok(page.toApiResponse("logs", null));
+    }
+
     @PatchMapping("/transfer-ownership")
     @PreAuthorize("@customSPEL.hasOrgRole('Org-Owner')")
     public ResponseEntity<Object> transferOwnership(@Valid @RequestBody OrgTransferOwnershipDTO dto) {
@@ -27,6 +27,7 @@ import com.example.multitenant.dtos.restrictions.RestrictionCreateDTO;
 import com.example.multitenant.dtos.restrictions.RestrictionUpdateDTO;
 import com.example.multitenant.services.cache.OrgRestrictionsCacheSerivce;
 import com.example.multitenant.services.organizationsrestrictions.OrgsRestrictionsService;
+import com.example.multitenant.services.websocket.PresenceService;
 import com.example.multitenant.utils.AppUtils;
 
 import jakarta.validation.Valid;
@@ -42,6 +43,7 @@ import lombok.extern.slf4j.Slf4j;
 public class OrgDashboardRestrictionsController {
     private final OrgsRestrictionsService restrictionsService;
     private final OrgRestrictionsCacheSerivce orgRestrictionsCacheSerivce;
+    private final PresenceService presenceService;
 
     @GetMapping("")
     @PreAuthorize("@customSPEL.hasOrgAuthority(@orgPermissions.RESTRICTION_VIEW)")
@@ -67,6 +69,7 @@ public class OrgDashboardRestrictionsController {
 
         var restriction = this.restrictionsService.restrictUser(restrcitedUserId, tenantId, dto.toModel());
         this.orgRestrictionsCacheSerivce.invalidateKey(tenantId, restrcitedUserId);
+        this.presenceService.leaveOrganization(tenantId, restrcitedUserId);
 
         var respBody = ApiResponses.OneKey("restriction", restriction.toViewDTO());
 
@@ -0,0 +1,14 @@
+package com.example.multitenant.dtos.cache;
+
+import java.util.List;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class CacheWarmupResultDTO {
+    private List<Integer> warmedUpTenants;
+    private List<Integer> failedTenants;
+    private long durationMs;
+}
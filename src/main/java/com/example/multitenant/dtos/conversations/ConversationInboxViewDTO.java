@@ -0,0 +1,37 @@
+package com.example.multitenant.dtos.conversations;
+
+import java.time.Instant;
+
+import com.example.multitenant.dtos.users.UserMessageViewDTO;
+import com.example.multitenant.models.Conversation;
+import com.example.multitenant.models.User;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class ConversationInboxViewDTO {
+    private Long id;
+    // the other participant of the conversation
+    private UserMessageViewDTO user;
+    private Integer lastMessageId;
+    private String lastMessageContent;
+    private Long lastMessageSenderId;
+    private Instant lastMessageAt;
+    private long unreadCount;
+
+    public ConversationInboxViewDTO(Conversation conv, User other, long unreadCount) {
+        setId(conv.getId());
+        setUser(other.toUserMessageViewDTO());
+        setLastMessageAt(conv.getLastMessageAt());
+        setUnreadCount(unreadCount);
+
+        var lastMessage = conv.getLastMessage();
+        if(lastMessage != null) {
+            setLastMessageId(lastMessage.getId());
+            setLastMessageContent(lastMessage.getContent());
+            setLastMessageSenderId(lastMessage.getSender().getId());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.multitenant.dtos.logs;
 
+import java.time.Instant;
 import java.util.UUID;
 
 import com.example.multitenant.models.enums.LogEventType;
@@ -14,12 +15,14 @@ public class LogsViewDTO {
     private UUID id;
     private LogEventType event;
     private String message;
+    private Instant timestamp;
     
     public static LogsViewDTO of(BaseLog log) {
         var logView = new LogsViewDTO();
         logView.setEvent(log.getEventType());
         logView.setId(log.getId());
         logView.setMessage(log.getMessage());
+        logView.setTimestamp(log.getTimestamp());
 
         return logView;
     }
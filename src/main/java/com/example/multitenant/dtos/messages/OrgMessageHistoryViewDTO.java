@@ -0,0 +1,37 @@
+package com.example.multitenant.dtos.messages;
+
+import java.time.Instant;
+
+import com.example.multitenant.dtos.users.UserMessageViewDTO;
+
+import lombok.*;
+
+// projection used by the channel history query, built directly from the selected columns (no entities are hydrated)
+@Getter
+@Setter
+@NoArgsConstructor
+public class OrgMessageHistoryViewDTO {
+    private Integer id;
+    private String content;
+    private Boolean isUpdated;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private UserMessageViewDTO user;
+
+    public OrgMessageHistoryViewDTO(Integer id, String content, Boolean isUpdated, Instant createdAt, Instant updatedAt,
+        Long senderId, String senderFirstName, String senderLastName, String senderAvatarUrl) {
+
+        setId(id);
+        setContent(content);
+        setIsUpdated(isUpdated);
+        setCreatedAt(createdAt);
+        setUpdatedAt(updatedAt);
+
+        var sender = new UserMessageViewDTO();
+        sender.setId(senderId);
+        sender.setFirstName(senderFirstName);
+        sender.setLastName(senderLastName);
+        sender.setAvatarUrl(senderAvatarUrl);
+        setUser(sender);
+    }
+}
@@ -9,6 +9,7 @@ import lombok.*;
 @Getter
 @Setter
 @ToString
+@NoArgsConstructor
 public class OrgRoleCacheDTO implements Serializable {
     private static final long serialVersionUID = 1L;
     
@@ -7,6 +7,7 @@ import java.util.UUID;
 import com.example.multitenant.models.InternalStripeCustomer;
 import com.example.multitenant.models.InternalStripeSubscription;
 import com.example.multitenant.models.Organization;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.*;
 import lombok.*;
@@ -18,6 +19,8 @@ public class InternalStripeSubscriptionCacheDTO implements Serializable {
 
     private UUID id;
     private Integer organizationId;
+    // not cached, the entity is lazy loaded and must not leak into the cache payload
+    @JsonIgnore
     private Organization organization;
     private String stripeSubscriptionId;
     private String stripePriceId;
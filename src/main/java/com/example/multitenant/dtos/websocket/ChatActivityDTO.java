@@ -0,0 +1,21 @@
+package com.example.multitenant.dtos.websocket;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.*;
+
+/*
+ * the typing users and the read receipts of one channel/conversation since the previous activity frame,
+ * 'reads' maps the user id to the last message the user read
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatActivityDTO {
+    private Integer channelId;
+    private Integer conversationId;
+    private List<Long> typing;
+    private Map<Long, Integer> reads;
+}
@@ -0,0 +1,15 @@
+package com.example.multitenant.dtos.websocket;
+
+import java.util.List;
+
+import lombok.*;
+
+// the members of an organization that came online/went offline since the previous presence broadcast
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceDiffDTO {
+    private List<Long> online;
+    private List<Long> offline;
+}
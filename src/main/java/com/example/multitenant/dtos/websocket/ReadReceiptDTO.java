@@ -0,0 +1,12 @@
+package com.example.multitenant.dtos.websocket;
+
+import jakarta.validation.constraints.*;
+import lombok.*;
+
+@Getter
+@Setter
+public class ReadReceiptDTO {
+    @NotNull(message = "messageId is required")
+    @Positive(message = "messageId must be positive")
+    private Integer messageId;
+}
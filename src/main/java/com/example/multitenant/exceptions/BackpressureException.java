@@ -0,0 +1,11 @@
+package com.example.multitenant.exceptions;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class BackpressureException extends RuntimeException {
+    public BackpressureException(String message) {
+        super(message);
+        log.warn("[Backpressure Exception] message: {}", message);
+    }
+}
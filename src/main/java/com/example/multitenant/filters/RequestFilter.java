@@ -7,8 +7,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.example.multitenant.dtos.apiresponse.ApiResponses;
-import com.example.multitenant.services.security.RateLimiterService;
-import com.example.multitenant.utils.AppUtils;
+import com.example.multitenant.services.security.RateLimitPolicyService;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -19,13 +18,10 @@ import jakarta.servlet.http.HttpServletResponse;
 public class RequestFilter extends OncePerRequestFilter {
 
     @Autowired
-    RateLimiterService rateLimiterService;
+    RateLimitPolicyService rateLimitPolicyService;
 
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)throws ServletException, IOException {
-        var clientIP = AppUtils.getClientIp(request);
-        var bucket = rateLimiterService.getBucketByIP(clientIP);
-        
-        if(bucket.tryConsume(1)){
+        if(rateLimitPolicyService.tryConsume(request)){
             filterChain.doFilter(request, response);
         }else {
             ApiResponses.SendErrTooManyRequests(response);
@@ -81,8 +81,4 @@ public class Channel {
     public ChannelViewDTO toViewDTO() {
         return new ChannelViewDTO(this);
     }
-
-    public ChannelWithOrgMessagesViewDTO toViewDTOWithMessages() {
-        return new ChannelWithOrgMessagesViewDTO(this);
-    }
 }
\ No newline at end of file
@@ -24,6 +24,9 @@ indexes = {
     @Index(name = "idx_user_1_id", columnList = "user_1_id"),
     @Index(name = "idx_user_2_id", columnList = "user_2_id"),
     @Index(name = "idx_last_message_id", columnList = "last_message_id"),
+    // inbox listing of each side of the conversation (keyset pagination)
+    @Index(name = "idx_conversation_user_1_last_message_at", columnList = "user_1_id, last_message_at DESC, id DESC"),
+    @Index(name = "idx_conversation_user_2_last_message_at", columnList = "user_2_id, last_message_at DESC, id DESC"),
 })
 @Check(constraints = "user_1_id < user_2_id")  
 public class Conversation {
@@ -51,6 +54,10 @@ public class Conversation {
     @CreationTimestamp
     private Instant createdAt;
 
+    // denormalized creation time of the last message (creation time of the conversation until the first message)
+    @Column(name = "last_message_at", nullable = false, columnDefinition = "TIMESTAMP(6) WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP")
+    private Instant lastMessageAt;
+
     @PreUpdate
     private void validateUserIds() {
         if (user1 != null && user2 != null) {
@@ -63,6 +70,9 @@ public class Conversation {
     @PrePersist
     public void setHiddenValue() {
         isHidden = false;
+        if (lastMessageAt == null) {
+            lastMessageAt = Instant.now();
+        }
 
         if (user1 != null && user2 != null) {
             if (user1.getId() > user2.getId()) {
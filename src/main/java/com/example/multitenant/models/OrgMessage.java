@@ -19,7 +19,8 @@ import lombok.*;
 @Entity
 @Table(name = "organization_messages", indexes = {
     @Index(name = "idx_organization_message_organization_id", columnList = "organization_id"),
-    @Index(name = "idx_organization_message_sender_id", columnList = "sender_id")
+    @Index(name = "idx_organization_message_sender_id", columnList = "sender_id"),
+    @Index(name = "idx_organization_message_channel_id_id", columnList = "channel_id, id DESC")
 })
 public class OrgMessage extends BaseMessage {
 
@@ -0,0 +1,42 @@
+package com.example.multitenant.models;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/*
+ * a websocket message recorded in the same transaction as the write that produced it,
+ * the payload is the already encoded json and the row is removed once it was delivered to the broker
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "websocket_outbox")
+public class WebSocketOutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // events of the same stream (destination or user) are delivered in order
+    @Column(name = "stream_key", nullable = false)
+    private String streamKey;
+
+    @Column(name = "destination", nullable = false)
+    private String destination;
+
+    // the user of a user destination, null for topics
+    @Column(name = "target_user")
+    private String targetUser;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "BYTEA")
+    private byte[] payload;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+}
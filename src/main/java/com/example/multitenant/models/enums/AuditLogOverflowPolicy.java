@@ -0,0 +1,11 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * what the audit log writer does with a new log once its queue is full.
+ * DROP: the log is discarded right away, the request never waits on the audit pipeline.
+ * BLOCK: the request waits for free space up to 'app.logs.async.block-timeout', the log is discarded after it.
+ */
+public enum AuditLogOverflowPolicy {
+    DROP,
+    BLOCK
+}
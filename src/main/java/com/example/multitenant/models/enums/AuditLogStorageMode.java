@@ -0,0 +1,10 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * JOINED: 'events_logs' plus one table per log type (JPA JOINED inheritance of the BaseLog entities).
+ * JSONB: one append-only 'audit_events' table keyed by time-ordered ids, the fields of each log type are in a jsonb payload.
+ */
+public enum AuditLogStorageMode {
+    JOINED,
+    JSONB
+}
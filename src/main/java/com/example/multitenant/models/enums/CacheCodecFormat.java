@@ -0,0 +1,30 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * binary formats supported by the redis caches values codec, the id is written in every encoded value header
+ * therefore the ids must never be changed or reused.
+ */
+public enum CacheCodecFormat {
+    SMILE((byte) 1),
+    CBOR((byte) 2);
+
+    private final byte id;
+
+    CacheCodecFormat(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public static CacheCodecFormat fromId(byte id) {
+        for (var format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+
+        throw new IllegalArgumentException("unknown cache codec format id: " + id);
+    }
+}
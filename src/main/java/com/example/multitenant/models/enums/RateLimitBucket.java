@@ -0,0 +1,26 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * the rate limit buckets, endpoint groups that are cheap share the same bucket (see {@link RateLimitEndpointGroup}).
+ */
+public enum RateLimitBucket {
+    AUTH("auth"),
+    WEBHOOK("webhook"),
+    GENERAL("general"),
+    WRITE("write");
+
+    private final String value;
+
+    RateLimitBucket(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return this.value;
+    }
+}
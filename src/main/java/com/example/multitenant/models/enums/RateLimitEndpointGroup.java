@@ -0,0 +1,36 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * endpoints are classified into groups, each group consumes from one bucket
+ * and tenant scoped groups are also limited per tenant by the tenant plan.
+ */
+public enum RateLimitEndpointGroup {
+    AUTH("auth", RateLimitBucket.AUTH, false),
+    WEBHOOK("webhook", RateLimitBucket.WEBHOOK, false),
+    WEBSOCKET("websocket", RateLimitBucket.GENERAL, false),
+    READ("read", RateLimitBucket.GENERAL, true),
+    WRITE("write", RateLimitBucket.WRITE, true);
+
+    private final String value;
+    private final RateLimitBucket bucket;
+    private final boolean tenantScoped;
+
+    RateLimitEndpointGroup(String value, RateLimitBucket bucket, boolean tenantScoped) {
+        this.value = value;
+        this.bucket = bucket;
+        this.tenantScoped = tenantScoped;
+    }
+
+    public RateLimitBucket getBucket() {
+        return bucket;
+    }
+
+    public boolean isTenantScoped() {
+        return tenantScoped;
+    }
+
+    @Override
+    public String toString() {
+        return this.value;
+    }
+}
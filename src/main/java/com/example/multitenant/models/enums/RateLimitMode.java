@@ -0,0 +1,12 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * REDIS: every request consumes a token from the shared redis bucket (exact global limit).
+ * HYBRID: tokens are leased in batches from the shared redis bucket and consumed locally (approximate global limit).
+ * LOCAL: every node enforces the limit on its own (no redis calls, the effective limit is multiplied by the nodes count).
+ */
+public enum RateLimitMode {
+    REDIS,
+    HYBRID,
+    LOCAL;
+}
@@ -0,0 +1,12 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * SIMPLE: in-memory broker, messages only reach the clients connected to the same node.
+ * REDIS: in-memory broker per node, the published messages are fanned out to all the nodes over redis pub/sub.
+ * RELAY: external STOMP broker (e.g. RabbitMQ STOMP plugin) shared by all the nodes.
+ */
+public enum WebSocketBrokerMode {
+    SIMPLE,
+    REDIS,
+    RELAY
+}
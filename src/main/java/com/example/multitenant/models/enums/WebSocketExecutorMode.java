@@ -0,0 +1,10 @@
+package com.example.multitenant.models.enums;
+
+/**
+ * POOL: spring default executor of the message channel (bounded thread pool, the broker channel runs on the caller thread).
+ * VIRTUAL: a virtual thread per message, a handler blocked on the database does not hold one of the few pool threads.
+ */
+public enum WebSocketExecutorMode {
+    POOL,
+    VIRTUAL
+}
@@ -0,0 +1,228 @@
+package com.example.multitenant.models.logsmodels;
+
+import java.util.Map;
+
+import com.example.multitenant.models.Category;
+import com.example.multitenant.models.Channel;
+import com.example.multitenant.models.OrgMessage;
+import com.example.multitenant.models.OrgRole;
+import com.example.multitenant.models.User;
+
+/**
+ * the jsonb payload of an 'audit_events' row, one record per log type ('log_type' column).
+ *
+ * the payload keeps a snapshot of the names the log message needs (user, role, channel, category) so a page of logs
+ * is read without joining the related tables. the users only known by id when the log was written (kicked, invited,
+ * assigned to) are resolved in one batch when the page is read.
+ */
+public sealed interface AuditEventPayload {
+    String logType();
+
+    // rebuilds the (detached) log entity so its message is rendered like the JOINED storage does
+    BaseLog toLog(Map<Long, User> users);
+
+    static AuditEventPayload of(BaseLog log) {
+        return switch (log) {
+            case KicksLog kick -> new Kick(UserRef.of(kick.getKicker()), kick.getKickedId());
+            case InvitationsLog invitation -> new Invitation(UserRef.of(invitation.getInviter()), invitation.getInvitedId());
+            case RolesAssignmentsLog assignment -> new RoleAssignment(UserRef.of(assignment.getAssignedFrom()), assignment.getAssignedToId(),
+                (assignment.getRole() != null) ? assignment.getRole().getId() : null,
+                (assignment.getRole() != null) ? assignment.getRole().getDisplayName() : null);
+            case MembershipsLog membership -> new Membership(UserRef.of(membership.getUser()));
+            case ChannelsLog channel -> new ChannelChange(UserRef.of(channel.getUser()),
+                (channel.getChannel() != null) ? channel.getChannel().getId() : null,
+                (channel.getChannel() != null) ? channel.getChannel().getName() : null);
+            case CategoriesLog category -> new CategoryChange(UserRef.of(category.getUser()),
+                (category.getCategory() != null) ? category.getCategory().getId() : null,
+                (category.getCategory() != null) ? category.getCategory().getName() : null);
+            case OrgMessageLog message -> new OrgMessageChange(UserRef.of(message.getUser()),
+                (message.getOrgMessage() != null) ? message.getOrgMessage().getId() : null);
+            case AuthLog auth -> new Auth(UserRef.of(auth.getUser()), auth.getIpAddress(), auth.getUserAgent());
+            default -> throw new IllegalArgumentException("unsupported audit log type " + log.getClass().getSimpleName());
+        };
+    }
+
+    static Class<? extends AuditEventPayload> typeOf(String logType) {
+        return switch (logType) {
+            case "KICK" -> Kick.class;
+            case "INVITE" -> Invitation.class;
+            case "ROLE_ASSIGNMENT" -> RoleAssignment.class;
+            case "MEMBERSHIP" -> Membership.class;
+            case "CHANNEL" -> ChannelChange.class;
+            case "CATEGORY" -> CategoryChange.class;
+            case "ORG_MESSAGE" -> OrgMessageChange.class;
+            case "AUTH" -> Auth.class;
+            default -> throw new IllegalArgumentException("unknown audit log type " + logType);
+        };
+    }
+
+    record UserRef(Long id, String firstName, String lastName) {
+        static UserRef of(User user) {
+            return (user != null) ? new UserRef(user.getId(), user.getFirstName(), user.getLastName()) : null;
+        }
+
+        User toUser() {
+            var user = new User();
+            user.setId(this.id);
+            user.setFirstName(this.firstName);
+            user.setLastName(this.lastName);
+
+            return user;
+        }
+
+        static User toUser(UserRef ref) {
+            return (ref != null) ? ref.toUser() : null;
+        }
+    }
+
+    record Kick(UserRef kicker, Long kickedId) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "KICK";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new KicksLog();
+            log.setKicker(UserRef.toUser(this.kicker));
+            log.setKickedId(this.kickedId);
+            log.setKicked(users.get(this.kickedId));
+
+            return log;
+        }
+    }
+
+    record Invitation(UserRef inviter, Long invitedId) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "INVITE";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new InvitationsLog();
+            log.setInviter(UserRef.toUser(this.inviter));
+            log.setInvitedId(this.invitedId);
+            log.setInvited(users.get(this.invitedId));
+
+            return log;
+        }
+    }
+
+    record RoleAssignment(UserRef assignedFrom, Long assignedToId, Integer roleId, String roleName) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "ROLE_ASSIGNMENT";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new RolesAssignmentsLog();
+            log.setAssignedFrom(UserRef.toUser(this.assignedFrom));
+            log.setAssignedToId(this.assignedToId);
+            log.setAssignedTo(users.get(this.assignedToId));
+            if (this.roleId != null) {
+                var role = new OrgRole();
+                role.setId(this.roleId);
+                role.setDisplayName(this.roleName);
+                log.setRole(role);
+            }
+
+            return log;
+        }
+    }
+
+    record Membership(UserRef user) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "MEMBERSHIP";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new MembershipsLog();
+            log.setUser(UserRef.toUser(this.user));
+
+            return log;
+        }
+    }
+
+    record ChannelChange(UserRef user, Integer channelId, String channelName) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "CHANNEL";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new ChannelsLog();
+            log.setUser(UserRef.toUser(this.user));
+            if (this.channelId != null) {
+                var channel = new Channel();
+                channel.setId(this.channelId);
+                channel.setName(this.channelName);
+                log.setChannel(channel);
+            }
+
+            return log;
+        }
+    }
+
+    record CategoryChange(UserRef user, Integer categoryId, String categoryName) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "CATEGORY";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new CategoriesLog();
+            log.setUser(UserRef.toUser(this.user));
+            if (this.categoryId != null) {
+                var category = new Category();
+                category.setId(this.categoryId);
+                category.setName(this.categoryName);
+                log.setCategory(category);
+            }
+
+            return log;
+        }
+    }
+
+    record OrgMessageChange(UserRef user, Integer messageId) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "ORG_MESSAGE";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new OrgMessageLog();
+            log.setUser(UserRef.toUser(this.user));
+            if (this.messageId != null) {
+                var message = new OrgMessage();
+                message.setId(this.messageId);
+                log.setMessage(message);
+            }
+
+            return log;
+        }
+    }
+
+    record Auth(UserRef user, String ipAddress, String userAgent) implements AuditEventPayload {
+        @Override
+        public String logType() {
+            return "AUTH";
+        }
+
+        @Override
+        public BaseLog toLog(Map<Long, User> users) {
+            var log = new AuthLog();
+            log.setUser(UserRef.toUser(this.user));
+            log.setIpAddress(this.ipAddress);
+            log.setUserAgent(this.userAgent);
+
+            return log;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import lombok.*;
 @Setter
 @Entity
 @Table(name = "auth_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class AuthLog extends BaseLog {
     @Column(name = "ip_address", length = 45)
     private String ipAddress;
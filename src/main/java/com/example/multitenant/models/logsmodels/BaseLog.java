@@ -13,8 +13,11 @@ import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.*;
 
+// the table is range partitioned by month (AuditLogPartitionService) and denormalizes the organization of the log
 @Entity
-@Table(name = "events_logs")
+@Table(name = "events_logs", indexes = {
+    @Index(name = "idx_events_logs_organization_id_timestamp", columnList = "organization_id, timestamp DESC, id DESC")
+})
 @Inheritance(strategy = InheritanceType.JOINED)
 @DiscriminatorColumn(name = "log_type")
 @Getter
@@ -35,5 +38,9 @@ public abstract class BaseLog {
     @CreationTimestamp
     private Instant timestamp;
 
+    // the organization of an organization log, only written by the AuditLogWriterService for the per organization page
+    @Column(name = "organization_id", insertable = false, updatable = false)
+    private Integer logOrganizationId;
+
     public abstract String getMessage();
 }
@@ -16,6 +16,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @Entity
 @Table(name = "categories_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class CategoriesLog extends BaseOrganizationsLogs {
     
     @OneToOne(fetch = FetchType.LAZY)
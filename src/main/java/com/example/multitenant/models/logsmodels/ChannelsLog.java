@@ -16,6 +16,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @Entity
 @Table(name = "channels_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class ChannelsLog extends BaseOrganizationsLogs {
 
     @ManyToOne(fetch = FetchType.LAZY)
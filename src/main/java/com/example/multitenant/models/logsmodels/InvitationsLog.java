@@ -15,6 +15,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @Entity
 @Table(name = "invitations_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class InvitationsLog extends BaseOrganizationsLogs {
     @Column(name = "inviter_id", updatable = false, insertable = false)
     private Long inviterId;
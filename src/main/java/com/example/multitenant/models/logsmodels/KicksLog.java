@@ -15,6 +15,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @Entity
 @Table(name = "kicks_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class KicksLog extends BaseOrganizationsLogs {
 
     @ManyToOne(fetch = FetchType.LAZY)
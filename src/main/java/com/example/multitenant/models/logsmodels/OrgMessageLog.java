@@ -13,6 +13,7 @@ import lombok.*;
 @NoArgsConstructor
 @Entity
 @Table(name = "organization_messages_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class OrgMessageLog extends BaseOrganizationsLogs {
    
     @ManyToOne(fetch = FetchType.LAZY)
@@ -23,6 +24,11 @@ public class OrgMessageLog extends BaseOrganizationsLogs {
     @JoinColumn(name = "user_id")
     private User user;
 
+    // getMessage() is the log message of BaseLog, lombok generates no getter for the association
+    public OrgMessage getOrgMessage() {
+        return this.message;
+    }
+
     @Override
     public String getMessage() {
         return null;
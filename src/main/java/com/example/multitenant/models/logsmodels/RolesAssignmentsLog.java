@@ -16,6 +16,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @Entity
 @Table(name = "roles_assignments_logs")
+@PrimaryKeyJoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
 public class RolesAssignmentsLog extends BaseOrganizationsLogs {
 
     @ManyToOne(fetch = FetchType.LAZY)
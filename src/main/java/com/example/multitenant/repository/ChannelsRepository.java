@@ -20,13 +20,6 @@ public interface ChannelsRepository extends GenericRepository<Channel, Integer>
     @Query("SELECT c FROM Channel c WHERE c.id = :id AND c.organization.id = :organizationId")
     Channel findByIdAndOrgId(@Param("id") Integer id, @Param("organizationId") Integer organizationId);
 
-    @Query("""
-        SELECT c FROM Channel c
-        LEFT JOIN FETCH c.messages m
-        WHERE c.id = :id AND c.organization.id = :organizationId
-    """)
-    Channel findWithMessagesByIdAndOrgId(@Param("id") Integer id, @Param("organizationId") Integer organizationId);
-
     @Transactional
     @Modifying
     @Query("DELETE FROM Channel c WHERE (c.id = :id AND c.organization.id = :organizationId AND c.categoryId = :categoryId)")
@@ -1,5 +1,9 @@
 package com.example.multitenant.repository;
 
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -17,4 +21,60 @@ public interface ConversationsRepository extends GenericRepository<Conversation,
             WHERE c.id = :id
     """)
     Conversation findByIdWithLastMessageAndUsers(@Param("id") Integer id);
-}
\ No newline at end of file
+
+    // the users are stored in ascending order (user1 < user2), served by the 'unique_user_pairs' index
+    @Query("""
+            SELECT c FROM Conversation c
+            WHERE c.user1.id = :user1Id AND c.user2.id = :user2Id
+    """)
+    Conversation findByUserIds(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
+
+    /*
+     * the inbox of a user is split by the side of the conversation the user is on, each query walks its own
+     * (user_x_id, last_message_at DESC, id DESC) index, from its start for the first page and from the cursor (row
+     * comparison, an index range condition) for the next ones, and reads at most a page
+     */
+    @Query("""
+            SELECT c FROM Conversation c
+            JOIN FETCH c.user2
+            LEFT JOIN FETCH c.lastMessage lm
+            LEFT JOIN FETCH lm.sender
+            WHERE c.user1.id = :userId AND c.isHidden = false
+            ORDER BY c.lastMessageAt DESC, c.id DESC
+    """)
+    List<Conversation> findLatestInboxAsUser1(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("""
+            SELECT c FROM Conversation c
+            JOIN FETCH c.user2
+            LEFT JOIN FETCH c.lastMessage lm
+            LEFT JOIN FETCH lm.sender
+            WHERE c.user1.id = :userId AND c.isHidden = false
+            AND (c.lastMessageAt, c.id) < (:cursorAt, :cursorId)
+            ORDER BY c.lastMessageAt DESC, c.id DESC
+    """)
+    List<Conversation> findInboxAsUser1Before(@Param("userId") Long userId, @Param("cursorAt") Instant cursorAt,
+        @Param("cursorId") Long cursorId, Pageable pageable);
+
+    @Query("""
+            SELECT c FROM Conversation c
+            JOIN FETCH c.user1
+            LEFT JOIN FETCH c.lastMessage lm
+            LEFT JOIN FETCH lm.sender
+            WHERE c.user2.id = :userId AND c.isHidden = false
+            ORDER BY c.lastMessageAt DESC, c.id DESC
+    """)
+    List<Conversation> findLatestInboxAsUser2(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("""
+            SELECT c FROM Conversation c
+            JOIN FETCH c.user1
+            LEFT JOIN FETCH c.lastMessage lm
+            LEFT JOIN FETCH lm.sender
+            WHERE c.user2.id = :userId AND c.isHidden = false
+            AND (c.lastMessageAt, c.id) < (:cursorAt, :cursorId)
+            ORDER BY c.lastMessageAt DESC, c.id DESC
+    """)
+    List<Conversation> findInboxAsUser2Before(@Param("userId") Long userId, @Param("cursorAt") Instant cursorAt,
+        @Param("cursorId") Long cursorId, Pageable pageable);
+}
@@ -37,4 +37,7 @@ public interface MembershipRepository extends GenericRepository<Membership, Memb
 
     @Query("SELECT COUNT(m) FROM Membership m WHERE m.organization.id = :organizationId AND m.isMember = true")
     long countMembersByOrgId(@Param("organizationId") Integer organizationId);
+
+    @Query("SELECT m.id.organizationId FROM Membership m WHERE m.id.userId = :userId AND m.isMember = true")
+    List<Integer> findOrgIdsByUserId(@Param("userId") long userId);
 }
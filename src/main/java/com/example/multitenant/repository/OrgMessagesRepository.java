@@ -1,10 +1,13 @@
 package com.example.multitenant.repository;
 
+import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
 
+import com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO;
 import com.example.multitenant.models.OrgMessage;
 
 import org.springframework.data.repository.query.Param;
@@ -21,6 +24,45 @@ public interface OrgMessagesRepository extends GenericRepository<OrgMessage, Int
     """)
     OrgMessage findByIdAndSenderId(@Param("id") Integer id, @Param("senderId") Long senderId);
 
+    @Query("""
+        SELECT m.organizationId FROM OrgMessage m
+        WHERE m.createdAt >= :since
+        GROUP BY m.organizationId
+        ORDER BY COUNT(m.id) DESC
+    """)
+    List<Integer> findMostActiveOrgIds(@Param("since") Instant since, Pageable pageable);
+
+    // keyset pagination of the channel history, served by the (channel_id, id DESC) index
+    @Query("""
+        SELECT new com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO(
+            m.id, m.content, m.isUpdated, m.createdAt, m.updatedAt, s.id, s.firstName, s.lastName, s.avatarUrl)
+        FROM OrgMessage m JOIN m.sender s
+        WHERE m.channelId = :channelId AND m.organizationId = :organizationId
+        ORDER BY m.id DESC
+    """)
+    List<OrgMessageHistoryViewDTO> findLatestChannelHistory(@Param("channelId") Integer channelId,
+        @Param("organizationId") Integer organizationId, Pageable pageable);
+
+    @Query("""
+        SELECT new com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO(
+            m.id, m.content, m.isUpdated, m.createdAt, m.updatedAt, s.id, s.firstName, s.lastName, s.avatarUrl)
+        FROM OrgMessage m JOIN m.sender s
+        WHERE m.channelId = :channelId AND m.organizationId = :organizationId AND m.id < :before
+        ORDER BY m.id DESC
+    """)
+    List<OrgMessageHistoryViewDTO> findChannelHistoryBefore(@Param("channelId") Integer channelId,
+        @Param("organizationId") Integer organizationId, @Param("before") Integer before, Pageable pageable);
+
+    @Query("""
+        SELECT new com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO(
+            m.id, m.content, m.isUpdated, m.createdAt, m.updatedAt, s.id, s.firstName, s.lastName, s.avatarUrl)
+        FROM OrgMessage m JOIN m.sender s
+        WHERE m.channelId = :channelId AND m.organizationId = :organizationId AND m.id > :after
+        ORDER BY m.id ASC
+    """)
+    List<OrgMessageHistoryViewDTO> findChannelHistoryAfter(@Param("channelId") Integer channelId,
+        @Param("organizationId") Integer organizationId, @Param("after") Integer after, Pageable pageable);
+
     @Transactional
     @Modifying
     @Query("DELETE FROM OrgMessage m WHERE m.id = :id AND m.senderId = :senderId")
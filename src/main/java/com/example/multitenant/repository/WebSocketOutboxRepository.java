@@ -0,0 +1,15 @@
+package com.example.multitenant.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.example.multitenant.models.WebSocketOutboxEvent;
+
+@Repository
+public interface WebSocketOutboxRepository extends GenericRepository<WebSocketOutboxEvent, Long> {
+    @Query("SELECT e FROM WebSocketOutboxEvent e ORDER BY e.id ASC")
+    List<WebSocketOutboxEvent> findOldest(Pageable pageable);
+}
@@ -1,5 +1,6 @@
 package com.example.multitenant.repository.logsrepositories;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -27,4 +28,26 @@ public interface BaseLogsRepository extends GenericRepository<BaseLog, UUID> {
           AND inviter IS NOT NULL
     """)
     List<BaseLog> findAllOrgLogs(@Param("organizationId") Integer organizationId);
+
+    /*
+     * one page of the logs of an organization newest first, both walk the (organization_id, timestamp DESC, id DESC)
+     * index of the partitions (the next page from the cursor) and stop once the page is full, so only the latest
+     * partitions are read
+     */
+    @Query(value = """
+        SELECT id FROM events_logs
+        WHERE organization_id = :organizationId
+        ORDER BY timestamp DESC, id DESC
+        LIMIT :limit
+    """, nativeQuery = true)
+    List<UUID> findLatestOrgLogIds(@Param("organizationId") Integer organizationId, @Param("limit") int limit);
+
+    @Query(value = """
+        SELECT id FROM events_logs
+        WHERE organization_id = :organizationId AND (timestamp, id) < (:cursorAt, :cursorId)
+        ORDER BY timestamp DESC, id DESC
+        LIMIT :limit
+    """, nativeQuery = true)
+    List<UUID> findOrgLogIdsBefore(@Param("organizationId") Integer organizationId, @Param("cursorAt") Instant cursorAt,
+        @Param("cursorId") UUID cursorId, @Param("limit") int limit);
 }
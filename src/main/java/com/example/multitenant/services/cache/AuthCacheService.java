@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.messaging.simp.user.SimpUser;
@@ -21,6 +22,8 @@ import com.example.multitenant.models.OrgPermission;
 import com.example.multitenant.services.categories.CategoriesService;
 import com.example.multitenant.services.membership.MemberShipService;
 import com.example.multitenant.services.security.OrgRolesService;
+import com.example.multitenant.services.security.PermissionBits;
+import com.fasterxml.jackson.core.type.TypeReference;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,18 +31,39 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * methods starting with 'fetch' meant to fetch directly from database and only for internal use inside this service
  * and must not be used from outside, methods starting with 'get...' are meant to be used externally to fetch the cached data.
+ * 
+ * roles, user roles and category authorized roles are read through the {@link NearCacheService} first (in-process)
+ * and then from redis through the {@link CacheAsideLoader}, every invalidation here is propagated to the other nodes near-caches.
  */
 @RequiredArgsConstructor
 @Service
 public class AuthCacheService {
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheAsideLoader cacheAsideLoader;
     private final OrgRolesService organizationRolesService;
     private final MemberShipService memberShipService;
     private final CategoriesService categoriesService;
+    private final NearCacheService nearCacheService;
+    private final CacheBulkOperations cacheBulkOperations;
 
     private static final Duration CACHE_TTL = Duration.ofMinutes(30);
 
-    @LogMethod
+    // the names of the caches in the cache metrics
+    private static final String ORG_ROLES_CACHE = "org:roles";
+    private static final String ORG_ROLES_BITS_CACHE = "org:roles:bits";
+    private static final String USER_ROLES_CACHE = "user:roles";
+    private static final String CATEGORY_ROLES_CACHE = "org:categories:authorized-roles";
+    private static final String ORG_CATEGORIES_ROLES_CACHE = "org:categories:authorized-roles:all";
+
+    private static final TypeReference<List<OrgRoleCacheDTO>> ROLES_LIST_TYPE = new TypeReference<>() {};
+    private static final TypeReference<Map<String, List<String>>> ROLES_PERMISSIONS_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<Integer>> ROLES_IDS_TYPE = new TypeReference<>() {};
+    private static final TypeReference<Map<Integer, List<Integer>>> CATEGORIES_ROLES_IDS_TYPE = new TypeReference<>() {};
+
+    @Value("${app.cache.near.ttl:PT2M}")
+    private Duration nearCacheTtl;
+
+    @LogMethod(sampleRate = 0.01)
     public List<String> getUserOrgPermissions(Integer orgId, long userId) {
         var cachedRolesWithPermissions = this.getOrgRolesWithPermissions(orgId);
         var userRoles = this.getUserOrgRoles(orgId, userId);
@@ -52,76 +76,105 @@ public class AuthCacheService {
 
         return permsList;
     }
+
+    // the effective permissions of the user are the OR of all his roles bitsets
+    public long[] getUserOrgPermissionBits(Integer orgId, long userId) {
+        return this.getUserOrgPermissionBits(orgId, this.getUserOrgRoles(orgId, userId));
+    }
+
+    public long[] getUserOrgPermissionBits(Integer orgId, List<OrgRoleCacheDTO> userRoles) {
+        var rolesBits = this.getOrgRolesPermissionBits(orgId);
+
+        var bits = PermissionBits.empty();
+        for (var role : userRoles) {
+            var roleBits = rolesBits.get(role.getName());
+            if (roleBits != null) {
+                PermissionBits.orInto(bits, roleBits);
+            }
+        }
+
+        return bits;
+    }
+
+    // map org role (key) -> role permissions bitset (value), kept only in the near-cache since its derived from the roles cache
+    public Map<String, long[]> getOrgRolesPermissionBits(Integer orgId) {
+        var cacheKey = this.getOrgRolesBitsCacheKey(orgId);
+        Map<String, long[]> nearCached = this.nearCacheService.get(ORG_ROLES_BITS_CACHE, cacheKey);
+        if(nearCached != null) {
+            return nearCached;
+        }
+
+        var rolesBits = new HashMap<String, long[]>();
+        this.getOrgRolesWithPermissions(orgId).forEach((roleName, perms) -> rolesBits.put(roleName, PermissionBits.of(perms)));
+        this.nearCacheService.put(cacheKey, rolesBits, this.nearCacheTtl);
+
+        return rolesBits;
+    }
    
-    @LogMethod
-    @SuppressWarnings("unchecked")
+    @LogMethod(sampleRate = 0.01)
     public List<OrgRoleCacheDTO> getUserOrgRoles(Integer orgId, long userId) {
         var key = this.getUserOrgRolesCacheKey(orgId, userId);
-        var cached = this.redisTemplate.opsForValue().get(key);
-        if(cached == null) {
-            return this.fetchUserOrgRolesAndCache(orgId, userId);
+        List<OrgRoleCacheDTO> nearCached = this.nearCacheService.get(USER_ROLES_CACHE, key);
+        if(nearCached != null) {
+            return nearCached;
         }
-        
-        System.out.println(cached.toString() + "   already cached <---------------------");
-        return (List<OrgRoleCacheDTO>) cached;
-    }   
 
-    @LogMethod
-    @SuppressWarnings("unchecked")
+        var roles = this.cacheAsideLoader.get(USER_ROLES_CACHE, key, ROLES_LIST_TYPE, CACHE_TTL, () -> this.fetchUserOrgRoles(orgId, userId));
+        this.nearCacheService.put(key, roles, this.nearCacheTtl);
+
+        return roles;
+    }
+
+    @LogMethod(sampleRate = 0.01)
     public Map<String, List<String>> getOrgRolesWithPermissions(Integer orgId) {
         var cacheKey = this.getOrgRolesCacheKey(orgId);
-        var cached = redisTemplate.opsForValue().get(cacheKey);
-
-        if (cached == null) {
-            return this.fetchOrgRolesWithPermissionsAndCache(orgId);
+        Map<String, List<String>> nearCached = this.nearCacheService.get(ORG_ROLES_CACHE, cacheKey);
+        if(nearCached != null) {
+            return nearCached;
         }
-        
-        return (Map<String, List<String>>) cached;
+
+        var rolesWithPermissions = this.cacheAsideLoader.get(ORG_ROLES_CACHE, cacheKey, ROLES_PERMISSIONS_TYPE, CACHE_TTL,
+            () -> this.fetchOrgRolesWithPermissions(orgId));
+        this.nearCacheService.put(cacheKey, rolesWithPermissions, this.nearCacheTtl);
+
+        return rolesWithPermissions;
     }
 
-    @LogMethod
-    @SuppressWarnings("unchecked")
+    @LogMethod(sampleRate = 0.01)
     public List<Integer> getOrgCategoryWithAuthorizedRolesList(Integer orgId, Integer categoryId) {
         var cacheKey = this.getOrgCategoriesCacheKey(orgId, categoryId);
-        var cached = redisTemplate.opsForValue().get(cacheKey);
-
-        if (cached == null) {
-            return this.fetchOrgCategoryAndCache(orgId, categoryId);
+        List<Integer> nearCached = this.nearCacheService.get(CATEGORY_ROLES_CACHE, cacheKey);
+        if(nearCached != null) {
+            return nearCached;
         }
-        
-        return (List<Integer>) cached;
+
+        var rolesIds = this.cacheAsideLoader.get(CATEGORY_ROLES_CACHE, cacheKey, ROLES_IDS_TYPE, CACHE_TTL, () -> this.fetchOrgCategory(orgId, categoryId));
+        this.nearCacheService.put(cacheKey, rolesIds, this.nearCacheTtl);
+
+        return rolesIds;
     }
 
-    @LogMethod
-    @SuppressWarnings("unchecked")
-    public Map<Integer, List<Integer>> getOrgCategoriesWithAuthorizedRolesList(Integer orgId, Integer categoryId) {
-        var cacheKey = this.getOrgCategoriesCacheKey(orgId, categoryId);
-        var cached = redisTemplate.opsForValue().get(cacheKey);
+    // the per category keys hold lists, the whole org map is kept under its own key
+    @LogMethod(sampleRate = 0.01)
+    public Map<Integer, List<Integer>> getOrgCategoriesWithAuthorizedRolesList(Integer orgId) {
+        var cacheKey = this.getOrgAllCategoriesCacheKey(orgId);
 
-        if (cached == null) {
-            return this.fetchOrgCategoriesAndCache(orgId);
-        }
-        
-        return (Map<Integer, List<Integer>>) cached;
+        return this.cacheAsideLoader.get(ORG_CATEGORIES_ROLES_CACHE, cacheKey, CATEGORIES_ROLES_IDS_TYPE, CACHE_TTL, () -> this.fetchOrgCategoriesAndCache(orgId));
     }
 
-    private List<OrgRoleCacheDTO> fetchUserOrgRolesAndCache(Integer orgId, long userId) {
-        var userRoles =  this.memberShipService
+    private List<OrgRoleCacheDTO> fetchUserOrgRoles(Integer orgId, long userId) {
+        return this.memberShipService
         .findUserMembershipWithRoles(orgId, userId)
         .getOrganizationRoles()
         .stream()
         .map((role) -> new OrgRoleCacheDTO(role))
         .toList();
-
-        this.setUserOrgRoles(orgId, userId, userRoles);
-
-        return userRoles;
     }
 
     // map org role (key) -> role permissions (value)
-    private Map<String, List<String>> fetchOrgRolesWithPermissionsAndCache(Integer orgId) {
+    private Map<String, List<String>> fetchOrgRolesWithPermissions(Integer orgId) {
         var roles = this.organizationRolesService.findAllRolesWithPermissions(orgId);
-        var rolesWithPermissions = roles.stream()
+        return roles.stream()
         .collect(Collectors.toMap(
             role -> role.getName(),
             role -> {
@@ -129,64 +182,68 @@ public class AuthCacheService {
                 return permissions.stream().map((perm) -> perm.getName()).toList();
             }
         ));
-
-        this.setOrgRoles(orgId, rolesWithPermissions);
-        return rolesWithPermissions;
     }
 
-    // map category id (key) -> category authorized roles ids list (value)
+    // map category id (key) -> category authorized roles ids list (value), every category list is cached on its own key as well
     private Map<Integer, List<Integer>> fetchOrgCategoriesAndCache(Integer orgId) {
         var categories = this.categoriesService.findAllWithAuthorizedRoles(orgId);
 
         var map = new HashMap<Integer, List<Integer>>();
+        var entries = new HashMap<String, List<Integer>>();
         categories.stream().forEach((cat) -> {
             var rolesList = cat.getAuthorizedRoles().stream().map((role) -> role.getId()).toList();
             var categoryId = cat.getId();
+            var key = this.getOrgCategoriesCacheKey(orgId, categoryId);
             map.put(categoryId, rolesList);
-        
-            this.setOrgCategory(orgId, categoryId, rolesList);
+
+            entries.put(key, rolesList);
+            this.nearCacheService.put(key, rolesList, this.nearCacheTtl);
         });
 
+        // single pipelined write instead of a round trip per category
+        this.cacheAsideLoader.putAll(entries, CACHE_TTL);
+
         return map;
     }
 
-    private List<Integer> fetchOrgCategoryAndCache(Integer orgId, Integer categoryId) {
+    private List<Integer> fetchOrgCategory(Integer orgId, Integer categoryId) {
         var category = this.categoriesService.findByIdAndOrganizationIdWithAuthorizedRoles(categoryId, orgId);
         if (category == null) {
             throw new ResourceNotFoundException("category", categoryId);
         }
 
-        var rolesList = category.getAuthorizedRoles().stream().map((role) -> role.getId()).toList();
-        this.setOrgCategory(orgId, categoryId, rolesList);
-
-        return rolesList;
+        return category.getAuthorizedRoles().stream().map((role) -> role.getId()).toList();
     }
 
-    private void setOrgRoles(Integer orgId, Map<String, List<String>> rolesWithPerms) {
+    /**
+     * loads the org roles with their permissions and all the org categories authorized roles into the caches,
+     * used by the {@link CacheWarmupService}.
+     */
+    public void warmUpOrg(Integer orgId) {
         var key = this.getOrgRolesCacheKey(orgId);
-        this.redisTemplate.opsForValue().set(key, rolesWithPerms, CACHE_TTL);
-    }
-    
-    private void setUserOrgRoles(Integer orgId, long userId, List<OrgRoleCacheDTO> roles) {
-        var key = this.getUserOrgRolesCacheKey(orgId, userId);
-        this.redisTemplate.opsForValue().set(key, roles, CACHE_TTL);
-    }
+        var rolesWithPermissions = this.fetchOrgRolesWithPermissions(orgId);
+        this.cacheAsideLoader.put(key, rolesWithPermissions, CACHE_TTL);
+        this.nearCacheService.put(key, rolesWithPermissions, this.nearCacheTtl);
 
-    private void setOrgCategory(Integer orgId, Integer categoryId, List<Integer> rolesIds) {
-        var key = this.getOrgCategoriesCacheKey(orgId, categoryId);
-        this.redisTemplate.opsForValue().set(key, rolesIds, CACHE_TTL);
+        this.fetchOrgCategoriesAndCache(orgId);
     }
 
     public void invalidateOrgRolesCache(Integer orgId) {
-        this.redisTemplate.delete(getOrgRolesCacheKey(orgId));
+        var key = getOrgRolesCacheKey(orgId);
+        this.redisTemplate.delete(key);
+        this.nearCacheService.invalidate(List.of(key, getOrgRolesBitsCacheKey(orgId)));
     }
 
     public void invalidateOrgCategoriesCache(Integer orgId, Integer categoryId) {
-        this.redisTemplate.delete(getOrgCategoriesCacheKey(orgId, categoryId));
+        var key = getOrgCategoriesCacheKey(orgId, categoryId);
+        this.redisTemplate.delete(List.of(key, getOrgAllCategoriesCacheKey(orgId)));
+        this.nearCacheService.invalidate(key);
     }
     
     public void invalidateUserOrgRolesCache(Integer orgId, long userId) {
-        this.redisTemplate.delete(getUserOrgRolesCacheKey(orgId, userId));
+        var key = getUserOrgRolesCacheKey(orgId, userId);
+        this.redisTemplate.delete(key);
+        this.nearCacheService.invalidate(key);
     }
 
     public void handleRoleDeletionInvalidations(Integer orgId, Integer roleId) {
@@ -197,7 +254,8 @@ public class AuthCacheService {
             var keysToInvalidate = usersIds.stream().map((userId) -> this.getUserOrgRolesCacheKey(orgId, userId)).toList();
 
             if(!keysToInvalidate.isEmpty()) {
-                this.redisTemplate.delete(keysToInvalidate);
+                this.cacheBulkOperations.unlinkAll(this.redisTemplate, keysToInvalidate);
+                this.nearCacheService.invalidate(keysToInvalidate);
             }
         }
     }
@@ -207,6 +265,10 @@ public class AuthCacheService {
         return "org:roles:" + orgId;
     }
 
+    private String getOrgRolesBitsCacheKey(Serializable orgId) {
+        return "org:roles:bits:" + orgId;
+    }
+
     private String getUserOrgRolesCacheKey(Serializable orgId, Serializable userId) {
         return "user:roles:" + orgId + ":" + userId;
     }
@@ -214,4 +276,8 @@ public class AuthCacheService {
     private String getOrgCategoriesCacheKey(Serializable orgId, Serializable categoryId) {
         return "org:categories:authorized-roles:" + orgId +":" + categoryId;
     }
+
+    private String getOrgAllCategoriesCacheKey(Serializable orgId) {
+        return "org:categories:authorized-roles:" + orgId;
+    }
 }
\ No newline at end of file
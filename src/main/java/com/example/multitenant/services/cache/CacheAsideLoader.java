@@ -0,0 +1,296 @@
+package com.example.multitenant.services.cache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.services.metrics.CacheMetrics;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * shared cache-aside loading for the redis caches, every value is stored inside a {@link CachedValue} envelope
+ * that carries how long the value took to load and when it expires, this gives:
+ *
+ * - per-key single-flight: concurrent misses of the same key on this node wait for one loader call.
+ * - distributed single-flight (optional): the node that acquires a short redis lease loads the value,
+ *   the other nodes poll the cache for up to 'lease-wait' before falling back to loading it themselves.
+ * - probabilistic early refresh (XFetch): the closer a value is to its expiry (scaled by its load time),
+ *   the more likely a read triggers a background refresh while the current value is still returned.
+ *   values written directly (warm-up, bulk writes) have no measured load time and use 'nominal-load-time'.
+ * - ttl jitter: the ttl is randomized by +/- 'ttl-jitter' so keys written together do not expire together.
+ *
+ * a null loader result is not cached.
+ */
+@Slf4j
+@Service
+public class CacheAsideLoader {
+    private static final String LEASE_SUFFIX = ":lease";
+    private static final Duration LEASE_POLL_INTERVAL = Duration.ofMillis(50);
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end", Long.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final RedisTemplate<String, String> leaseRedisTemplate;
+    private final CacheValueCodec cacheValueCodec;
+    private final CacheBulkOperations cacheBulkOperations;
+    private final CacheMetrics cacheMetrics;
+    private final double xfetchBeta;
+    private final long nominalLoadMs;
+    private final double ttlJitter;
+    private final boolean distributedLeaseEnabled;
+    private final Duration leaseTtl;
+    private final Duration leaseWait;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CacheAsideLoader(RedisTemplate<String, byte[]> redisTemplate, RedisTemplate<String, String> leaseRedisTemplate,
+        CacheValueCodec cacheValueCodec, CacheBulkOperations cacheBulkOperations, CacheMetrics cacheMetrics,
+        @Value("${app.cache.loader.xfetch-beta:1.0}") double xfetchBeta,
+        @Value("${app.cache.loader.nominal-load-time:PT0.05S}") Duration nominalLoadTime,
+        @Value("${app.cache.loader.ttl-jitter:0.1}") double ttlJitter,
+        @Value("${app.cache.loader.distributed-lease.enabled:false}") boolean distributedLeaseEnabled,
+        @Value("${app.cache.loader.distributed-lease.ttl:PT5S}") Duration leaseTtl,
+        @Value("${app.cache.loader.distributed-lease.wait:PT2S}") Duration leaseWait) {
+
+        this.redisTemplate = redisTemplate;
+        this.leaseRedisTemplate = leaseRedisTemplate;
+        this.cacheValueCodec = cacheValueCodec;
+        this.cacheBulkOperations = cacheBulkOperations;
+        this.cacheMetrics = cacheMetrics;
+        this.xfetchBeta = xfetchBeta;
+        this.nominalLoadMs = nominalLoadTime.toMillis();
+        this.ttlJitter = ttlJitter;
+        this.distributedLeaseEnabled = distributedLeaseEnabled;
+        this.leaseTtl = leaseTtl;
+        this.leaseWait = leaseWait;
+    }
+
+    // the cache name is the metrics name of the cache the key belongs to (see CacheMetrics)
+    public <T> T get(String cacheName, String key, Class<T> type, Duration ttl, Supplier<T> loader) {
+        return this.get(cacheName, key, this.cacheValueCodec.getTypeFactory().constructType(type), ttl, loader);
+    }
+
+    public <T> T get(String cacheName, String key, TypeReference<T> type, Duration ttl, Supplier<T> loader) {
+        return this.get(cacheName, key, this.cacheValueCodec.getTypeFactory().constructType(type), ttl, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheName, String key, JavaType type, Duration ttl, Supplier<T> loader) {
+        var envelopeType = this.getEnvelopeType(type);
+        var cached = this.read(key, envelopeType);
+        if (cached == null) {
+            this.cacheMetrics.miss(CacheMetrics.REDIS_LAYER, cacheName);
+            return this.load(cacheName, key, envelopeType, ttl, loader);
+        }
+
+        this.cacheMetrics.hit(CacheMetrics.REDIS_LAYER, cacheName);
+        if (this.shouldRefreshEarly(cached)) {
+            this.refreshInBackground(cacheName, key, envelopeType, ttl, loader);
+        }
+
+        return (T) cached.value();
+    }
+
+    public void put(String key, Object value, Duration ttl) {
+        this.write(key, value, this.nominalLoadMs, ttl);
+    }
+
+    // all the entries share the same jittered ttl
+    public void putAll(Map<String, ?> values, Duration ttl) {
+        var jitteredTtl = this.jitter(ttl);
+        var expiresAt = System.currentTimeMillis() + jitteredTtl.toMillis();
+
+        var entries = new HashMap<String, byte[]>();
+        values.forEach((key, value) -> entries.put(key, this.cacheValueCodec.encode(new CachedValue<>(value, this.nominalLoadMs, expiresAt))));
+
+        this.cacheBulkOperations.setAll(this.redisTemplate, entries, jitteredTtl);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.refreshExecutor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(String cacheName, String key, JavaType envelopeType, Duration ttl, Supplier<T> loader) {
+        var future = new CompletableFuture<Object>();
+        var existing = this.inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return (T) this.join(existing);
+        }
+
+        try {
+            var value = this.loadWithLease(cacheName, key, envelopeType, ttl, loader);
+            future.complete(value);
+
+            return value;
+        } catch (Throwable ex) {
+            // an Error or a sneaky checked exception from the loader must not leave the joiners waiting either
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T loadWithLease(String cacheName, String key, JavaType envelopeType, Duration ttl, Supplier<T> loader) {
+        if (!this.distributedLeaseEnabled) {
+            return this.loadAndWrite(cacheName, key, ttl, loader);
+        }
+
+        var leaseKey = key + LEASE_SUFFIX;
+        var acquired = this.tryAcquireLease(leaseKey);
+        if (acquired) {
+            try {
+                return this.loadAndWrite(cacheName, key, ttl, loader);
+            } finally {
+                this.releaseLease(leaseKey);
+            }
+        }
+
+        // another node is loading the value, wait for it to show up in the cache
+        var deadline = System.nanoTime() + this.leaseWait.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_INTERVAL);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            var cached = this.read(key, envelopeType);
+            if (cached != null) {
+                return (T) cached.value();
+            }
+        }
+
+        log.warn("timed out waiting for the cache lease holder of key {}, loading locally", key);
+        return this.loadAndWrite(cacheName, key, ttl, loader);
+    }
+
+    private <T> T loadAndWrite(String cacheName, String key, Duration ttl, Supplier<T> loader) {
+        var start = System.nanoTime();
+        var value = loader.get();
+        var deltaNanos = System.nanoTime() - start;
+        var deltaMs = Duration.ofNanos(deltaNanos).toMillis();
+        this.cacheMetrics.recordLoad(cacheName, deltaNanos);
+
+        if (value != null) {
+            this.write(key, value, deltaMs, ttl);
+        }
+
+        return value;
+    }
+
+    private <T> void refreshInBackground(String cacheName, String key, JavaType envelopeType, Duration ttl, Supplier<T> loader) {
+        if (this.inFlight.containsKey(key)) {
+            return;
+        }
+
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    this.load(cacheName, key, envelopeType, ttl, loader);
+                } catch (Exception ex) {
+                    log.error("failed to refresh the cache key {} early", key, ex);
+                }
+            });
+        } catch (Exception ex) {
+            log.warn("could not schedule the early refresh of the cache key {}", key, ex);
+        }
+    }
+
+    // XFetch: refresh when now - delta * beta * ln(rand) >= expiry
+    private boolean shouldRefreshEarly(CachedValue<?> cached) {
+        if (this.xfetchBeta <= 0 || cached.deltaMs() <= 0) {
+            return false;
+        }
+
+        var random = ThreadLocalRandom.current().nextDouble();
+        var gap = -cached.deltaMs() * this.xfetchBeta * Math.log(random);
+
+        return System.currentTimeMillis() + gap >= cached.expiresAt();
+    }
+
+    private void write(String key, Object value, long deltaMs, Duration ttl) {
+        var jitteredTtl = this.jitter(ttl);
+        var expiresAt = System.currentTimeMillis() + jitteredTtl.toMillis();
+        var encoded = this.cacheValueCodec.encode(new CachedValue<>(value, deltaMs, expiresAt));
+
+        this.redisTemplate.opsForValue().set(key, encoded, jitteredTtl);
+    }
+
+    private CachedValue<?> read(String key, JavaType envelopeType) {
+        Object decoded = this.cacheValueCodec.decode(this.redisTemplate.opsForValue().get(key), envelopeType);
+
+        // values written before the envelope was introduced are treated as a miss
+        return decoded instanceof CachedValue<?> cachedValue ? cachedValue : null;
+    }
+
+    private Duration jitter(Duration ttl) {
+        if (this.ttlJitter <= 0) {
+            return ttl;
+        }
+
+        var factor = 1 + ThreadLocalRandom.current().nextDouble(-this.ttlJitter, this.ttlJitter);
+        return Duration.ofMillis(Math.max(1, (long) (ttl.toMillis() * factor)));
+    }
+
+    private boolean tryAcquireLease(String leaseKey) {
+        try {
+            return Boolean.TRUE.equals(this.leaseRedisTemplate.opsForValue().setIfAbsent(leaseKey, this.nodeId, this.leaseTtl));
+        } catch (Exception ex) {
+            // redis lease is an optimization, the loading must not fail because of it
+            log.warn("failed to acquire the cache lease {}", leaseKey, ex);
+            return true;
+        }
+    }
+
+    private void releaseLease(String leaseKey) {
+        try {
+            this.leaseRedisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(leaseKey), this.nodeId);
+        } catch (Exception ex) {
+            log.warn("failed to release the cache lease {}, it will expire on its own", leaseKey, ex);
+        }
+    }
+
+    private Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw ex;
+        }
+    }
+
+    private JavaType getEnvelopeType(JavaType valueType) {
+        return this.cacheValueCodec.getTypeFactory().constructParametricType(CachedValue.class, valueType);
+    }
+
+    public record CachedValue<T>(T value, long deltaMs, long expiresAt) {}
+}
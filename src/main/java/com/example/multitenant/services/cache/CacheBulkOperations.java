@@ -0,0 +1,105 @@
+package com.example.multitenant.services.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * bulk writes/deletes for the cache services, instead of one round trip per key the commands are pipelined
+ * in chunks of 'app.cache.bulk.batch-size' keys, so loading or invalidating hundreds of keys costs a few round trips.
+ *
+ * works with any of the redis templates, the keys and values are serialized with the serializers of the given template.
+ */
+@Slf4j
+@Service
+public class CacheBulkOperations {
+    private final int batchSize;
+
+    public CacheBulkOperations(@Value("${app.cache.bulk.batch-size:500}") int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * sets all the entries with the given ttl, a null ttl means the keys will not expire.
+     */
+    public <V> void setAll(RedisTemplate<String, V> template, Map<String, V> entries, Duration ttl) {
+        this.setAll(template, entries, ttl, SetOption.upsert());
+    }
+
+    /**
+     * sets only the entries whose key does not exist yet (SET NX), a value written concurrently by someone else is kept.
+     */
+    public <V> void setAllIfAbsent(RedisTemplate<String, V> template, Map<String, V> entries, Duration ttl) {
+        this.setAll(template, entries, ttl, SetOption.ifAbsent());
+    }
+
+    private <V> void setAll(RedisTemplate<String, V> template, Map<String, V> entries, Duration ttl, SetOption option) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        var keySerializer = this.getSerializer(template.getKeySerializer());
+        var valueSerializer = this.getSerializer(template.getValueSerializer());
+        var expiration = ttl == null ? Expiration.persistent() : Expiration.from(ttl);
+
+        for (var chunk : this.partition(List.copyOf(entries.entrySet()))) {
+            template.executePipelined((RedisCallback<Object>) (connection) -> {
+                for (var entry : chunk) {
+                    connection.stringCommands().set(
+                        keySerializer.serialize(entry.getKey()),
+                        valueSerializer.serialize(entry.getValue()),
+                        expiration,
+                        option);
+                }
+
+                return null;
+            });
+        }
+
+        log.debug("bulk set {} keys in {} batches", entries.size(), Math.ceilDiv(entries.size(), this.batchSize));
+    }
+
+    /**
+     * removes the keys using UNLINK (the memory is reclaimed in the background by redis),
+     * returns the number of keys that were removed.
+     */
+    public long unlinkAll(RedisTemplate<String, ?> template, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        long removed = 0;
+        for (var chunk : this.partition(List.copyOf(keys))) {
+            var count = template.unlink(chunk);
+            removed += count == null ? 0 : count;
+        }
+
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> RedisSerializer<T> getSerializer(RedisSerializer<?> serializer) {
+        return (RedisSerializer<T>) (serializer != null ? serializer : RedisSerializer.java());
+    }
+
+    private <T> List<List<T>> partition(List<T> list) {
+        var chunks = new ArrayList<List<T>>();
+        for (int i = 0; i < list.size(); i += this.batchSize) {
+            chunks.add(list.subList(i, Math.min(i + this.batchSize, list.size())));
+        }
+
+        return chunks;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.multitenant.services.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.multitenant.exceptions.UnknownException;
+import com.example.multitenant.models.enums.CacheCodecFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * versioned binary codec for the redis caches values.
+ *
+ * every encoded value starts with a 4 bytes header: [magic, version, format id, flags],
+ * when the lz4 flag is set the header is followed by the uncompressed length (4 bytes) and then the compressed payload.
+ * the format id is part of the header, so changing the configured format does not break the values already cached.
+ *
+ * undecodable values are treated as a cache miss, that includes the values written by the old jdk serialization:
+ * they are reloaded and replaced with the new format, the remaining ones expire with their ttl.
+ */
+@Slf4j
+@Component
+public class CacheValueCodec {
+    private static final byte MAGIC = (byte) 0xCA;
+    private static final byte VERSION = 1;
+    private static final byte FLAG_LZ4 = 1;
+    private static final int HEADER_SIZE = 4;
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final Map<CacheCodecFormat, ObjectMapper> mappers = new EnumMap<>(CacheCodecFormat.class);
+    private final CacheCodecFormat writeFormat;
+    private final int compressionThreshold;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    public CacheValueCodec(
+        @Value("${app.cache.codec.format:SMILE}") CacheCodecFormat writeFormat,
+        @Value("${app.cache.codec.compression-threshold:1024}") int compressionThreshold) {
+
+        this.writeFormat = writeFormat;
+        this.compressionThreshold = compressionThreshold;
+
+        this.mappers.put(CacheCodecFormat.SMILE, createMapper(new ObjectMapper(new SmileFactory())));
+        this.mappers.put(CacheCodecFormat.CBOR, createMapper(new ObjectMapper(new CBORFactory())));
+    }
+
+    public byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        byte[] payload;
+        try {
+            payload = this.mappers.get(this.writeFormat).writeValueAsBytes(value);
+        } catch (IOException ex) {
+            var errMsg = "failed to encode cache value of type: " + value.getClass().getName();
+            log.error(errMsg, ex);
+            throw new UnknownException(errMsg, ex);
+        }
+
+        if (this.compressionThreshold <= 0 || payload.length < this.compressionThreshold) {
+            var encoded = new byte[HEADER_SIZE + payload.length];
+            this.writeHeader(encoded, (byte) 0);
+            System.arraycopy(payload, 0, encoded, HEADER_SIZE, payload.length);
+
+            return encoded;
+        }
+
+        var maxCompressedLength = this.compressor.maxCompressedLength(payload.length);
+        var encoded = new byte[HEADER_SIZE + LENGTH_SIZE + maxCompressedLength];
+        this.writeHeader(encoded, FLAG_LZ4);
+        ByteBuffer.wrap(encoded, HEADER_SIZE, LENGTH_SIZE).putInt(payload.length);
+
+        var compressedLength = this.compressor.compress(payload, 0, payload.length, encoded, HEADER_SIZE + LENGTH_SIZE, maxCompressedLength);
+
+        return Arrays.copyOf(encoded, HEADER_SIZE + LENGTH_SIZE + compressedLength);
+    }
+
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return this.decode(bytes, this.mappers.get(this.writeFormat).constructType(type));
+    }
+
+    public <T> T decode(byte[] bytes, TypeReference<T> type) {
+        return this.decode(bytes, this.mappers.get(this.writeFormat).constructType(type));
+    }
+
+    public TypeFactory getTypeFactory() {
+        return this.mappers.get(this.writeFormat).getTypeFactory();
+    }
+
+    public <T> T decode(byte[] bytes, JavaType type) {
+        if (bytes == null || bytes.length == 0 || this.isLegacy(bytes)) {
+            return null;
+        }
+
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            log.warn("unknown cache value header, value will be treated as a cache miss");
+            return null;
+        }
+
+        if (bytes[1] > VERSION) {
+            log.warn("cache value was encoded with a newer codec version: {}, value will be treated as a cache miss", bytes[1]);
+            return null;
+        }
+
+        try {
+            var mapper = this.mappers.get(CacheCodecFormat.fromId(bytes[2]));
+            var isCompressed = (bytes[3] & FLAG_LZ4) != 0;
+            if (!isCompressed) {
+                return mapper.readValue(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE, type);
+            }
+
+            var originalLength = ByteBuffer.wrap(bytes, HEADER_SIZE, LENGTH_SIZE).getInt();
+            var payload = this.decompressor.decompress(bytes, HEADER_SIZE + LENGTH_SIZE, originalLength);
+
+            return mapper.readValue(payload, type);
+        } catch (Exception ex) {
+            log.warn("failed to decode cache value as {}, value will be treated as a cache miss", type, ex);
+            return null;
+        }
+    }
+
+    // jdk serialization streams start with the magic 0xACED
+    private boolean isLegacy(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
+    private void writeHeader(byte[] target, byte flags) {
+        target[0] = MAGIC;
+        target[1] = VERSION;
+        target[2] = this.writeFormat.getId();
+        target[3] = flags;
+    }
+
+    private static ObjectMapper createMapper(ObjectMapper mapper) {
+        return mapper
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.multitenant.services.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.dtos.cache.CacheWarmupResultDTO;
+import com.example.multitenant.services.messages.OrgMessagesService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * preloads the roles, categories authorized roles and the limits counters of the most active tenants
+ * (by the number of messages sent within 'app.cache.warmup.activity-window'), so the first requests after
+ * a deploy or a redis flush do not all miss the caches at once.
+ *
+ * runs on startup when 'app.cache.warmup.on-startup' is enabled and can be triggered from the app dashboard.
+ */
+@Slf4j
+@Service
+public class CacheWarmupService {
+    private final AuthCacheService authCacheService;
+    private final SubscriptionLimitChecker subscriptionLimitChecker;
+    private final OrgMessagesService orgMessagesService;
+    private final boolean onStartup;
+    private final int tenantsCount;
+    private final Duration activityWindow;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public CacheWarmupService(AuthCacheService authCacheService, SubscriptionLimitChecker subscriptionLimitChecker,
+        OrgMessagesService orgMessagesService,
+        @Value("${app.cache.warmup.on-startup:false}") boolean onStartup,
+        @Value("${app.cache.warmup.tenants:50}") int tenantsCount,
+        @Value("${app.cache.warmup.activity-window:P7D}") Duration activityWindow) {
+
+        this.authCacheService = authCacheService;
+        this.subscriptionLimitChecker = subscriptionLimitChecker;
+        this.orgMessagesService = orgMessagesService;
+        this.onStartup = onStartup;
+        this.tenantsCount = tenantsCount;
+        this.activityWindow = activityWindow;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.onStartup) {
+            return;
+        }
+
+        // must not delay the application from accepting traffic
+        Thread.ofVirtual().name("cache-warmup").start(() -> this.warmUp(this.tenantsCount));
+    }
+
+    /**
+     * returns null when another warm-up is still running.
+     */
+    public CacheWarmupResultDTO warmUp(int limit) {
+        if (!this.running.compareAndSet(false, true)) {
+            log.warn("cache warm-up was requested while another one is running");
+            return null;
+        }
+
+        try {
+            var start = System.nanoTime();
+            var since = Instant.now().minus(this.activityWindow);
+            var orgsIds = this.orgMessagesService.findMostActiveOrgIds(since, limit);
+
+            var warmedUp = new ArrayList<Integer>();
+            var failed = new ArrayList<Integer>();
+            for (var orgId : orgsIds) {
+                try {
+                    this.authCacheService.warmUpOrg(orgId);
+                    this.subscriptionLimitChecker.warmUpOrgCounts(orgId);
+                    warmedUp.add(orgId);
+                } catch (Exception ex) {
+                    log.error("failed to warm up the caches of organization {}", orgId, ex);
+                    failed.add(orgId);
+                }
+            }
+
+            var durationMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            log.info("cache warm-up finished, tenants: {}, failed: {}, took: {}ms", warmedUp.size(), failed.size(), durationMs);
+
+            return new CacheWarmupResultDTO(List.copyOf(warmedUp), List.copyOf(failed), durationMs);
+        } finally {
+            this.running.set(false);
+        }
+    }
+
+    public int getTenantsCount() {
+        return this.tenantsCount;
+    }
+}
@@ -15,6 +15,7 @@ import com.example.multitenant.exceptions.ResourceNotFoundException;
 import com.example.multitenant.models.Category;
 import com.example.multitenant.services.categories.CategoriesService;
 import com.example.multitenant.services.membership.MemberShipService;
+import com.fasterxml.jackson.core.type.TypeReference;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,40 +25,33 @@ import lombok.extern.slf4j.Slf4j;
 public class CategoriesCacheService {
     private final MemberShipService memberShipService;
     private final CategoriesService categoriesService;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheAsideLoader cacheAsideLoader;
     private final AuthCacheService authCacheService;
 
     private static final Duration CACHE_TTL = Duration.ofMinutes(30);
+    private static final String USER_ROLES_CATEGORIES_CACHE = "org:categories:user-roles";
+    private static final String CATEGORY_CACHE = "org:categories";
+    private static final TypeReference<List<CategoryViewDTO>> CATEGORIES_LIST_TYPE = new TypeReference<>() {};
 
     @LogMethod()
-    @SuppressWarnings("unchecked")
     public List<CategoryViewDTO> getCategories(Integer orgId, Long userId) {
         log.info("getting categories");
         var userOrgRoles = this.authCacheService.getUserOrgRoles(orgId, userId);
         var userOrgRolesIds = userOrgRoles.stream().map((role) -> role.getId()).toList();
 
         var key = this.getOrgCategoriesUserRolesCacheKey(orgId, userOrgRolesIds.toString());
-        var cached = this.redisTemplate.opsForValue().get(key);
 
-        if(cached == null) {
-            return this.fetchCategoriesAndCache(orgId, userId, userOrgRolesIds);
-        }
-
-        return (List<CategoryViewDTO>) cached;
+        return this.cacheAsideLoader.get(USER_ROLES_CATEGORIES_CACHE, key, CATEGORIES_LIST_TYPE, CACHE_TTL, () -> this.fetchCategories(orgId, userId));
     }
 
     @LogMethod
     public CategoryViewDTO getCategory(Integer orgId, Integer categoryId) {
         var key = this.getOrgCategoriesCacheKey(orgId, categoryId);
-        var cached = this.redisTemplate.opsForValue().get(key);
-        if(cached == null) {
-            return this.fetchCategory(orgId, categoryId);
-        }
-
-        return (CategoryViewDTO) cached;
+        return this.cacheAsideLoader.get(CATEGORY_CACHE, key, CategoryViewDTO.class, CACHE_TTL, () -> this.fetchCategory(orgId, categoryId));
     }
 
-    private List<CategoryViewDTO> fetchCategoriesAndCache(Integer orgId, long userId, List<Integer> userRolesIds) {
+    private List<CategoryViewDTO> fetchCategories(Integer orgId, long userId) {
         var categories = this.categoriesService.findAllWithChannelsAndRoles(orgId);
         var membership = this.memberShipService.findUserMembershipWithRoles(orgId, userId);
         
@@ -67,8 +61,6 @@ public class CategoriesCacheService {
             });
         }).map((cat) -> cat.toViewDTO()).toList();
 
-        this.setOrgCategoriesUserRoles(orgId, filteredCategoriesView, userRolesIds);
-
         return filteredCategoriesView;
     }
 
@@ -78,20 +70,7 @@ public class CategoriesCacheService {
             throw new ResourceNotFoundException("category", categoryId);
         }
 
-        var categoryView = category.toViewDTO();
-        this.setOrgCategories(orgId, categoryView);
-
-        return categoryView;
-    }
-
-    private void setOrgCategoriesUserRoles(Integer orgId, List<CategoryViewDTO> categories, List<Integer> rolesIds) {
-        var key = this.getOrgCategoriesUserRolesCacheKey(orgId, rolesIds.toString());
-        this.redisTemplate.opsForValue().set(key, categories, CACHE_TTL);
-    }
-
-    private void setOrgCategories(Integer orgId, CategoryViewDTO category) {
-        var key = this.getOrgCategoriesCacheKey(orgId, category.getId());
-        this.redisTemplate.opsForValue().set(key, category, CACHE_TTL);
+        return category.toViewDTO();
     }
 
     public void invalidateOrgCategoriesUserRoles(Integer orgId, Serializable rolesIds) {
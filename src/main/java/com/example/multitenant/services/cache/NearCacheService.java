@@ -0,0 +1,124 @@
+package com.example.multitenant.services.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.services.metrics.CacheMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * in-process (L1) cache that sits in front of the redis (L2) caches.
+ * entries are bounded by size and each entry carries its own ttl, invalidations are applied locally
+ * and then broadcasted over redis pub/sub so the other nodes drop their copies as well.
+ */
+@Slf4j
+@Service
+public class NearCacheService implements MessageListener {
+    public static final String INVALIDATION_CHANNEL = "cache:near:invalidations";
+    private static final String KEYS_SEPARATOR = "\n";
+
+    // used to skip the messages this node has published (it already invalidated locally)
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RedisTemplate<String, String> redisTemplate;
+    private final CacheMetrics cacheMetrics;
+    private final Cache<String, NearCacheEntry> cache;
+
+    public NearCacheService(RedisTemplate<String, String> redisTemplate, CacheMetrics cacheMetrics,
+        @Value("${app.cache.near.max-size:10000}") long maxSize) {
+
+        this.redisTemplate = redisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new NearCacheEntryExpiry())
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheName, String key) {
+        var entry = this.cache.getIfPresent(key);
+        if(entry == null) {
+            this.cacheMetrics.miss(CacheMetrics.NEAR_LAYER, cacheName);
+            return null;
+        }
+
+        this.cacheMetrics.hit(CacheMetrics.NEAR_LAYER, cacheName);
+        return (T) entry.value();
+    }
+
+    public void put(String key, Object value, Duration ttl) {
+        if(value == null) {
+            return;
+        }
+
+        this.cache.put(key, new NearCacheEntry(value, ttl.toNanos()));
+    }
+
+    public void invalidate(String key) {
+        this.invalidate(List.of(key));
+    }
+
+    public void invalidate(Collection<String> keys) {
+        if(keys.isEmpty()) {
+            return;
+        }
+
+        this.cache.invalidateAll(keys);
+        this.publishInvalidation(keys);
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        var body = new String(message.getBody(), StandardCharsets.UTF_8);
+        var parts = body.split(KEYS_SEPARATOR);
+        if(parts.length < 2 || parts[0].equals(this.nodeId)) {
+            return;
+        }
+
+        var keys = List.of(parts).subList(1, parts.length);
+        this.cache.invalidateAll(keys);
+    }
+
+    private void publishInvalidation(Collection<String> keys) {
+        var message = this.nodeId + KEYS_SEPARATOR + String.join(KEYS_SEPARATOR, keys);
+        try {
+            this.redisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception ex) {
+            // other nodes will still converge once the local entries ttl is reached
+            log.error("failed to publish near-cache invalidation for keys {}", keys, ex);
+        }
+    }
+
+    private record NearCacheEntry(Object value, long ttlNanos) {}
+
+    private static class NearCacheEntryExpiry implements Expiry<String, NearCacheEntry> {
+        @Override
+        public long expireAfterCreate(String key, NearCacheEntry entry, long currentTime) {
+            return entry.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, NearCacheEntry entry, long currentTime, long currentDuration) {
+            return entry.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, NearCacheEntry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -6,30 +6,24 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import com.example.multitenant.services.organizationsrestrictions.OrgsRestrictionsService;
-import com.example.multitenant.services.restrictions.RestrictionsService;
 
 import lombok.RequiredArgsConstructor;
 
 @RequiredArgsConstructor
 @Service
 public class OrgRestrictionsCacheSerivce {
-    private final RedisTemplate<String, Boolean> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheAsideLoader cacheAsideLoader;
     private final OrgsRestrictionsService organizationRestrictionsService;
     private static final Duration CACHE_TTL = Duration.ofMinutes(30);
+    private static final String CACHE_NAME = "org:restrictions";
 
     public Boolean getIsRestricted(Integer orgId, Long userId) {
-        var val = this.getKeyValue(orgId, userId);
-        if(val == null) {
-            var isRestricted = this.fetchRestriction(orgId, userId);
-            this.setKey(orgId, userId, isRestricted);
-        } 
-        
-        return val;
+        return this.cacheAsideLoader.get(CACHE_NAME, this.getKey(orgId, userId), Boolean.class, CACHE_TTL, () -> this.fetchRestriction(orgId, userId));
     }
 
     public void setKey(Integer orgId, Long userId ,Boolean value) {
-        var key = this.getKey(orgId, userId);
-        this.redisTemplate.opsForValue().set(key, value, CACHE_TTL);
+        this.cacheAsideLoader.put(this.getKey(orgId, userId), value, CACHE_TTL);
     }
 
     public void invalidateKey(Integer orgId, Long userId) {
@@ -40,12 +34,7 @@ public class OrgRestrictionsCacheSerivce {
         return this.organizationRestrictionsService.isUserRestricted(userId, orgId);
     }
 
-    private Boolean getKeyValue(Integer orgId, Long userId) {
-        var key = this.getKey(orgId, userId);
-        return this.redisTemplate.opsForValue().get(key);
-    }
-
     private String getKey(Integer orgId, Long userId) {
         return "org:"+ orgId +":user:"+ userId +":restrictions" ;
     }
-}
\ No newline at end of file
+}
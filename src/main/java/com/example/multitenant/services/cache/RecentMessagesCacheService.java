@@ -0,0 +1,314 @@
+package com.example.multitenant.services.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
+import com.example.multitenant.models.OrgMessage;
+import com.example.multitenant.services.metrics.CacheMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * keeps the most recent 'capacity' messages of each channel in a redis sorted set (score = message id) so the first
+ * page of the channel history is served without touching postgres, hot channels are also kept for 'local-ttl' in the
+ * in-process {@link NearCacheService}. a near copy is tagged with the generation of the channel it was read at and only
+ * served while the generation in redis is the same, so a read costs one GET instead of reading and decoding the window
+ * and the writes do not have to invalidate the near caches of all the nodes.
+ *
+ * the window is updated on the write path (create/update/delete) and seeded from the database on a miss:
+ * - writes only touch an existing window, a missing window is seeded by the next read.
+ * - every write bumps a per-channel generation, a seed that raced with a write is discarded instead of
+ *   overwriting the window with a stale database read.
+ * - when the channel had less than 'capacity' messages at seed time a sentinel (score 0) marks the window as the
+ *   complete history, trimming the window evicts the sentinel first.
+ *
+ * a page that the window can not fully answer (e.g. after deletes shrank it) falls back to the database.
+ */
+@Slf4j
+@Service
+public class RecentMessagesCacheService {
+    private static final String CACHE_NAME = "channel:recent-messages";
+    private static final byte[] COMPLETE_SENTINEL = "__complete__".getBytes(StandardCharsets.UTF_8);
+
+    // KEYS[1] = window, KEYS[2] = generation, ARGV[1] = message id, ARGV[2] = encoded message, ARGV[3] = capacity, ARGV[4] = ttl ms
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('INCR', KEYS[2])
+        redis.call('PEXPIRE', KEYS[2], ARGV[4])
+        if redis.call('EXISTS', KEYS[1]) == 0 then
+            return 0
+        end
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[1])
+        redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+        redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))
+        return 1
+        """, Long.class);
+
+    // same arguments as the append, only replaces a message that is inside the window
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('INCR', KEYS[2])
+        redis.call('PEXPIRE', KEYS[2], ARGV[4])
+        if redis.call('ZCOUNT', KEYS[1], ARGV[1], ARGV[1]) == 0 then
+            return 0
+        end
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[1])
+        redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+        return 1
+        """, Long.class);
+
+    // KEYS[1] = window, KEYS[2] = generation, ARGV[1] = message id, ARGV[2] = ttl ms
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('INCR', KEYS[2])
+        redis.call('PEXPIRE', KEYS[2], ARGV[2])
+        return redis.call('ZREMRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[1])
+        """, Long.class);
+
+    // KEYS[1] = window, KEYS[2] = generation, ARGV[1] = generation read before the database query, ARGV[2] = ttl ms,
+    // ARGV[3..] = score/member pairs, returns 0 when a write happened in between (the seed is discarded)
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>("""
+        local generation = redis.call('GET', KEYS[2]) or '0'
+        if generation ~= ARGV[1] then
+            return 0
+        end
+        redis.call('DEL', KEYS[1])
+        for i = 3, #ARGV, 2 do
+            redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+        end
+        redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        return 1
+        """, Long.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheValueCodec cacheValueCodec;
+    private final NearCacheService nearCacheService;
+    private final MeterRegistry meterRegistry;
+    private final CacheMetrics cacheMetrics;
+    private final boolean enabled;
+    private final int capacity;
+    private final Duration ttl;
+    private final Duration localTtl;
+
+    public RecentMessagesCacheService(RedisTemplate<String, byte[]> redisTemplate, CacheValueCodec cacheValueCodec,
+        NearCacheService nearCacheService, MeterRegistry meterRegistry, CacheMetrics cacheMetrics,
+        @Value("${app.messages.recent-cache.enabled:true}") boolean enabled,
+        @Value("${app.messages.recent-cache.capacity:100}") int capacity,
+        @Value("${app.messages.recent-cache.ttl:PT30M}") Duration ttl,
+        @Value("${app.messages.recent-cache.local-ttl:PT2S}") Duration localTtl) {
+
+        this.redisTemplate = redisTemplate;
+        this.cacheValueCodec = cacheValueCodec;
+        this.nearCacheService = nearCacheService;
+        this.meterRegistry = meterRegistry;
+        this.cacheMetrics = cacheMetrics;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.ttl = ttl;
+        this.localTtl = localTtl;
+    }
+
+    /**
+     * the latest page of the channel history or null when the window can not answer it (the caller reads the database).
+     * @param loader loads the latest n messages of the channel from the database, newest first
+     */
+    public CursorPage<OrgMessageHistoryViewDTO, Integer> getLatestPage(Integer channelId, int size, IntFunction<List<OrgMessageHistoryViewDTO>> loader) {
+        if (!this.enabled || size >= this.capacity) {
+            this.record("bypass");
+            return null;
+        }
+
+        try {
+            var lookup = this.getWindow(channelId, loader);
+            var page = this.toPage(lookup.window(), size);
+
+            // one outcome per request: where the page came from, or 'bypass' when the database has to answer it
+            this.record((page != null) ? lookup.result() : "bypass");
+            return page;
+        } catch (Exception ex) {
+            log.error("failed to read the recent messages of channel {}, reading the database", channelId, ex);
+            this.record("error");
+            return null;
+        }
+    }
+
+    public void onCreated(OrgMessage message) {
+        this.write(message.getChannelId(), APPEND_SCRIPT, message.getId(), this.cacheValueCodec.encode(toHistoryView(message)));
+    }
+
+    public void onUpdated(OrgMessage message) {
+        this.write(message.getChannelId(), REPLACE_SCRIPT, message.getId(), this.cacheValueCodec.encode(toHistoryView(message)));
+    }
+
+    public void onDeleted(Integer channelId, Integer messageId) {
+        if (!this.enabled) {
+            return;
+        }
+
+        try {
+            this.redisTemplate.execute(REMOVE_SCRIPT, this.getKeys(channelId), this.bytes(messageId), this.bytes(this.ttl.toMillis()));
+        } catch (Exception ex) {
+            log.error("failed to remove message {} from the recent messages of channel {}", messageId, channelId, ex);
+            this.evict(channelId);
+        }
+    }
+
+    private void write(Integer channelId, RedisScript<Long> script, Integer messageId, byte[] encoded) {
+        if (!this.enabled) {
+            return;
+        }
+
+        try {
+            this.redisTemplate.execute(script, this.getKeys(channelId), this.bytes(messageId), encoded,
+                this.bytes(this.capacity), this.bytes(this.ttl.toMillis()));
+        } catch (Exception ex) {
+            log.error("failed to update the recent messages of channel {}", channelId, ex);
+            this.evict(channelId);
+        }
+    }
+
+    private CursorPage<OrgMessageHistoryViewDTO, Integer> toPage(RecentWindow window, int size) {
+        if (window.messages().size() > size) {
+            var page = window.messages().subList(0, size);
+            return CursorPage.of(page, page.get(page.size() - 1).getId(), true);
+        }
+
+        if (window.complete()) {
+            return CursorPage.of(window.messages(), null, false);
+        }
+
+        return null;
+    }
+
+    private WindowLookup getWindow(Integer channelId, IntFunction<List<OrgMessageHistoryViewDTO>> loader) {
+        // read before the window, a window is never tagged with a generation newer than its content
+        var generation = this.readGeneration(channelId);
+
+        var nearCacheKey = this.getNearCacheKey(channelId);
+        RecentWindow local = this.nearCacheService.get(CACHE_NAME, nearCacheKey);
+        if (local != null && local.generation().equals(generation)) {
+            return new WindowLookup(local, "near-hit");
+        }
+
+        String result;
+        var window = this.readWindow(channelId, generation);
+        if (window != null) {
+            result = "hit";
+            this.cacheMetrics.hit(CacheMetrics.REDIS_LAYER, CACHE_NAME);
+        } else {
+            result = "miss";
+            this.cacheMetrics.miss(CacheMetrics.REDIS_LAYER, CACHE_NAME);
+            var start = System.nanoTime();
+            window = this.seedWindow(channelId, generation, loader);
+            this.cacheMetrics.recordLoad(CACHE_NAME, System.nanoTime() - start);
+        }
+
+        this.nearCacheService.put(nearCacheKey, window, this.localTtl);
+        return new WindowLookup(window, result);
+    }
+
+    private String readGeneration(Integer channelId) {
+        var generation = this.redisTemplate.opsForValue().get(this.getGenerationKey(channelId));
+        return (generation != null) ? new String(generation, StandardCharsets.UTF_8) : "0";
+    }
+
+    private RecentWindow readWindow(Integer channelId, String generation) {
+        var entries = this.redisTemplate.opsForZSet().reverseRangeWithScores(this.getWindowKey(channelId), 0, this.capacity);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+
+        var messages = new ArrayList<OrgMessageHistoryViewDTO>(entries.size());
+        var complete = false;
+        for (var entry : entries) {
+            if (entry.getScore() != null && entry.getScore() == 0) {
+                complete = true;
+                continue;
+            }
+
+            messages.add(this.cacheValueCodec.decode(entry.getValue(), OrgMessageHistoryViewDTO.class));
+        }
+
+        return new RecentWindow(List.copyOf(messages), complete, generation);
+    }
+
+    private RecentWindow seedWindow(Integer channelId, String generation, IntFunction<List<OrgMessageHistoryViewDTO>> loader) {
+        var messages = loader.apply(this.capacity);
+        var complete = messages.size() < this.capacity;
+
+        var args = new ArrayList<byte[]>(messages.size() * 2 + 4);
+        args.add(this.bytes(generation));
+        args.add(this.bytes(this.ttl.toMillis()));
+        for (var message : messages) {
+            args.add(this.bytes(message.getId()));
+            args.add(this.cacheValueCodec.encode(message));
+        }
+
+        if (complete) {
+            args.add(this.bytes(0));
+            args.add(COMPLETE_SENTINEL);
+        }
+
+        var seeded = this.redisTemplate.execute(SEED_SCRIPT, this.getKeys(channelId), args.toArray());
+        if (seeded == null || seeded == 0) {
+            log.debug("recent messages seed of channel {} was discarded, the channel was written meanwhile", channelId);
+        }
+
+        return new RecentWindow(List.copyOf(messages), complete, generation);
+    }
+
+    // a failed write may not have bumped the generation, the near copies are dropped too
+    private void evict(Integer channelId) {
+        this.nearCacheService.invalidate(this.getNearCacheKey(channelId));
+        try {
+            this.redisTemplate.delete(this.getWindowKey(channelId));
+        } catch (Exception ex) {
+            log.error("failed to evict the recent messages of channel {}, it will expire with its ttl", channelId, ex);
+        }
+    }
+
+    private void record(String result) {
+        this.meterRegistry.counter("app.cache.recent-messages.requests", "result", result).increment();
+    }
+
+    private List<String> getKeys(Integer channelId) {
+        return List.of(this.getWindowKey(channelId), this.getGenerationKey(channelId));
+    }
+
+    private String getWindowKey(Integer channelId) {
+        return "channel:" + channelId + ":recent-messages";
+    }
+
+    private String getGenerationKey(Integer channelId) {
+        return "channel:" + channelId + ":recent-messages:generation";
+    }
+
+    private String getNearCacheKey(Integer channelId) {
+        return "near:channel:" + channelId + ":recent-messages";
+    }
+
+    private byte[] bytes(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static OrgMessageHistoryViewDTO toHistoryView(OrgMessage message) {
+        var sender = message.getSender();
+        return new OrgMessageHistoryViewDTO(message.getId(), message.getContent(), message.getIsUpdated(),
+            message.getCreatedAt(), message.getUpdatedAt(), sender.getId(), sender.getFirstName(), sender.getLastName(), sender.getAvatarUrl());
+    }
+
+    // messages are ordered newest first, generation is the channel generation the window was read at
+    private record RecentWindow(List<OrgMessageHistoryViewDTO> messages, boolean complete, String generation) {}
+
+    // result is 'near-hit', 'hit' or 'miss' (seeded from the database)
+    private record WindowLookup(RecentWindow window, String result) {}
+}
@@ -12,23 +12,18 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 @Service
 public class RestrictionsCacheSerivce {
-    private final RedisTemplate<String, Boolean> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheAsideLoader cacheAsideLoader;
     private final RestrictionsService restrictionsService;
     private static final Duration CACHE_TTL = Duration.ofMinutes(5);
+    private static final String CACHE_NAME = "app:restrictions";
     
     public Boolean getIsRestricted(Long userId) {
-        var val = this.getKeyValue(userId);
-        if(val == null) {
-            val = this.fetchRestriction(userId);
-            this.setKey(userId, val);
-        } 
-        
-        return val;
+        return this.cacheAsideLoader.get(CACHE_NAME, this.getKey(userId), Boolean.class, CACHE_TTL, () -> this.fetchRestriction(userId));
     }
 
     public void setKey(Long userId ,Boolean value) {
-        var key = this.getKey(userId);
-        this.redisTemplate.opsForValue().set(key, value, CACHE_TTL);
+        this.cacheAsideLoader.put(this.getKey(userId), value, CACHE_TTL);
     }
 
     public void invalidateKey(Long userId) {
@@ -39,12 +34,7 @@ public class RestrictionsCacheSerivce {
         return this.restrictionsService.isUserRestricted(userId);
     }
 
-    private Boolean getKeyValue(Long userId) {
-        var key = this.getKey(userId);
-        return this.redisTemplate.opsForValue().get(key);
-    }
-
     private String getKey(Long userId) {
         return "app:restrictions:" + userId;
     }
-}
\ No newline at end of file
+}
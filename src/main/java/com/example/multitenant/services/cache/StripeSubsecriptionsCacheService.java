@@ -15,39 +15,39 @@ import lombok.RequiredArgsConstructor;
 @Service
 public class StripeSubsecriptionsCacheService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheAsideLoader cacheAsideLoader;
     private final StripeService stripeService;
     private static final Duration CACHE_TTL = Duration.ofMinutes(30);
+    private static final String CACHE_NAME = "org:subscription";
 
     public InternalStripeSubscriptionCacheDTO getSubscription(Integer orgId) {
-        var key = this.getKey(orgId);
-        var cached = redisTemplate.opsForValue().get(key);
-        if (cached == null) {
-            return loadSubscription(orgId);
-        }
-
-        return (InternalStripeSubscriptionCacheDTO) cached;
+        return this.cacheAsideLoader.get(CACHE_NAME, getKey(orgId), InternalStripeSubscriptionCacheDTO.class, CACHE_TTL, () -> this.fetchSubscription(orgId));
     }
 
     public InternalStripeSubscriptionCacheDTO loadSubscription(Integer orgId) {
-        var subscription = this.stripeService.getOrgActiveSubsecription(orgId);
+        var subscription = this.fetchSubscription(orgId);
         if (subscription != null) {
-            redisTemplate.opsForValue().set(getKey(orgId), subscription.toCacheDTO(), CACHE_TTL);
+            this.cacheAsideLoader.put(getKey(orgId), subscription, CACHE_TTL);
         }
 
-        return subscription == null ? null : subscription.toCacheDTO();
+        return subscription;
     }
 
     public void setSubscription(Integer orgId, InternalStripeSubscription subscription) {
-        var key = getKey(orgId);
-        redisTemplate.opsForValue().set(key, subscription, CACHE_TTL);
+        this.cacheAsideLoader.put(getKey(orgId), subscription.toCacheDTO(), CACHE_TTL);
     }
 
     public void invalidateSubscriptionCache(Integer orgId) {
         redisTemplate.delete(getKey(orgId));
     }
 
+    private InternalStripeSubscriptionCacheDTO fetchSubscription(Integer orgId) {
+        var subscription = this.stripeService.getOrgActiveSubsecription(orgId);
+        return subscription == null ? null : subscription.toCacheDTO();
+    }
+
     private String getKey(Integer orgId) {
         return "org:subscription:" + orgId;
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,14 @@
 package com.example.multitenant.services.cache;
 
 import java.io.Serializable;
-import java.time.Duration;
-import java.util.function.Function;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import com.example.multitenant.common.annotations.contract.LogMethod;
@@ -15,11 +19,20 @@ import com.example.multitenant.models.enums.StripePlan;
 import com.example.multitenant.services.categories.CategoriesService;
 import com.example.multitenant.services.channels.ChannelsService;
 import com.example.multitenant.services.membership.MemberShipService;
+import com.example.multitenant.services.metrics.TenantMetricTags;
 import com.example.multitenant.services.security.OrgRolesService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * the limits counters are reserved and released atomically on redis (one round trip each) using lua scripts,
+ * therefore concurrent requests of the same tenant can not exceed the plan limit and no tenant lock is needed.
+ *
+ * a counter that is missing on redis is seeded from the database by the reserving request.
+ */
 @Slf4j
 @RequiredArgsConstructor
 @Service
@@ -30,27 +43,71 @@ public class SubscriptionLimitChecker {
     private final ChannelsService channelsService;
     private final RedisTemplate<String, Long> redisTemplate;
     private final StripePlansConfig stripePlansConfig;
-
-    public void validateLimitNotExceeded(Integer orgId, String plan, StripeLimit limit) {
-        var currentCount = this.getCounterFunction(limit).apply(orgId);
+    private final CacheBulkOperations cacheBulkOperations;
+    private final MeterRegistry meterRegistry;
+    private final TenantMetricTags tenantMetricTags;
+
+    private static final long LIMIT_EXCEEDED = -1;
+    private static final long COUNTER_MISSING = -2;
+    private static final long NO_SEED = -1;
+
+    // KEYS[1] = counter, ARGV[1] = max allowed, ARGV[2] = seed used when the counter is missing (-1 = no seed)
+    // returns the new count, -1 when the limit is reached or -2 when the counter is missing and no seed was given
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+        local current = redis.call('GET', KEYS[1])
+        if not current then
+            if tonumber(ARGV[2]) < 0 then
+                return -2
+            end
+            current = ARGV[2]
+            redis.call('SET', KEYS[1], current)
+        end
+        if tonumber(current) >= tonumber(ARGV[1]) then
+            return -1
+        end
+        return redis.call('INCR', KEYS[1])
+        """, Long.class);
+
+    // KEYS[1] = counter, returns the new count or -2 when the counter is missing (it will be seeded from the database on the next reserve)
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+        local current = redis.call('GET', KEYS[1])
+        if not current then
+            return -2
+        end
+        if tonumber(current) <= 0 then
+            return 0
+        end
+        return redis.call('DECR', KEYS[1])
+        """, Long.class);
+
+    /**
+     * increments the tenant counter of the given limit only if its under the plan max allowed.
+     * @throws PlanLimitExceededException when the limit is reached
+     */
+    public long reserve(Integer orgId, String plan, StripeLimit limit) {
+        var key = this.getCounterKey(orgId, limit);
         var maxAllowed = this.stripePlansConfig.getMaxAllowed(limit, StripePlan.fromValue(plan));
-    
-        if (currentCount >= maxAllowed) {
-            var errMsg = String.format("%s exceeded limit for plan: '%s'", limit.getLimit(), plan);
-            log.warn(errMsg);
-            throw new PlanLimitExceededException(errMsg);
-        }
+
+        return this.reserve(key, maxAllowed, limit, plan, () -> this.countFromDatabase(orgId, limit));
     }
 
-    public void validateCategoriesChannelsLimitNotExceeded(Integer orgId, String plan, StripeLimit limit, Integer categoryId) {
-        var currentCount = this.getOrgCategoryChannelCount(orgId, categoryId);
+    /**
+     * increments the category channels counter only if its under the plan max allowed.
+     * @throws PlanLimitExceededException when the limit is reached
+     */
+    public long reserveCategoryChannel(Integer orgId, String plan, StripeLimit limit, Integer categoryId) {
+        var key = this.getCategoryChannelsCountKey(orgId, categoryId);
         var maxAllowed = this.stripePlansConfig.getMaxAllowed(limit, StripePlan.fromValue(plan));
-    
-        if (currentCount >= maxAllowed) {
-            var errMsg = String.format("%s exceeded for plan: '%s'", limit.getLimit(), plan);
-            log.warn(errMsg);
-            throw new PlanLimitExceededException(errMsg);
-        }
+
+        return this.reserve(key, maxAllowed, limit, plan, () -> this.channelsService.countChannelsByCategoryId(orgId, categoryId));
+    }
+
+    public void release(Integer orgId, StripeLimit limit) {
+        this.release(this.getCounterKey(orgId, limit));
+    }
+
+    public void releaseCategoryChannel(Integer orgId, Integer categoryId) {
+        this.release(this.getCategoryChannelsCountKey(orgId, categoryId));
     }
 
     @LogMethod
@@ -97,6 +154,17 @@ public class SubscriptionLimitChecker {
         return (long) cached;
     }
 
+    // seeds the missing org roles, categories and members counters with a single pipelined write, used by the cache warm-up
+    public void warmUpOrgCounts(Integer orgId) {
+        var counts = new HashMap<String, Long>();
+        counts.put(this.getOrgRolesCountKey(orgId), this.organizationRolesService.countOrganizationRoles(orgId));
+        counts.put(this.getOrgCategoriesCountKey(orgId), this.categoriesService.countOrganizationCategories(orgId));
+        counts.put(this.getOrgMembersCountKey(orgId), this.memberShipService.countOrganizationMembers(orgId));
+
+        // a counter already seeded may hold reservations the database does not show yet, it is only seeded when missing
+        this.cacheBulkOperations.setAllIfAbsent(this.redisTemplate, counts, null);
+    }
+
     // * org category channels functions
     public long loadCategoryChannelsCount(Integer orgId, Integer categoryId) {
         var categoryChannelsCount = this.channelsService.countChannelsByCategoryId(orgId, categoryId);
@@ -105,22 +173,8 @@ public class SubscriptionLimitChecker {
         return categoryChannelsCount;
     }
 
-    public Long incrementCategoryChannelsCount(Integer orgId, Integer categoryId) {
-        var key = this.getCategoryChannelsCountKey(orgId, categoryId);
-        if(this.redisTemplate.hasKey(key)) {
-            return this.redisTemplate.opsForValue().increment(key);
-        } 
-
-        return this.loadCategoryChannelsCount(orgId, categoryId);
-    }
-
-    public Long decrementCategoryChannelsCount(Integer orgId, Integer categoryId) {
-        var key = this.getCategoryChannelsCountKey(orgId, categoryId);
-        if(this.redisTemplate.hasKey(key)) {
-            return this.redisTemplate.opsForValue().decrement(key);
-        } 
-
-        return this.loadCategoryChannelsCount(orgId, categoryId);
+    public void decrementCategoryChannelsCount(Integer orgId, Integer categoryId) {
+        this.releaseCategoryChannel(orgId, categoryId);
     }
 
     public void setCategoryChannelsCount(Integer orgId, Integer categoryId, long categoriesCount) {
@@ -139,25 +193,11 @@ public class SubscriptionLimitChecker {
         this.redisTemplate.opsForValue().set(key, channelCategoryCount);
         return channelCategoryCount;
     }
-    
-    public Long incrementOrgRolesCount(Integer orgId) {
-        var key = this.getOrgRolesCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) { 
-            return this.redisTemplate.opsForValue().increment(key);
-        }
-        
-        return this.loadOrgRolesCount(orgId);
-    }
-
-    public Long decrementOrgRolesCount(Integer orgId) {
-        var key = this.getOrgRolesCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) {
-            return this.redisTemplate.opsForValue().decrement(key);
-        }
 
-        return this.loadOrgRolesCount(orgId);
+    public void decrementOrgRolesCount(Integer orgId) {
+        this.release(orgId, StripeLimit.ROLES);
     }
-    
+
     public void setOrgRolesCount(Integer orgId, long rolesCount) {
         var key = this.getOrgRolesCountKey(orgId);
         this.redisTemplate.opsForValue().set(key, rolesCount);
@@ -175,22 +215,8 @@ public class SubscriptionLimitChecker {
         return categoriesCount;
     }
 
-    public Long incrementOrgCategoriesCount(Integer orgId) {
-        var key = this.getOrgCategoriesCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) {
-            return this.redisTemplate.opsForValue().increment(key); 
-        }
-
-        return this.loadOrgCategoriesCount(orgId);
-    }
-
-    public Long decrementOrgCategoriesCount(Integer orgId) {
-        var key = this.getOrgCategoriesCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) { 
-            return this.redisTemplate.opsForValue().decrement(key);
-        }
-
-        return this.loadOrgCategoriesCount(orgId);
+    public void decrementOrgCategoriesCount(Integer orgId) {
+        this.release(orgId, StripeLimit.CATEGORIES);
     }
 
     public void setOrgCategoriesCount(Integer orgId, long categoriesCount) {
@@ -210,44 +236,75 @@ public class SubscriptionLimitChecker {
         return membersCount;
     }
 
-    public Long incrementOrgMembersCount(Integer orgId) {
+    public void decrementOrgMembersCount(Integer orgId) {
+        this.release(orgId, StripeLimit.MEMBERS);
+    }
+
+    public void setOrgMembersCount(Integer orgId, long membersCount) {
         var key = this.getOrgMembersCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) {
-            return this.redisTemplate.opsForValue().increment(key);
-        }
+        this.redisTemplate.opsForValue().set(key, membersCount);
+    }
 
-        return loadOrgMembersCount(orgId);
+    private String getOrgMembersCountKey(Serializable orgId) {
+        return "org:limit-checker:" + orgId +":members-count";
     }
 
-    public Long decrementOrgMembersCount(Integer orgId) {
-        var key = this.getOrgMembersCountKey(orgId);
-        if(this.redisTemplate.hasKey(key)) { 
-            return  this.redisTemplate.opsForValue().decrement(key);
+    private long reserve(String key, long maxAllowed, StripeLimit limit, String plan, LongSupplier seedLoader) {
+        var start = System.nanoTime();
+        var outcome = "allowed";
+        var result = this.redisTemplate.execute(RESERVE_SCRIPT, List.of(key), maxAllowed, NO_SEED);
+        if (result != null && result == COUNTER_MISSING) {
+            // the count query runs outside of the script, the script seeds the counter only if still missing
+            outcome = "seeded";
+            result = this.redisTemplate.execute(RESERVE_SCRIPT, List.of(key), maxAllowed, seedLoader.getAsLong());
         }
 
-        return loadOrgMembersCount(orgId);
+        if (result == null || result == LIMIT_EXCEEDED) {
+            outcome = "exceeded";
+        }
+
+        Timer.builder("app.limits.check")
+            .description("time spent reserving a plan limit counter, 'seeded' includes the database count")
+            .tag("limit", limit.getLimit())
+            .tag("result", outcome)
+            .tags(this.tenantMetricTags.current())
+            .register(this.meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (result == null || result == LIMIT_EXCEEDED) {
+            var errMsg = String.format("%s exceeded limit for plan: '%s'", limit.getLimit(), plan);
+            log.warn(errMsg);
+            throw new PlanLimitExceededException(errMsg);
+        }
+
+        return result;
     }
 
-    public void setOrgMembersCount(Integer orgId, long membersCount) {
-        var key = this.getOrgMembersCountKey(orgId);
-        this.redisTemplate.opsForValue().set(key, membersCount);
+    private void release(String key) {
+        this.redisTemplate.execute(RELEASE_SCRIPT, List.of(key));
     }
 
-    private String getOrgMembersCountKey(Serializable orgId) {
-        return "org:limit-checker:" + orgId +":members-count";
+    private long countFromDatabase(Integer orgId, StripeLimit limit) {
+        return switch (limit) {
+            case MEMBERS -> this.memberShipService.countOrganizationMembers(orgId);
+            case ROLES -> this.organizationRolesService.countOrganizationRoles(orgId);
+            case CATEGORIES -> this.categoriesService.countOrganizationCategories(orgId);
+            default -> {
+                log.error("invalid limit was received {}", limit);
+                throw new IllegalArgumentException("unsupported StripeLimit: " + limit);
+            }
+        };
     }
 
-    private Function<Integer, Long> getCounterFunction(StripeLimit limit) {
-        switch (limit) {
-            case MEMBERS:
-                return this::getOrgMembersCount;
-            case ROLES:
-                return this::getOrgRolesCount;
-            case CATEGORIES:
-                return this::getOrgCategoriesCount;
-            default:
+    private String getCounterKey(Integer orgId, StripeLimit limit) {
+        return switch (limit) {
+            case MEMBERS -> this.getOrgMembersCountKey(orgId);
+            case ROLES -> this.getOrgRolesCountKey(orgId);
+            case CATEGORIES -> this.getOrgCategoriesCountKey(orgId);
+            default -> {
                 log.error("invalid limit was received {}", limit);
                 throw new IllegalArgumentException("unsupported StripeLimit: " + limit);
-        }
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -38,19 +38,6 @@ public class ChannelsService {
         return chan;
     }
 
-    public Channel findWithMessagesByIdAndOrganizationId(Integer id, Integer organizationId, Integer categoryId) {
-        var chan = this.channelsRepository.findWithMessagesByIdAndOrgId(id, organizationId);
-        if(chan == null) {
-            throw new ResourceNotFoundException("channel", id);
-        }
-        
-        if(!chan.getCategoryId().equals(categoryId)) {
-            throw new UnauthorizedUserException("channel", id);
-        }
-        
-        return chan;
-    }
-    
     public Channel create(Channel channel, Integer organizationId, Integer categoryId) {
         channel.setOrganizationId(organizationId);
         channel.setCategoryId(categoryId);
@@ -0,0 +1,179 @@
+package com.example.multitenant.services.conversations;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.multitenant.dtos.conversations.ConversationInboxViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
+import com.example.multitenant.exceptions.BadRequestException;
+import com.example.multitenant.models.Conversation;
+import com.example.multitenant.models.User;
+import com.example.multitenant.repository.ConversationsRepository;
+import com.example.multitenant.utils.AppUtils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * the conversations of a user ordered by their last message (newest first) with the unread messages of each one.
+ *
+ * the listing walks the (user_x_id, last_message_at DESC, id DESC) indexes from a keyset cursor, so a page costs the
+ * same whatever the number of conversations of the user. the unread counters are kept in a redis hash per user
+ * (conversation id -> unread messages), incremented when a message is added and cleared when the user reads the conversation.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConversationInboxService {
+    private static final String CURSOR_SEPARATOR = "_";
+
+    // the 'last_message_at' column was added with the migration time as default, the conversations that existed
+    // before are moved to the time of their last message (or of their creation when they have none, a new empty
+    // conversation gets both from the same insert). the statements only touch the rows that are still off, so running
+    // them again (every startup, every node) is harmless
+    private static final String BACKFILL_FROM_LAST_MESSAGE_SQL = """
+        UPDATE conversations c SET last_message_at = m.created_at
+        FROM conversation_messages m
+        WHERE m.id = c.last_message_id AND c.last_message_at <> m.created_at
+        """;
+    private static final String BACKFILL_FROM_CREATION_SQL = """
+        UPDATE conversations SET last_message_at = created_at
+        WHERE last_message_id IS NULL AND last_message_at > created_at + INTERVAL '1 second'
+        """;
+
+    private final ConversationsRepository conversationsRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillLastMessageAt() {
+        try {
+            var updated = this.jdbcTemplate.update(BACKFILL_FROM_LAST_MESSAGE_SQL) + this.jdbcTemplate.update(BACKFILL_FROM_CREATION_SQL);
+            if(updated > 0) {
+                log.info("backfilled the last message time of {} conversations", updated);
+            }
+        } catch (Exception ex) {
+            log.error("failed to backfill the last message time of the conversations", ex);
+        }
+    }
+
+    /**
+     * one page of the inbox of the user.
+     * @param cursor the 'nextCursor' of the previous page or null for the first one
+     */
+    public CursorPage<ConversationInboxViewDTO, String> getInbox(Long userId, String cursor, int size) {
+        Instant cursorAt = null;
+        Long cursorId = null;
+        if(cursor != null) {
+            var parts = cursor.split(CURSOR_SEPARATOR);
+            try {
+                cursorAt = Instant.parse(parts[0]);
+                cursorId = Long.valueOf(parts[1]);
+            } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                throw new BadRequestException("invalid inbox cursor");
+            }
+        }
+
+        var pageable = PageRequest.of(0, size + 1);
+        List<Conversation> asUser1;
+        List<Conversation> asUser2;
+        if(cursor == null) {
+            asUser1 = this.conversationsRepository.findLatestInboxAsUser1(userId, pageable);
+            asUser2 = this.conversationsRepository.findLatestInboxAsUser2(userId, pageable);
+        } else {
+            asUser1 = this.conversationsRepository.findInboxAsUser1Before(userId, cursorAt, cursorId, pageable);
+            asUser2 = this.conversationsRepository.findInboxAsUser2Before(userId, cursorAt, cursorId, pageable);
+        }
+
+        // both lists are already ordered, the merged page is the first 'size + 1' of them
+        var convs = new ArrayList<Conversation>(asUser1.size() + asUser2.size());
+        convs.addAll(asUser1);
+        convs.addAll(asUser2);
+        convs.sort(Comparator.comparing(Conversation::getLastMessageAt).thenComparing(Conversation::getId).reversed());
+
+        var hasNext = convs.size() > size;
+        List<Conversation> page = hasNext ? convs.subList(0, size) : convs;
+
+        String nextCursor = null;
+        if(hasNext) {
+            var last = page.get(page.size() - 1);
+            nextCursor = last.getLastMessageAt().toString() + CURSOR_SEPARATOR + last.getId();
+        }
+
+        var unreadCounts = this.getUnreadCounts(userId, page);
+        var views = new ArrayList<ConversationInboxViewDTO>(page.size());
+        for(int i = 0; i < page.size(); i++) {
+            var conv = page.get(i);
+            var other = (conv.getUser1().getId() == userId) ? conv.getUser2() : conv.getUser1();
+            views.add(new ConversationInboxViewDTO(conv, other, unreadCounts.get(i)));
+        }
+
+        return CursorPage.of(views, nextCursor, hasNext);
+    }
+
+    // number of the conversations of the user that have unread messages
+    public long countUnreadConversations(Long userId) {
+        var count = this.redisTemplate.opsForHash().size(this.getUnreadKey(userId));
+        return (count != null) ? count : 0;
+    }
+
+    /**
+     * counts the new message as unread for the other participant, the counter is incremented once the transaction
+     * of the message commits.
+     */
+    public void onMessageAdded(Conversation conv, User sender) {
+        var recipient = AppUtils.getWsTarget(sender, conv);
+        Runnable increment = () -> {
+            try {
+                this.redisTemplate.opsForHash().increment(this.getUnreadKey(recipient.getId()), String.valueOf(conv.getId()), 1);
+            } catch (Exception ex) {
+                log.error("failed to increment the unread messages of conversation {}", conv.getId(), ex);
+            }
+        };
+
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            increment.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment.run();
+                }
+            }
+        );
+    }
+
+    public void markAsRead(Long userId, Integer conversationId) {
+        this.redisTemplate.opsForHash().delete(this.getUnreadKey(userId), String.valueOf(conversationId));
+    }
+
+    private List<Long> getUnreadCounts(Long userId, List<Conversation> convs) {
+        if(convs.isEmpty()) {
+            return List.of();
+        }
+
+        List<Object> fields = convs.stream().map((conv) -> (Object) String.valueOf(conv.getId())).toList();
+        var values = this.redisTemplate.opsForHash().multiGet(this.getUnreadKey(userId), fields);
+
+        return values.stream().map((value) -> (value != null) ? Long.parseLong(value.toString()) : 0L).toList();
+    }
+
+    private String getUnreadKey(Long userId) {
+        return "user:" + userId + ":inbox:unread";
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.multitenant.services.conversations;
 
-import org.springframework.data.domain.Example;
 import org.springframework.security.authorization.AuthorizationDeniedException;
 import org.springframework.stereotype.Service;
 
@@ -19,6 +18,7 @@ import lombok.RequiredArgsConstructor;
 public class ConversationsService {
     private final ConversationsRepository conversationsRepository;
     private final ConversationMessagesRepository conversationMessagesRepository;
+    private final ConversationInboxService conversationInboxService;
     
     // creates a new conversation if there is none, if there is returns null
     public Conversation initConversation(User firstUser, User secondUser) {
@@ -36,12 +36,10 @@ public class ConversationsService {
     }
 
     public Conversation findConvWithSuchUsers(User firstUser, User secondUser) {
-        var probe = new Conversation();
-        probe.setUser1(firstUser);
-        probe.setUser2(secondUser);
-        probe.setUsersInOrder();
+        var firstId = firstUser.getId();
+        var secondId = secondUser.getId();
 
-        return this.conversationsRepository.findOne(Example.of(probe)).orElse(null);
+        return this.conversationsRepository.findByUserIds(Math.min(firstId, secondId), Math.max(firstId, secondId));
     }
 
     @Transactional
@@ -56,8 +54,10 @@ public class ConversationsService {
         
         this.conversationMessagesRepository.save(newMsg);
         conversation.setLastMessage(newMsg);
+        conversation.setLastMessageAt(newMsg.getCreatedAt());
         
         var conv = this.conversationsRepository.save(conversation);
+        this.conversationInboxService.onMessageAdded(conv, sender);
          
         return conv;
     }
@@ -0,0 +1,67 @@
+package com.example.multitenant.services.disributedlock;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Getter;
+
+/**
+ * handle of an acquired {@link DistributedLockService} lock, meant to be used with try-with-resources.
+ */
+public class DistributedLock implements AutoCloseable {
+    @Getter
+    private final String key;
+    @Getter
+    private final Integer tenantId;
+    @Getter
+    private final String resourceType;
+    @Getter
+    private final String ownerToken;
+
+    private final long acquiredAtNanos;
+    private final DistributedLockService lockService;
+    private final AtomicBoolean held = new AtomicBoolean(true);
+    private volatile ScheduledFuture<?> watchdog;
+
+    DistributedLock(String key, Integer tenantId, String resourceType, String ownerToken, DistributedLockService lockService) {
+        this.key = key;
+        this.tenantId = tenantId;
+        this.resourceType = resourceType;
+        this.ownerToken = ownerToken;
+        this.lockService = lockService;
+        this.acquiredAtNanos = System.nanoTime();
+    }
+
+    // false once released or when the watchdog failed to renew the lease (another owner may hold it now)
+    public boolean isHeld() {
+        return this.held.get();
+    }
+
+    @Override
+    public void close() {
+        if (this.held.compareAndSet(true, false)) {
+            this.cancelWatchdog();
+            this.lockService.release(this);
+        }
+    }
+
+    void markLost() {
+        this.held.set(false);
+        this.cancelWatchdog();
+    }
+
+    void setWatchdog(ScheduledFuture<?> watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    long getAcquiredAtNanos() {
+        return this.acquiredAtNanos;
+    }
+
+    private void cancelWatchdog() {
+        var current = this.watchdog;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+}
@@ -1,35 +1,127 @@
 package com.example.multitenant.services.disributedlock;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
-import lombok.RequiredArgsConstructor;
+import com.example.multitenant.exceptions.DistributedLockException;
+import com.example.multitenant.services.metrics.TenantMetricTags;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * we are applying locks sharding based on the tenant id 
+ * we are applying locks sharding based on the tenant id
  * therefore the same tenant/organization will use same lock all the time.
  * which ensures no spam passing the limit on categories/categories-channels
  * or members count in case too many invitations were accepted at same time.
+ *
+ * every lock is owned by a unique token and only its owner can renew/release it (compare-and-delete),
+ * a watchdog renews the lease while the lock is held so long handlers do not lose it,
+ * callers wait up to 'app.lock.wait-time' with an exponential backoff before a {@link DistributedLockException} is thrown.
+ *
+ * the locks are not fenced: a holder paused for longer than its lease (e.g. a long gc pause) can overlap with the next
+ * one, {@link DistributedLock#isHeld()} tells whether the lease was lost.
  */
-// TODO: adding a unique value to the locks to ensure only the intended lock will be unlocked and not the newly locked.
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class DistributedLockService {
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+        if redis.call('GET', KEYS[1]) == ARGV[1] then
+            return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        end
+        return 0
+        """, Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+        if redis.call('GET', KEYS[1]) == ARGV[1] then
+            return redis.call('DEL', KEYS[1])
+        end
+        return 0
+        """, Long.class);
+
     private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final TenantMetricTags tenantMetricTags;
+    private final Duration defaultLeaseTime;
+    private final Duration defaultWaitTime;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
 
-    public boolean acquireLock(Integer tenantId, String resourceType, long lockTimeout, TimeUnit timeUnit) {
-        var lockKey = getKey(tenantId, resourceType);
-        var isLocked = redisTemplate.opsForValue().setIfAbsent(lockKey, "locked", lockTimeout, timeUnit);
-        return Boolean.TRUE.equals(isLocked);
+    private final ScheduledExecutorService watchdogExecutor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("lock-watchdog").daemon().factory());
+
+    public DistributedLockService(RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry,
+        TenantMetricTags tenantMetricTags,
+        @Value("${app.lock.lease-time:PT30S}") Duration defaultLeaseTime,
+        @Value("${app.lock.wait-time:PT5S}") Duration defaultWaitTime,
+        @Value("${app.lock.backoff.initial:PT0.02S}") Duration initialBackoff,
+        @Value("${app.lock.backoff.max:PT0.5S}") Duration maxBackoff) {
+
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.tenantMetricTags = tenantMetricTags;
+        this.defaultLeaseTime = defaultLeaseTime;
+        this.defaultWaitTime = defaultWaitTime;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
     }
 
-    public void releaseLock(Integer tenantId, String resourceType) {
-        var lockKey = getKey(tenantId, resourceType);
-        redisTemplate.delete(lockKey);
+    public DistributedLock acquire(Integer tenantId, String resourceType) {
+        return this.acquire(tenantId, resourceType, this.defaultLeaseTime, this.defaultWaitTime);
+    }
+
+    /**
+     * waits up to the wait time for the lock, the lease is renewed by a watchdog until the lock is closed.
+     * @throws DistributedLockException when the lock could not be acquired within the wait time
+     */
+    public DistributedLock acquire(Integer tenantId, String resourceType, Duration leaseTime, Duration waitTime) {
+        var lockKey = this.getKey(tenantId, resourceType);
+        var ownerToken = UUID.randomUUID().toString();
+        var start = System.nanoTime();
+        var deadline = start + waitTime.toNanos();
+        var backoff = this.initialBackoff.toMillis();
+
+        while (true) {
+            var acquired = this.redisTemplate.opsForValue().setIfAbsent(lockKey, ownerToken, leaseTime);
+            if (Boolean.TRUE.equals(acquired)) {
+                this.recordWait(tenantId, resourceType, "acquired", start);
+
+                var lock = new DistributedLock(lockKey, tenantId, resourceType, ownerToken, this);
+                this.startWatchdog(lock, leaseTime);
+                return lock;
+            }
+
+            var remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                this.recordWait(tenantId, resourceType, "timeout", start);
+                throw new DistributedLockException(String.format("timed out waiting for lock %s after %sms", lockKey, waitTime.toMillis()));
+            }
+
+            // full jitter, so the waiters do not retry in lockstep
+            var sleepMs = Math.min(remainingMs, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.recordWait(tenantId, resourceType, "interrupted", start);
+                throw new DistributedLockException("interrupted while waiting for lock " + lockKey);
+            }
+
+            backoff = Math.min(backoff * 2, this.maxBackoff.toMillis());
+        }
     }
 
     public String getKey(Integer tenantId, String resourceType) {
@@ -42,7 +134,55 @@ public class DistributedLockService {
         return String.format("locks:org:%s:resource-type:%s", tenantId, resourceType);
     }
 
-    public String getTenantKey(Integer tenantId, String handler) {
-        return String.format("locks:org:tenant-lock:%s:%s", handler, tenantId);
+    @PreDestroy
+    public void shutdown() {
+        this.watchdogExecutor.shutdownNow();
+    }
+
+    void release(DistributedLock lock) {
+        Timer.builder("app.lock.hold")
+            .description("time the distributed locks were held")
+            .tag("resource", lock.getResourceType())
+            .tags(this.tenantMetricTags.of(lock.getTenantId()))
+            .register(this.meterRegistry)
+            .record(System.nanoTime() - lock.getAcquiredAtNanos(), TimeUnit.NANOSECONDS);
+
+        try {
+            var released = this.redisTemplate.execute(RELEASE_SCRIPT, List.of(lock.getKey()), lock.getOwnerToken());
+            if (released == null || released == 0) {
+                log.warn("lock {} was not released, its lease had expired and it may be owned by another holder", lock.getKey());
+            }
+        } catch (Exception ex) {
+            log.error("failed to release lock {}, it will expire with its lease", lock.getKey(), ex);
+        }
+    }
+
+    private void startWatchdog(DistributedLock lock, Duration leaseTime) {
+        var interval = Math.max(1, leaseTime.toMillis() / 3);
+        var lease = String.valueOf(leaseTime.toMillis());
+
+        var watchdog = this.watchdogExecutor.scheduleAtFixedRate(() -> {
+            try {
+                var renewed = this.redisTemplate.execute(RENEW_SCRIPT, List.of(lock.getKey()), lock.getOwnerToken(), lease);
+                if (renewed == null || renewed == 0) {
+                    log.warn("lock {} lease was lost before it was released", lock.getKey());
+                    lock.markLost();
+                }
+            } catch (Exception ex) {
+                log.error("failed to renew lock {} lease", lock.getKey(), ex);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        lock.setWatchdog(watchdog);
+    }
+
+    private void recordWait(Integer tenantId, String resourceType, String result, long startNanos) {
+        Timer.builder("app.lock.wait")
+            .description("time spent waiting to acquire the distributed locks")
+            .tag("resource", resourceType)
+            .tag("result", result)
+            .tags(this.tenantMetricTags.of(tenantId))
+            .register(this.meterRegistry)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     }
-}
\ No newline at end of file
+}
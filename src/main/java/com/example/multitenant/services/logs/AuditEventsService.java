@@ -0,0 +1,264 @@
+package com.example.multitenant.services.logs;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.multitenant.dtos.logs.LogsViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
+import com.example.multitenant.exceptions.BadRequestException;
+import com.example.multitenant.models.User;
+import com.example.multitenant.models.enums.AuditLogStorageMode;
+import com.example.multitenant.models.enums.LogEventType;
+import com.example.multitenant.models.logsmodels.AuditEventPayload;
+import com.example.multitenant.models.logsmodels.BaseLog;
+import com.example.multitenant.models.logsmodels.BaseOrganizationsLogs;
+import com.example.multitenant.repository.UsersRepository;
+import com.example.multitenant.repository.logsrepositories.BaseLogsRepository;
+import com.example.multitenant.utils.UuidV7;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * the JSONB storage of the audit logs ('app.logs.storage=JSONB'): one append-only 'audit_events' table.
+ *
+ * a log is a single insert (no subtype table) keyed by a time-ordered UUIDv7, so the ids of an organization sorted
+ * descending are its logs newest first and a page is one range scan of the (organization_id, id DESC) index.
+ * the fields of each log type are a typed jsonb payload ({@link AuditEventPayload}) mapped back to the log entities
+ * to render the same {@link LogsViewDTO} as the JOINED storage.
+ *
+ * 'app.logs.migrate-to-jsonb' copies the JOINED logs ('events_logs' and the subtype tables) at startup, the copy
+ * is idempotent (the new ids are derived from the old ones) so an interrupted migration is simply run again.
+ */
+@Slf4j
+@Service
+public class AuditEventsService {
+    private static final String CREATE_TABLE_SQL = """
+        CREATE TABLE IF NOT EXISTS audit_events (
+            id UUID PRIMARY KEY,
+            organization_id INTEGER,
+            log_type VARCHAR(31) NOT NULL,
+            event_type VARCHAR(50) NOT NULL,
+            timestamp TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            payload JSONB NOT NULL
+        )
+        """;
+
+    private static final String INSERT_SQL = """
+        INSERT INTO audit_events (id, organization_id, log_type, event_type, timestamp, payload)
+        VALUES (?, ?, ?, ?, ?, CAST(? AS JSONB))
+        ON CONFLICT (id) DO NOTHING
+        """;
+
+    private static final String SELECT_COLUMNS = "SELECT id, log_type, event_type, timestamp, payload::text AS payload FROM audit_events ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UsersRepository usersRepository;
+    private final BaseLogsRepository baseLogsRepository;
+    private final AuditLogStorageMode storageMode;
+    private final boolean migrate;
+    private final int migrationBatchSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RowMapper<StoredEvent> storedEventMapper = (rs, rowNum) -> this.toStoredEvent(rs.getObject("id", UUID.class),
+        rs.getString("log_type"), rs.getString("event_type"), rs.getTimestamp("timestamp").toInstant(), rs.getString("payload"));
+
+    public AuditEventsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+        UsersRepository usersRepository, BaseLogsRepository baseLogsRepository,
+        @Value("${app.logs.storage:JOINED}") AuditLogStorageMode storageMode,
+        @Value("${app.logs.migrate-to-jsonb:false}") boolean migrate,
+        @Value("${app.logs.migration-batch-size:1000}") int migrationBatchSize) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.usersRepository = usersRepository;
+        this.baseLogsRepository = baseLogsRepository;
+        this.storageMode = storageMode;
+        this.migrate = migrate;
+        this.migrationBatchSize = migrationBatchSize;
+    }
+
+    public boolean isEnabled() {
+        return this.storageMode == AuditLogStorageMode.JSONB;
+    }
+
+    // the table exists before the first log is written, the writer may write synchronously during the startup
+    @PostConstruct
+    public void init() {
+        if (this.isEnabled() || this.migrate) {
+            this.ensureTable();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (this.migrate) {
+            this.migrateJoinedLogs();
+        }
+    }
+
+    public AuditEventRow toRow(BaseLog auditLog) {
+        var organizationId = (auditLog instanceof BaseOrganizationsLogs orgLog) ? orgLog.getOrganizationId() : null;
+        var payload = AuditEventPayload.of(auditLog);
+
+        return new AuditEventRow(auditLog.getId(), organizationId, payload.logType(), auditLog.getEventType().name(),
+            auditLog.getTimestamp(), this.toJson(payload));
+    }
+
+    public void insert(List<AuditEventRow> rows) {
+        List<Object[]> params = rows.stream()
+            .map((row) -> new Object[] { row.id(), row.organizationId(), row.logType(), row.eventType(), Timestamp.from(row.timestamp()), row.payload() })
+            .toList();
+
+        this.jdbcTemplate.batchUpdate(INSERT_SQL, params);
+    }
+
+    /**
+     * one page of the audit log of the organization newest first.
+     * @param cursor the 'nextCursor' of the previous page (the id of its last log) or null for the first one
+     */
+    public CursorPage<LogsViewDTO, String> getOrgEvents(Integer organizationId, String cursor, int size) {
+        List<StoredEvent> events;
+        if (cursor == null) {
+            events = this.jdbcTemplate.query(SELECT_COLUMNS + "WHERE organization_id = ? ORDER BY id DESC LIMIT ?",
+                this.storedEventMapper, organizationId, size + 1);
+        } else {
+            UUID cursorId;
+            try {
+                cursorId = UUID.fromString(cursor);
+            } catch (IllegalArgumentException ex) {
+                throw new BadRequestException("invalid logs cursor");
+            }
+
+            events = this.jdbcTemplate.query(SELECT_COLUMNS + "WHERE organization_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                this.storedEventMapper, organizationId, cursorId, size + 1);
+        }
+
+        var hasNext = events.size() > size;
+        var page = hasNext ? events.subList(0, size) : events;
+        var views = this.toViews(page);
+        var nextCursor = hasNext ? page.get(page.size() - 1).id().toString() : null;
+
+        return CursorPage.of(views, nextCursor, hasNext);
+    }
+
+    // the logs older than the cutoff, the ids are time-ordered so the range is found on the primary key
+    public int deleteOlderThan(Instant cutoff) {
+        return this.jdbcTemplate.update("DELETE FROM audit_events WHERE id < ?", UuidV7.lowerBound(cutoff));
+    }
+
+    private void ensureTable() {
+        this.jdbcTemplate.execute(CREATE_TABLE_SQL);
+        this.jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_events_organization_id_id ON audit_events (organization_id, id DESC)");
+    }
+
+    // one batch of the users the payloads only know by id, then every log is rebuilt and rendered
+    private List<LogsViewDTO> toViews(List<StoredEvent> events) {
+        var userIds = new HashSet<Long>();
+        for (var event : events) {
+            switch (event.payload()) {
+                case AuditEventPayload.Kick kick -> userIds.add(kick.kickedId());
+                case AuditEventPayload.Invitation invitation -> userIds.add(invitation.invitedId());
+                case AuditEventPayload.RoleAssignment assignment -> userIds.add(assignment.assignedToId());
+                default -> { }
+            }
+        }
+
+        userIds.remove(null);
+        var users = new HashMap<Long, User>();
+        if (!userIds.isEmpty()) {
+            this.usersRepository.findAllById(userIds).forEach((user) -> users.put(user.getId(), user));
+        }
+
+        var views = new ArrayList<LogsViewDTO>(events.size());
+        for (var event : events) {
+            var auditLog = event.payload().toLog(users);
+            auditLog.setId(event.id());
+            auditLog.setEventType(event.eventType());
+            auditLog.setTimestamp(event.timestamp());
+            views.add(LogsViewDTO.of(auditLog));
+        }
+
+        return views;
+    }
+
+    private StoredEvent toStoredEvent(UUID id, String logType, String eventType, Instant timestamp, String payload) {
+        try {
+            var typed = this.objectMapper.readValue(payload, AuditEventPayload.typeOf(logType));
+            return new StoredEvent(id, LogEventType.valueOf(eventType), timestamp, typed);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("invalid payload of audit event " + id, ex);
+        }
+    }
+
+    private String toJson(AuditEventPayload payload) {
+        try {
+            return this.objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("failed to encode the audit event payload", ex);
+        }
+    }
+
+    /*
+     * reads the JOINED logs oldest first through jpa (one page per transaction) and inserts them as audit events,
+     * a log keeps its timestamp and gets a UUIDv7 of that timestamp derived from its old id
+     */
+    private void migrateJoinedLogs() {
+        log.info("migrating the JOINED audit logs to 'audit_events'");
+        var migrated = 0L;
+        var pageNumber = 0;
+        var sort = Sort.by(Sort.Direction.ASC, "timestamp", "id");
+
+        while (true) {
+            var currentPage = pageNumber;
+            var count = this.transactionTemplate.execute((status) -> {
+                var page = this.baseLogsRepository.findAll(PageRequest.of(currentPage, this.migrationBatchSize, sort));
+                var rows = new ArrayList<AuditEventRow>(page.getNumberOfElements());
+                for (var joinedLog : page.getContent()) {
+                    try {
+                        var timestamp = (joinedLog.getTimestamp() != null) ? joinedLog.getTimestamp() : Instant.EPOCH;
+                        var row = this.toRow(joinedLog);
+                        rows.add(new AuditEventRow(UuidV7.fromTimestamp(timestamp, joinedLog.getId()), row.organizationId(),
+                            row.logType(), row.eventType(), timestamp, row.payload()));
+                    } catch (Exception ex) {
+                        log.warn("skipping audit log {} that could not be migrated", joinedLog.getId(), ex);
+                    }
+                }
+
+                this.insert(rows);
+                return page.getNumberOfElements();
+            });
+
+            if (count == null || count == 0) {
+                break;
+            }
+
+            migrated += count;
+            pageNumber++;
+        }
+
+        log.info("migrated {} audit logs to 'audit_events'", migrated);
+    }
+
+    public record AuditEventRow(UUID id, Integer organizationId, String logType, String eventType, Instant timestamp, String payload) {}
+
+    private record StoredEvent(UUID id, LogEventType eventType, Instant timestamp, AuditEventPayload payload) {}
+}
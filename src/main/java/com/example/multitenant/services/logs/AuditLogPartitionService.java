@@ -0,0 +1,347 @@
+package com.example.multitenant.services.logs;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * keeps 'events_logs' range partitioned by month on its timestamp, enabled by 'app.logs.partitions.enabled'.
+ *
+ * the table carries the organization of the log (denormalized from the subtype tables) and is indexed on
+ * (organization_id, timestamp DESC, id DESC) in every partition, so the audit log of an organization is read newest
+ * first from the latest partitions only. the maintenance runs at startup then every 'maintenance-interval' on one
+ * node at a time (postgres advisory lock):
+ * - a plain 'events_logs' (created by hibernate) is migrated once to the partitioned table.
+ * - the partitions of the current month and the next 'premake-months' are created ahead of the inserts, a default
+ *   partition catches anything outside of them.
+ * - the partitions older than 'retention-months' are detached, which is all the partitions DDL transaction does for them.
+ *
+ * the retention then runs outside of that transaction (another advisory lock, no transaction around the batches):
+ * - the subtype tables are not partitioned (no timestamp), the rows of the logs of a detached partition are deleted
+ *   by id in batches of 'retention-batch-size' (one short transaction per batch) and the partition is dropped once
+ *   they are all gone. a detached partition left by an interrupted run is picked up again by the next one.
+ * - the expired rows of the default partition are deleted the same way, with their subtype rows.
+ * - with the JSONB storage the 'audit_events' older than 'retention-months' are deleted too (a range of its primary key).
+ */
+@Slf4j
+@Service
+public class AuditLogPartitionService {
+    // pg advisory lock keys of the partitions maintenance and of the retention
+    private static final long MAINTENANCE_LOCK_KEY = 0x6c6f67706172746eL;
+    private static final long RETENTION_LOCK_KEY = 0x6c6f677265746e6eL;
+    private static final String TABLE = "events_logs";
+    private static final String DEFAULT_PARTITION = "events_logs_default";
+    private static final String PARTITION_PREFIX = "events_logs_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // the joined subtype tables that carry an 'organization_id'
+    private static final List<String> ORG_SUBTYPE_TABLES = List.of("kicks_logs", "invitations_logs", "roles_assignments_logs",
+        "memberships_logs", "channels_logs", "categories_logs", "organization_messages_logs");
+    // all the joined subtype tables
+    private static final List<String> SUBTYPE_TABLES = List.of("kicks_logs", "invitations_logs", "roles_assignments_logs",
+        "memberships_logs", "channels_logs", "categories_logs", "organization_messages_logs", "auth_logs");
+
+    private static final String CREATE_PARTITIONED_SQL = """
+        CREATE TABLE events_logs (
+            id UUID NOT NULL,
+            log_type VARCHAR(31) NOT NULL,
+            event_type VARCHAR(50) NOT NULL,
+            timestamp TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            organization_id INTEGER,
+            PRIMARY KEY (id, timestamp)
+        ) PARTITION BY RANGE (timestamp)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditEventsService auditEventsService;
+    private final boolean enabled;
+    private final int premakeMonths;
+    private final int retentionMonths;
+    private final int retentionBatchSize;
+    private final Duration maintenanceInterval;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("audit-log-partitions").daemon().factory());
+
+    public AuditLogPartitionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+        AuditEventsService auditEventsService,
+        @Value("${app.logs.partitions.enabled:true}") boolean enabled,
+        @Value("${app.logs.partitions.premake-months:3}") int premakeMonths,
+        @Value("${app.logs.partitions.retention-months:12}") int retentionMonths,
+        @Value("${app.logs.partitions.retention-batch-size:1000}") int retentionBatchSize,
+        @Value("${app.logs.partitions.maintenance-interval:PT24H}") Duration maintenanceInterval) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditEventsService = auditEventsService;
+        this.enabled = enabled;
+        this.premakeMonths = premakeMonths;
+        this.retentionMonths = retentionMonths;
+        this.retentionBatchSize = retentionBatchSize;
+        this.maintenanceInterval = maintenanceInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.executor.scheduleWithFixedDelay(this::runMaintenance, 0, this.maintenanceInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    // a failure must not cancel the schedule, the maintenance is retried at the next interval
+    private void runMaintenance() {
+        var current = YearMonth.now(ZoneOffset.UTC);
+        var oldestKept = current.minusMonths(this.retentionMonths);
+        try {
+            this.transactionTemplate.executeWithoutResult((status) -> {
+                var locked = this.jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, MAINTENANCE_LOCK_KEY);
+                if (!Boolean.TRUE.equals(locked)) {
+                    return;
+                }
+
+                this.ensurePartitionedTable(current);
+                for (int i = 0; i <= this.premakeMonths; i++) {
+                    this.createPartition(current.plusMonths(i));
+                }
+
+                this.detachExpiredPartitions(oldestKept);
+            });
+        } catch (Exception ex) {
+            log.error("audit logs partitions maintenance failed", ex);
+        }
+
+        try {
+            this.runRetention(oldestKept);
+        } catch (Exception ex) {
+            log.error("audit logs retention failed", ex);
+        }
+    }
+
+    // the session lock lives on this connection, the batches run on their own connections and transactions
+    private void runRetention(YearMonth oldestKept) {
+        this.jdbcTemplate.execute((ConnectionCallback<Void>) (connection) -> {
+            try (var lock = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, RETENTION_LOCK_KEY);
+                try (var result = lock.executeQuery()) {
+                    if (!result.next() || !result.getBoolean(1)) {
+                        return null;
+                    }
+                }
+            }
+
+            try {
+                this.dropDetachedPartitions();
+                this.deleteExpiredDefaultRows(Timestamp.from(oldestKept.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant()));
+                if (this.auditEventsService.isEnabled()) {
+                    var deleted = this.auditEventsService.deleteOlderThan(oldestKept.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+                    log.info("deleted {} audit events older than {}", deleted, oldestKept);
+                }
+            } finally {
+                try (var unlock = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, RETENTION_LOCK_KEY);
+                    unlock.execute();
+                }
+            }
+
+            return null;
+        });
+    }
+
+    private void ensurePartitionedTable(YearMonth current) {
+        var kind = this.jdbcTemplate.queryForList("SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, TABLE);
+        if (kind.isEmpty()) {
+            this.createPartitionedTable();
+            return;
+        }
+
+        if ("p".equals(kind.get(0))) {
+            return;
+        }
+
+        log.warn("migrating '{}' to a partitioned table", TABLE);
+        this.migrateLegacyTable(current);
+    }
+
+    private void createPartitionedTable() {
+        this.jdbcTemplate.execute(CREATE_PARTITIONED_SQL);
+        this.jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + TABLE + " DEFAULT");
+        this.jdbcTemplate.execute("""
+            CREATE INDEX IF NOT EXISTS idx_events_logs_organization_id_timestamp
+            ON events_logs (organization_id, timestamp DESC, id DESC)
+            """);
+    }
+
+    /*
+     * the subtype tables reference 'events_logs(id)', a partitioned table can only be referenced through its whole
+     * primary key (id, timestamp) so the foreign keys are dropped, the logs are only inserted by the AuditLogWriterService
+     */
+    private void migrateLegacyTable(YearMonth current) {
+        var foreignKeys = this.jdbcTemplate.queryForList("""
+            SELECT conrelid::regclass::text AS table_name, conname::text AS constraint_name
+            FROM pg_constraint WHERE confrelid = to_regclass(?) AND contype = 'f'
+            """, TABLE);
+        for (var foreignKey : foreignKeys) {
+            this.jdbcTemplate.execute("ALTER TABLE " + foreignKey.get("table_name") + " DROP CONSTRAINT \"" + foreignKey.get("constraint_name") + "\"");
+        }
+
+        this.jdbcTemplate.execute("ALTER TABLE events_logs RENAME TO events_logs_legacy");
+        // the primary key index name is taken by the new table
+        this.jdbcTemplate.execute("ALTER INDEX IF EXISTS events_logs_pkey RENAME TO events_logs_legacy_pkey");
+        this.jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_events_logs_organization_id_timestamp RENAME TO idx_events_logs_legacy_organization_id_timestamp");
+        this.createPartitionedTable();
+
+        var oldest = this.jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM events_logs_legacy", Timestamp.class);
+        if (oldest != null) {
+            for (var month = YearMonth.from(oldest.toInstant().atZone(ZoneOffset.UTC)); month.isBefore(current); month = month.plusMonths(1)) {
+                this.createPartition(month);
+            }
+        }
+
+        this.jdbcTemplate.update("""
+            INSERT INTO events_logs (id, log_type, event_type, timestamp, organization_id)
+            SELECT id, log_type, event_type, COALESCE(timestamp, now()), organization_id FROM events_logs_legacy
+            """);
+        for (var subtype : ORG_SUBTYPE_TABLES) {
+            if (this.tableExists(subtype)) {
+                this.jdbcTemplate.update("UPDATE events_logs e SET organization_id = s.organization_id FROM " + subtype
+                    + " s WHERE s.id = e.id AND e.organization_id IS NULL");
+            }
+        }
+
+        this.jdbcTemplate.execute("DROP TABLE events_logs_legacy");
+    }
+
+    /*
+     * a new partition can not be created while the default partition holds rows of its range, those rows are moved
+     * to the new partition with the default partition detached
+     */
+    private void createPartition(YearMonth month) {
+        var name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        if (this.tableExists(name)) {
+            return;
+        }
+
+        var from = Timestamp.from(month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        var to = Timestamp.from(month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        var bounds = " FOR VALUES FROM ('" + from.toInstant() + "') TO ('" + to.toInstant() + "')";
+
+        var hasDefaultRows = Boolean.TRUE.equals(this.jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?)", Boolean.class, from, to));
+        if (!hasDefaultRows) {
+            this.jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + TABLE + bounds);
+            log.info("created audit logs partition {}", name);
+            return;
+        }
+
+        this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + DEFAULT_PARTITION);
+        this.jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + TABLE + bounds);
+        this.jdbcTemplate.update("INSERT INTO " + name + " (id, log_type, event_type, timestamp, organization_id) "
+            + "SELECT id, log_type, event_type, timestamp, organization_id FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?", from, to);
+        this.jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?", from, to);
+        this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+        log.info("created audit logs partition {} with the rows of the default partition", name);
+    }
+
+    // the expired partitions leave the table right away, their rows are deleted by the retention
+    private void detachExpiredPartitions(YearMonth oldestKept) {
+        var partitions = this.jdbcTemplate.queryForList("""
+            SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = to_regclass(?)
+            """, String.class, TABLE);
+
+        for (var partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+
+            var month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+
+            this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+            log.info("detached expired audit logs partition {}", partition);
+        }
+    }
+
+    // the detached partitions, including the ones an interrupted run did not drop
+    private void dropDetachedPartitions() {
+        var detached = this.jdbcTemplate.queryForList("""
+            SELECT relname::text FROM pg_class
+            WHERE starts_with(relname::text, ?) AND relkind = 'r' AND NOT relispartition
+            """, String.class, PARTITION_PREFIX);
+
+        for (var partition : detached) {
+            var deleted = 0L;
+            UUID after = null;
+            List<UUID> ids;
+            do {
+                ids = (after == null)
+                    ? this.jdbcTemplate.queryForList("SELECT id FROM " + partition + " ORDER BY id LIMIT ?", UUID.class, this.retentionBatchSize)
+                    : this.jdbcTemplate.queryForList("SELECT id FROM " + partition + " WHERE id > ? ORDER BY id LIMIT ?", UUID.class, after, this.retentionBatchSize);
+                if (!ids.isEmpty()) {
+                    this.deleteSubtypeRows(ids);
+                    deleted += ids.size();
+                    after = ids.get(ids.size() - 1);
+                }
+            } while (ids.size() >= this.retentionBatchSize);
+
+            this.jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+            log.info("dropped expired audit logs partition {} ({} logs)", partition, deleted);
+        }
+    }
+
+    // rows that landed in the default partition expire too, each batch is deleted with its subtype rows
+    private void deleteExpiredDefaultRows(Timestamp cutoff) {
+        List<UUID> ids;
+        do {
+            ids = this.jdbcTemplate.queryForList("SELECT id FROM " + DEFAULT_PARTITION + " WHERE timestamp < ? LIMIT ?",
+                UUID.class, cutoff, this.retentionBatchSize);
+            if (!ids.isEmpty()) {
+                this.deleteSubtypeRows(ids);
+                this.jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE id = ANY(?)", (Object) ids.toArray(UUID[]::new));
+            }
+        } while (ids.size() >= this.retentionBatchSize);
+    }
+
+    // each statement is a transaction of its own (no transaction is open on the retention thread)
+    private void deleteSubtypeRows(List<UUID> ids) {
+        var array = ids.toArray(UUID[]::new);
+        for (var subtype : SUBTYPE_TABLES) {
+            if (this.tableExists(subtype)) {
+                this.jdbcTemplate.update("DELETE FROM " + subtype + " WHERE id = ANY(?)", (Object) array);
+            }
+        }
+    }
+
+    private boolean tableExists(String table) {
+        return Boolean.TRUE.equals(this.jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.multitenant.services.logs;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.multitenant.models.User;
+import com.example.multitenant.models.enums.AuditLogOverflowPolicy;
+import com.example.multitenant.models.logsmodels.*;
+import com.example.multitenant.services.logs.AuditEventsService.AuditEventRow;
+import com.example.multitenant.utils.UuidV7;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * asynchronous writer of the audit logs, enabled by 'app.logs.async.enabled'.
+ *
+ * the request thread only validates the log and puts it on a bounded lock-free queue (at most 'capacity' logs), a writer
+ * thread per node inserts them with jdbc batches every 'flush-interval' or as soon as 'batch-size' logs are queued.
+ * a batch is written in one transaction: one batch insert into 'events_logs' then one batch insert per subtype table
+ * (the JOINED inheritance of {@link BaseLog}), instead of two single inserts per log on the request thread.
+ * with 'app.logs.storage=JSONB' the batch is a single insert into 'audit_events' ({@link AuditEventsService}).
+ *
+ * - a full queue applies the 'overflow-policy' ({@link AuditLogOverflowPolicy}), the dropped logs are counted.
+ * - the queue is drained before the node stops, the logs are lost only if the node is killed.
+ */
+@Slf4j
+@Service
+public class AuditLogWriterService {
+    private static final String BASE_INSERT_SQL = """
+        INSERT INTO events_logs (id, log_type, event_type, timestamp, organization_id)
+        VALUES (?, ?, ?, ?, ?)
+        """;
+    // a schema not managed by hibernate may still lack the denormalized organization column
+    private static final String LEGACY_BASE_INSERT_SQL = """
+        INSERT INTO events_logs (id, log_type, event_type, timestamp)
+        VALUES (?, ?, ?, ?)
+        """;
+
+    // discriminator ('log_type') -> insert into the subtype table, the id is the one of the 'events_logs' row
+    private static final Map<String, String> SUBTYPE_INSERT_SQL = Map.of(
+        "KICK", "INSERT INTO kicks_logs (id, organization_id, kicker_id, kicked_id) VALUES (?, ?, ?, ?)",
+        "INVITE", "INSERT INTO invitations_logs (id, organization_id, inviter_id, invited_id) VALUES (?, ?, ?, ?)",
+        "ROLE_ASSIGNMENT", "INSERT INTO roles_assignments_logs (id, organization_id, assigned_from_id, assigned_to_id, role_id) VALUES (?, ?, ?, ?, ?)",
+        "MEMBERSHIP", "INSERT INTO memberships_logs (id, organization_id, user_id) VALUES (?, ?, ?)",
+        "CHANNEL", "INSERT INTO channels_logs (id, organization_id, user_id, channel_id) VALUES (?, ?, ?, ?)",
+        "CATEGORY", "INSERT INTO categories_logs (id, organization_id, user_id, category_id) VALUES (?, ?, ?, ?)",
+        "ORG_MESSAGE", "INSERT INTO organization_messages_logs (id, organization_id, user_id, channel_id) VALUES (?, ?, ?, ?)",
+        "AUTH", "INSERT INTO auth_logs (id, user_id, ip_address, \"user-agent\") VALUES (?, ?, ?, ?)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditEventsService auditEventsService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final int capacity;
+    private final AuditLogOverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+
+    private final ConcurrentLinkedQueue<PendingLog> queue = new ConcurrentLinkedQueue<>();
+    // the queue size is not O(1), the bound is enforced on this counter
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Thread writer;
+    // only a present column is remembered, a missing one is looked up again until the table gets it
+    private volatile boolean hasOrganizationColumn = false;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Timer flushTimer;
+
+    public AuditLogWriterService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+        AuditEventsService auditEventsService,
+        @Value("${app.logs.async.enabled:true}") boolean enabled,
+        @Value("${app.logs.async.batch-size:500}") int batchSize,
+        @Value("${app.logs.async.flush-interval:PT1S}") Duration flushInterval,
+        @Value("${app.logs.async.capacity:10000}") int capacity,
+        @Value("${app.logs.async.overflow-policy:DROP}") AuditLogOverflowPolicy overflowPolicy,
+        @Value("${app.logs.async.block-timeout:PT0.1S}") Duration blockTimeout) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        // the synchronous path (disabled pipeline) must not fail or be rolled back with the request transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.auditEventsService = auditEventsService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+
+        this.writtenCounter = Counter.builder("app.logs.written")
+            .description("audit logs inserted by the audit log writer")
+            .register(meterRegistry);
+        this.droppedCounter = Counter.builder("app.logs.dropped")
+            .description("audit logs dropped because the queue was full or they could not be inserted")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("app.logs.flush")
+            .description("time spent inserting a batch of audit logs")
+            .register(meterRegistry);
+        Gauge.builder("app.logs.queued", this.queued, AtomicInteger::get)
+            .description("audit logs waiting in the writer queue")
+            .register(meterRegistry);
+    }
+
+    /**
+     * assigns the id and timestamp of the log and queues it, the log is inserted by the writer thread later.
+     * a full queue drops the log (after waiting up to 'block-timeout' with the BLOCK policy) instead of failing the request.
+     */
+    public <T extends BaseLog> T enqueue(T auditLog) {
+        // time-ordered ids keep the inserts at the right edge of the primary key index
+        auditLog.setId(UuidV7.generate());
+        auditLog.setTimestamp(Instant.now());
+        var pending = this.toPendingLog(auditLog);
+
+        if (!this.enabled || !this.running.get()) {
+            this.writeSafely(List.of(pending));
+            return auditLog;
+        }
+
+        if (!this.reserveSlot()) {
+            log.warn("audit log queue is full, dropping {} log {}", pending.logType(), pending.id());
+            this.droppedCounter.increment();
+            return auditLog;
+        }
+
+        this.queue.add(pending);
+        if (!this.running.get()) {
+            // the writer stopped while the log was queued, it would not be drained anymore
+            this.drain();
+        } else if (this.queued.get() >= this.batchSize) {
+            this.wakeUp();
+        }
+
+        return auditLog;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.enabled || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.writer = Thread.ofPlatform().name("audit-log-writer").daemon().start(this::runWriter);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!this.running.compareAndSet(true, false)) {
+            return;
+        }
+
+        var current = this.writer;
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean reserveSlot() {
+        var deadline = System.nanoTime() + this.blockTimeout.toNanos();
+        while (true) {
+            var current = this.queued.get();
+            if (current < this.capacity) {
+                if (this.queued.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+
+                continue;
+            }
+
+            if (this.overflowPolicy == AuditLogOverflowPolicy.DROP || System.nanoTime() >= deadline) {
+                return false;
+            }
+
+            this.wakeUp();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private void wakeUp() {
+        var current = this.writer;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private void runWriter() {
+        while (this.running.get()) {
+            LockSupport.parkNanos(this.flushInterval.toNanos());
+            this.drain();
+        }
+
+        // drains what is left before the node stops, new logs are written synchronously from now on
+        this.drain();
+    }
+
+    private void drain() {
+        while (!this.queue.isEmpty()) {
+            var batch = new ArrayList<PendingLog>(this.batchSize);
+            PendingLog pending;
+            while (batch.size() < this.batchSize && (pending = this.queue.poll()) != null) {
+                batch.add(pending);
+            }
+
+            this.queued.addAndGet(-batch.size());
+            this.writeSafely(batch);
+        }
+    }
+
+    private void writeSafely(List<PendingLog> batch) {
+        var start = System.nanoTime();
+        try {
+            this.transactionTemplate.executeWithoutResult((status) -> this.write(batch));
+            this.writtenCounter.increment(batch.size());
+        } catch (Exception ex) {
+            // one bad log (e.g. its organization was deleted) fails the whole batch, the logs are retried one by one
+            log.warn("audit log batch of {} logs failed, retrying log by log", batch.size(), ex);
+            for (var pending : batch) {
+                try {
+                    this.transactionTemplate.executeWithoutResult((status) -> this.write(List.of(pending)));
+                    this.writtenCounter.increment();
+                } catch (Exception logEx) {
+                    log.error("dropping audit log {} that could not be inserted", pending.id(), logEx);
+                    this.droppedCounter.increment();
+                }
+            }
+        } finally {
+            this.flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void write(List<PendingLog> batch) {
+        if (this.auditEventsService.isEnabled()) {
+            this.auditEventsService.insert(batch.stream().map(PendingLog::event).toList());
+            return;
+        }
+
+        var withOrganization = this.hasOrganizationColumn();
+        var baseRows = new ArrayList<Object[]>(batch.size());
+        var subtypeRows = new LinkedHashMap<String, List<Object[]>>();
+        for (var pending : batch) {
+            baseRows.add(withOrganization
+                ? new Object[] { pending.id(), pending.logType(), pending.eventType(), Timestamp.from(pending.timestamp()), pending.organizationId() }
+                : new Object[] { pending.id(), pending.logType(), pending.eventType(), Timestamp.from(pending.timestamp()) });
+            subtypeRows.computeIfAbsent(pending.logType(), (key) -> new ArrayList<>()).add(pending.subtypeRow());
+        }
+
+        this.jdbcTemplate.batchUpdate(withOrganization ? BASE_INSERT_SQL : LEGACY_BASE_INSERT_SQL, baseRows);
+        subtypeRows.forEach((logType, rows) -> this.jdbcTemplate.batchUpdate(SUBTYPE_INSERT_SQL.get(logType), rows));
+    }
+
+    private boolean hasOrganizationColumn() {
+        if (this.hasOrganizationColumn) {
+            return true;
+        }
+
+        var exists = this.jdbcTemplate.queryForObject("""
+            SELECT EXISTS (SELECT 1 FROM information_schema.columns
+            WHERE table_schema = current_schema() AND table_name = 'events_logs' AND column_name = 'organization_id')
+            """, Boolean.class);
+        if (!Boolean.TRUE.equals(exists)) {
+            log.warn("'events_logs' has no 'organization_id' column, the logs are written without their organization");
+            return false;
+        }
+
+        this.hasOrganizationColumn = true;
+        return true;
+    }
+
+    // the ids are read from the already loaded associations, the insert never touches the persistence context
+    private PendingLog toPendingLog(BaseLog auditLog) {
+        if (this.auditEventsService.isEnabled()) {
+            var event = this.auditEventsService.toRow(auditLog);
+            return new PendingLog(event.id(), event.logType(), event.eventType(), event.timestamp(), event.organizationId(), null, event);
+        }
+
+        var id = auditLog.getId();
+        var subtype = switch (auditLog) {
+            case KicksLog kick -> new SubtypeRow("KICK", new Object[] {
+                id, kick.getOrganizationId(), this.userId(kick.getKicker()), kick.getKickedId() });
+            case InvitationsLog invitation -> new SubtypeRow("INVITE", new Object[] {
+                id, invitation.getOrganizationId(), this.userId(invitation.getInviter()), invitation.getInvitedId() });
+            case RolesAssignmentsLog assignment -> new SubtypeRow("ROLE_ASSIGNMENT", new Object[] {
+                id, assignment.getOrganizationId(), this.userId(assignment.getAssignedFrom()), assignment.getAssignedToId(),
+                (assignment.getRole() != null) ? assignment.getRole().getId() : null });
+            case MembershipsLog membership -> new SubtypeRow("MEMBERSHIP", new Object[] {
+                id, membership.getOrganizationId(), this.userId(membership.getUser()) });
+            case ChannelsLog channel -> new SubtypeRow("CHANNEL", new Object[] {
+                id, channel.getOrganizationId(), this.userId(channel.getUser()),
+                (channel.getChannel() != null) ? channel.getChannel().getId() : null });
+            case CategoriesLog category -> new SubtypeRow("CATEGORY", new Object[] {
+                id, category.getOrganizationId(), this.userId(category.getUser()),
+                (category.getCategory() != null) ? category.getCategory().getId() : null });
+            case OrgMessageLog message -> new SubtypeRow("ORG_MESSAGE", new Object[] {
+                id, message.getOrganizationId(), this.userId(message.getUser()),
+                (message.getOrgMessage() != null) ? message.getOrgMessage().getId() : null });
+            case AuthLog auth -> new SubtypeRow("AUTH", new Object[] {
+                id, this.userId(auth.getUser()), auth.getIpAddress(), auth.getUserAgent() });
+            default -> throw new IllegalArgumentException("unsupported audit log type " + auditLog.getClass().getSimpleName());
+        };
+
+        // the organization is denormalized into 'events_logs' for its (organization_id, timestamp) index
+        var organizationId = (auditLog instanceof BaseOrganizationsLogs orgLog) ? orgLog.getOrganizationId() : null;
+
+        return new PendingLog(id, subtype.logType(), auditLog.getEventType().name(), auditLog.getTimestamp(), organizationId, subtype.values(), null);
+    }
+
+    private Long userId(User user) {
+        return (user != null) ? user.getId() : null;
+    }
+
+    private record SubtypeRow(String logType, Object[] values) {}
+
+    private record PendingLog(UUID id, String logType, String eventType, Instant timestamp, Integer organizationId, Object[] subtypeRow, AuditEventRow event) {}
+}
@@ -1,32 +1,76 @@
 package com.example.multitenant.services.logs;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
 
 import org.springframework.stereotype.Service;
 
+import com.example.multitenant.dtos.logs.LogsViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
+import com.example.multitenant.exceptions.BadRequestException;
 import com.example.multitenant.exceptions.InvalidOperationException;
 import com.example.multitenant.models.*;
 import com.example.multitenant.models.enums.LogEventType;
 import com.example.multitenant.models.logsmodels.*;
 import com.example.multitenant.repository.logsrepositories.*;
 
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
+/**
+ * validates and builds the audit logs of the organizations and the users, the logs are persisted asynchronously
+ * by the {@link AuditLogWriterService} so the request never waits on their inserts.
+ */
 @RequiredArgsConstructor
 @Service
 public class LogsService {
+    private static final String CURSOR_SEPARATOR = "_";
+
     private final BaseLogsRepository baseLogsRepository;
-    private final KickLogsRepository kickLogsRepository;
-    private final InvitationsLogsRepository invitationsLogsRepository;
-    private final RolesAssignmentsRepository rolesAssignmentsRepository;
-    private final MemberShipsLogsRepository memberShipsLogsRepository;
-    private final CategoriesLogsRepository categoriesLogsRepository;
-    private final ChannelsLogsRepository channelsLogsRepository;
-    private final OrgMessagesLogsRepository orgMessagesLogsRepository;
-    private final AuthLogsRepository authLogsRepository;
-
-    public List<BaseLog> getAllOrgLogs() {
-        return null;
+    private final AuditLogWriterService auditLogWriterService;
+    private final AuditEventsService auditEventsService;
+
+    /**
+     * one page of the audit log of the organization newest first.
+     * @param cursor the 'nextCursor' of the previous page or null for the first one
+     */
+    @Transactional
+    public CursorPage<LogsViewDTO, String> getAllOrgLogs(Integer organizationId, String cursor, int size) {
+        if(this.auditEventsService.isEnabled()) {
+            return this.auditEventsService.getOrgEvents(organizationId, cursor, size);
+        }
+
+        List<UUID> ids;
+        if(cursor == null) {
+            ids = this.baseLogsRepository.findLatestOrgLogIds(organizationId, size + 1);
+        } else {
+            var parts = cursor.split(CURSOR_SEPARATOR);
+            try {
+                ids = this.baseLogsRepository.findOrgLogIdsBefore(organizationId, Instant.parse(parts[0]), UUID.fromString(parts[1]), size + 1);
+            } catch (DateTimeParseException | IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+                throw new BadRequestException("invalid logs cursor");
+            }
+        }
+
+        var hasNext = ids.size() > size;
+        var pageIds = hasNext ? ids.subList(0, size) : ids;
+
+        // the subtypes are loaded by id, the order of the page is the one of the keyset query
+        var logsById = new HashMap<UUID, BaseLog>();
+        this.baseLogsRepository.findAllById(pageIds).forEach((log) -> logsById.put(log.getId(), log));
+        var views = pageIds.stream().map(logsById::get).filter(Objects::nonNull).map(LogsViewDTO::of).toList();
+
+        String nextCursor = null;
+        if(hasNext && !views.isEmpty()) {
+            var last = views.get(views.size() - 1);
+            nextCursor = last.getTimestamp().toString() + CURSOR_SEPARATOR + last.getId();
+        }
+
+        return CursorPage.of(views, nextCursor, hasNext);
     }
 
     public KicksLog createKickLog(User kicker, Long kickedId, Integer organizationId, LogEventType event) {
@@ -40,7 +84,7 @@ public class LogsService {
         log.setKicker(kicker);
         log.setEventType(event);
 
-        return this.kickLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public InvitationsLog createInvitationLog(User inviter, Long invitedId, Integer organizationId, LogEventType event) {
@@ -55,7 +99,7 @@ public class LogsService {
         log.setInviter(inviter);
         log.setEventType(event);
         
-        return this.invitationsLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public RolesAssignmentsLog createRolesAssignmentsLog(User assignedFrom, OrgRole role, 
@@ -67,11 +111,12 @@ public class LogsService {
         }
 
         log.setOrganizationId(organizationId);
+        log.setAssignedFrom(assignedFrom);
         log.setAssignedToId(assignedToId);
         log.setRole(role);
         log.setEventType(event);
 
-        return this.rolesAssignmentsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public MembershipsLog createMembershipLog(User joiner, Integer orgId, LogEventType event) {
@@ -84,7 +129,7 @@ public class LogsService {
         log.setUser(joiner);
         log.setEventType(event);
 
-        return this.memberShipsLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public ChannelsLog createChannelsLog(User user, Channel channel, Integer orgId, LogEventType event) {
@@ -99,7 +144,7 @@ public class LogsService {
         log.setChannel(channel);
         log.setEventType(event);
 
-        return this.channelsLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public CategoriesLog createCategoriesLog(User user, Category category, Integer orgId, LogEventType event) {
@@ -114,7 +159,7 @@ public class LogsService {
         log.setCategory(category);
         log.setEventType(event);
 
-        return this.categoriesLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public OrgMessageLog createOrgMessagesLog(User user, OrgMessage message, Integer orgId, LogEventType event) {
@@ -128,7 +173,7 @@ public class LogsService {
         log.setMessage(message);
         log.setEventType(event);
 
-        return this.orgMessagesLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 
     public AuthLog createAuthLogs(User user, String userAgent, String ipAddress, LogEventType event) {
@@ -143,6 +188,6 @@ public class LogsService {
         log.setUserAgent(userAgent);
         log.setEventType(event);
 
-        return this.authLogsRepository.save(log);
+        return this.auditLogWriterService.enqueue(log);
     }
 }
\ No newline at end of file
@@ -327,6 +327,11 @@ public class MemberShipService {
         return this.memberShipSpecificationsService.findAllWithSpecifications(pageable, spec,null);
     }
 
+    // the organizations the user is currently a member of
+    public List<Integer> findUserOrgIds(long userId) {
+        return this.membershipRepository.findOrgIdsByUserId(userId);
+    }
+
     public long countOrganizationMembers(Integer orgId) {
         return this.membershipRepository.countMembersByOrgId(orgId);
     }
@@ -0,0 +1,26 @@
+package com.example.multitenant.services.messages;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * hands out organization message ids before the row is inserted, the ids come from the identity sequence of the
+ * table so they never collide with ids generated by the database.
+ *
+ * one id is taken per message: the history is paged by id, reserving blocks per node would give a newer message of
+ * one node a lower id than an older message of another one and the keyset pages would skip it.
+ */
+@Component
+public class OrgMessageIdAllocator {
+    private static final String NEXT_ID_SQL = "SELECT nextval(pg_get_serial_sequence('organization_messages', 'id'))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrgMessageIdAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Integer nextId() {
+        return this.jdbcTemplate.queryForObject(NEXT_ID_SQL, Integer.class);
+    }
+}
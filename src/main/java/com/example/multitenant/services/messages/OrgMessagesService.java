@@ -1,12 +1,20 @@
 package com.example.multitenant.services.messages;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
 import com.example.multitenant.exceptions.ResourceNotFoundException;
 import com.example.multitenant.models.OrgMessage;
 import com.example.multitenant.repository.OrgMessagesRepository;
+import com.example.multitenant.services.cache.RecentMessagesCacheService;
 
 import lombok.RequiredArgsConstructor;
 
@@ -14,18 +22,88 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class OrgMessagesService {
     private final OrgMessagesRepository orgMessagesRepository;
+    private final OrgMessagesWriteBehindService orgMessagesWriteBehindService;
+    private final RecentMessagesCacheService recentMessagesCacheService;
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
 
     public List<OrgMessage> findAllForUser(Integer userId) {
         return this.orgMessagesRepository.findBySenderId(userId);
     }
 
+    // organizations ordered by the number of messages sent since the given instant
+    public List<Integer> findMostActiveOrgIds(Instant since, int limit) {
+        return this.orgMessagesRepository.findMostActiveOrgIds(since, PageRequest.of(0, limit));
+    }
+
+    /**
+     * one page of the channel history, newest first. 'before' pages back to older messages and 'after' pages forward
+     * to newer ones (e.g. after a reconnect), without any of them the latest messages are returned.
+     * the next cursor continues in the same direction, the latest page is served by the recent messages cache when possible.
+     * the messages still buffered by the write-behind are merged into the pages instead of flushing them on the read.
+     */
+    public CursorPage<OrgMessageHistoryViewDTO, Integer> getChannelHistory(Integer channelId, Integer orgId, Integer before, Integer after, Integer size) {
+        var limit = Math.min(size, MAX_HISTORY_PAGE_SIZE);
+        if(after == null && before == null) {
+            var cached = this.recentMessagesCacheService.getLatestPage(channelId, limit,
+                (count) -> this.findLatestChannelHistory(channelId, orgId, count));
+
+            if(cached != null) {
+                return cached;
+            }
+        }
+
+        List<OrgMessageHistoryViewDTO> messages;
+        if(after != null) {
+            var buffered = this.orgMessagesWriteBehindService.findBuffered(channelId, orgId).stream()
+                .filter((message) -> message.getId() > after).toList();
+            var stored = this.orgMessagesRepository.findChannelHistoryAfter(channelId, orgId, after, PageRequest.of(0, limit + 1));
+            messages = merge(stored, buffered, Comparator.comparing(OrgMessageHistoryViewDTO::getId), limit + 1);
+        } else if(before != null) {
+            // a buffered message can be older than one already inserted (flushed by another node first)
+            var buffered = this.orgMessagesWriteBehindService.findBuffered(channelId, orgId).stream()
+                .filter((message) -> message.getId() < before).toList();
+            var stored = this.orgMessagesRepository.findChannelHistoryBefore(channelId, orgId, before, PageRequest.of(0, limit + 1));
+            messages = merge(stored, buffered, Comparator.comparing(OrgMessageHistoryViewDTO::getId).reversed(), limit + 1);
+        } else {
+            messages = this.findLatestChannelHistory(channelId, orgId, limit + 1);
+        }
+
+        var hasNext = messages.size() > limit;
+        if(hasNext) {
+            messages = messages.subList(0, limit);
+        }
+
+        var nextCursor = (hasNext) ? messages.get(messages.size() - 1).getId() : null;
+        if(after != null) {
+            // fetched oldest first so the page is the one right after the cursor
+            messages = messages.reversed();
+        }
+
+        return CursorPage.of(messages, nextCursor, hasNext);
+    }
+
+    // a buffered message is inserted by the write-behind flusher, outside of the transaction of its creation
+    public boolean isWriteBehindEnabled() {
+        return this.orgMessagesWriteBehindService.isEnabled();
+    }
+
     public OrgMessage create(OrgMessage message, Integer channelId, Integer orgId) {
         message.setChannelId(channelId);
         message.setOrganizationId(orgId);
-        return this.orgMessagesRepository.save(message);
+        OrgMessage created;
+        if (this.orgMessagesWriteBehindService.isEnabled()) {
+            // the message is broadcasted right away and inserted by the next write-behind flush
+            created = this.orgMessagesWriteBehindService.enqueue(message);
+        } else {
+            created = this.orgMessagesRepository.save(message);
+        }
+
+        this.recentMessagesCacheService.onCreated(created);
+        return created;
     }
 
     public OrgMessage updateContent(Integer id, String content, Long userId) {
+        this.orgMessagesWriteBehindService.flush();
         var msg = this.orgMessagesRepository.findByIdAndSenderId(id, userId);
         if (msg != null) {
             msg.setContent(content);
@@ -33,13 +111,57 @@ public class OrgMessagesService {
                 msg.setIsUpdated(true);
             }
 
-            return this.orgMessagesRepository.save(msg);
+            var updated = this.orgMessagesRepository.save(msg);
+            this.recentMessagesCacheService.onUpdated(updated);
+
+            return updated;
         }
         
         throw new ResourceNotFoundException("message", id);
     }
 
     public void deleteUserMessage(Integer id, Long userId) {
+        this.orgMessagesWriteBehindService.flush();
+        // the channel of the message is needed to update its recent messages window
+        var msg = this.orgMessagesRepository.findByIdAndSenderId(id, userId);
+        if (msg == null) {
+            return;
+        }
+
         this.orgMessagesRepository.deleteByIdAndSenderId(id, userId);
+        this.recentMessagesCacheService.onDeleted(msg.getChannelId(), id);
+    }
+
+    private List<OrgMessageHistoryViewDTO> findLatestChannelHistory(Integer channelId, Integer orgId, int count) {
+        var buffered = this.orgMessagesWriteBehindService.findBuffered(channelId, orgId);
+        var stored = this.orgMessagesRepository.findLatestChannelHistory(channelId, orgId, PageRequest.of(0, count));
+
+        return merge(stored, buffered, Comparator.comparing(OrgMessageHistoryViewDTO::getId).reversed(), count);
+    }
+
+    // the buffer is read before the database: an entry is deleted from the stream only after its insert, so a message
+    // is in at least one of the lists (a message flushed between the two reads is in both)
+    private static List<OrgMessageHistoryViewDTO> merge(List<OrgMessageHistoryViewDTO> stored, List<OrgMessageHistoryViewDTO> buffered,
+        Comparator<OrgMessageHistoryViewDTO> order, int limit) {
+
+        if (buffered.isEmpty()) {
+            return stored;
+        }
+
+        var ids = new HashSet<Integer>();
+        var merged = new ArrayList<OrgMessageHistoryViewDTO>(stored.size() + buffered.size());
+        for (var message : stored) {
+            ids.add(message.getId());
+            merged.add(message);
+        }
+
+        for (var message : buffered) {
+            if (ids.add(message.getId())) {
+                merged.add(message);
+            }
+        }
+
+        merged.sort(order);
+        return (merged.size() > limit) ? merged.subList(0, limit) : merged;
     }
 }
@@ -0,0 +1,400 @@
+package com.example.multitenant.services.messages;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO;
+import com.example.multitenant.exceptions.BackpressureException;
+import com.example.multitenant.models.OrgMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * write-behind persistence of the organization (chat) messages, enabled by 'app.messages.write-behind.enabled'.
+ *
+ * the message gets its id up front ({@link OrgMessageIdAllocator}) and is appended to a redis stream (the durable buffer),
+ * then the caller broadcasts it right away. a flusher thread per node reads the stream through a consumer group and
+ * inserts the messages with a single jdbc batch every 'flush-interval' or as soon as 'batch-size' messages are buffered.
+ *
+ * - entries are acknowledged only after they were inserted, entries left pending by a crashed node are claimed by
+ *   the other nodes after 'claim-idle', the insert ignores ids that already exist so a replayed entry is harmless.
+ * - only a message the database rejects for good (e.g. its channel was deleted) is dropped, on any other failure
+ *   (database down, timeout) the entries stay pending and are read again on the next flush.
+ * - once 'max-buffered' entries are waiting in the stream new messages are rejected with a {@link BackpressureException}.
+ * - the history reads merge the buffered messages of the channel ({@link #findBuffered}) instead of waiting for a flush,
+ *   the entries carry the sender name and avatar for that.
+ */
+@Slf4j
+@Service
+public class OrgMessagesWriteBehindService {
+    public static final String STREAM_KEY = "org-messages:write-behind";
+    private static final String GROUP = "org-messages-writers";
+
+    private static final String INSERT_SQL = """
+        INSERT INTO organization_messages (id, content, sender_id, organization_id, channel_id, is_updated, created_at, updated_at)
+        VALUES (?, ?, ?, ?, ?, false, ?, ?)
+        ON CONFLICT (id) DO NOTHING
+        """;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OrgMessageIdAllocator idAllocator;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final long maxBuffered;
+    private final Duration claimIdle;
+    private final String consumerName;
+
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicInteger sinceLastFlush = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // set when a flush left entries pending on this consumer, they are not delivered again by a '>' read
+    private volatile boolean retryPending = true;
+    private volatile Thread flusher;
+
+    private final Counter flushedCounter;
+    private final Counter droppedCounter;
+    private final Timer flushTimer;
+
+    public OrgMessagesWriteBehindService(RedisTemplate<String, String> redisTemplate, JdbcTemplate jdbcTemplate,
+        PlatformTransactionManager transactionManager, OrgMessageIdAllocator idAllocator, MeterRegistry meterRegistry,
+        @Value("${app.messages.write-behind.enabled:false}") boolean enabled,
+        @Value("${app.messages.write-behind.batch-size:200}") int batchSize,
+        @Value("${app.messages.write-behind.flush-interval:PT0.05S}") Duration flushInterval,
+        @Value("${app.messages.write-behind.max-buffered:50000}") long maxBuffered,
+        @Value("${app.messages.write-behind.claim-idle:PT1M}") Duration claimIdle,
+        @Value("${app.messages.write-behind.consumer:}") String consumerName) {
+
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        // a flush requested inside a request transaction must not be rolled back with it, the entries are acked right after
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.idAllocator = idAllocator;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxBuffered = maxBuffered;
+        this.claimIdle = claimIdle;
+        this.consumerName = consumerName.isBlank() ? UUID.randomUUID().toString() : consumerName;
+
+        this.flushedCounter = Counter.builder("app.messages.write-behind.flushed")
+            .description("messages inserted by the write-behind flusher")
+            .register(meterRegistry);
+        this.droppedCounter = Counter.builder("app.messages.write-behind.dropped")
+            .description("buffered messages that could not be inserted (e.g. their channel was deleted) and were dropped")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("app.messages.write-behind.flush")
+            .description("time spent inserting a batch of buffered messages")
+            .register(meterRegistry);
+        Gauge.builder("app.messages.write-behind.buffered", this.buffered, AtomicLong::get)
+            .description("messages waiting in the write-behind stream")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * assigns the message id and timestamps and appends it to the buffer, the message is inserted by the flusher later.
+     * @throws BackpressureException when the buffer is full
+     */
+    public OrgMessage enqueue(OrgMessage message) {
+        if (this.buffered.get() >= this.maxBuffered) {
+            throw new BackpressureException("messages write-behind buffer is full");
+        }
+
+        var now = Instant.now();
+        message.setId(this.idAllocator.nextId());
+        message.setIsUpdated(false);
+        message.setCreatedAt(now);
+        message.setUpdatedAt(now);
+
+        var sender = message.getSender();
+        var fields = Map.of(
+            "id", String.valueOf(message.getId()),
+            "content", message.getContent(),
+            "senderId", String.valueOf(sender.getId()),
+            "senderFirstName", Objects.toString(sender.getFirstName(), ""),
+            "senderLastName", Objects.toString(sender.getLastName(), ""),
+            "senderAvatarUrl", Objects.toString(sender.getAvatarUrl(), ""),
+            "organizationId", String.valueOf(message.getOrganizationId()),
+            "channelId", String.valueOf(message.getChannelId()),
+            "createdAt", String.valueOf(now.toEpochMilli()));
+
+        this.redisTemplate.opsForStream().add(StreamRecords.newRecord().in(STREAM_KEY).ofMap(fields));
+        this.buffered.incrementAndGet();
+
+        if (this.sinceLastFlush.incrementAndGet() >= this.batchSize) {
+            var current = this.flusher;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+
+        return message;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.enabled || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.redisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+        } catch (Exception ex) {
+            // BUSYGROUP, the group was created by another node
+            log.debug("write-behind consumer group already exists", ex);
+        }
+
+        this.flusher = Thread.ofPlatform().name("org-messages-write-behind").daemon().start(this::runFlusher);
+    }
+
+    /**
+     * the messages of the channel still waiting in the buffer (of any node), newest first. only the newest
+     * 2 * 'batch-size' entries are scanned, that is what the stream holds unless the flushers are falling behind.
+     */
+    public List<OrgMessageHistoryViewDTO> findBuffered(Integer channelId, Integer orgId) {
+        if (!this.enabled || this.buffered.get() == 0) {
+            return List.of();
+        }
+
+        List<MapRecord<String, Object, Object>> records = this.redisTemplate.opsForStream()
+            .reverseRange(STREAM_KEY, Range.unbounded(), Limit.limit().count(this.batchSize * 2));
+        if (records == null) {
+            return List.of();
+        }
+
+        var channel = String.valueOf(channelId);
+        var organization = String.valueOf(orgId);
+        var messages = new ArrayList<OrgMessageHistoryViewDTO>();
+        for (var record : records) {
+            var fields = record.getValue();
+            if (channel.equals(fields.get("channelId")) && organization.equals(fields.get("organizationId"))) {
+                messages.add(this.toHistoryView(fields));
+            }
+        }
+
+        return messages;
+    }
+
+    // inserts everything this node has buffered so far, used before updating/deleting a message that may still be buffered
+    public void flush() {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.flushOwnEntries();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!this.running.compareAndSet(true, false)) {
+            return;
+        }
+
+        var current = this.flusher;
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runFlusher() {
+        var lastClaim = System.nanoTime();
+        while (this.running.get()) {
+            LockSupport.parkNanos(this.flushInterval.toNanos());
+
+            try {
+                this.flushOwnEntries();
+
+                if (System.nanoTime() - lastClaim >= this.claimIdle.toNanos()) {
+                    this.claimAbandonedEntries();
+                    lastClaim = System.nanoTime();
+                }
+
+                this.buffered.set(this.redisTemplate.opsForStream().size(STREAM_KEY));
+            } catch (Exception ex) {
+                log.error("write-behind flush failed, the entries stay pending and will be retried", ex);
+            }
+        }
+
+        // drains what is left before the node stops
+        try {
+            this.flushOwnEntries();
+        } catch (Exception ex) {
+            log.error("write-behind final flush failed, the pending entries will be claimed by another node", ex);
+        }
+    }
+
+    private synchronized void flushOwnEntries() {
+        this.sinceLastFlush.set(0);
+        this.retryPendingEntries();
+
+        List<MapRecord<String, Object, Object>> records;
+        do {
+            records = this.read(ReadOffset.lastConsumed());
+            this.flushRecords(records);
+        } while (records.size() >= this.batchSize);
+    }
+
+    // the entries already delivered to this consumer (before a restart with the same 'consumer' name or a failed flush)
+    private void retryPendingEntries() {
+        if (!this.retryPending) {
+            return;
+        }
+
+        this.retryPending = false;
+        var records = this.read(ReadOffset.from("0"));
+        this.flushRecords(records);
+        if (records.size() >= this.batchSize) {
+            this.retryPending = true;
+        }
+    }
+
+    private void claimAbandonedEntries() {
+        var pending = this.redisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), this.batchSize);
+        var abandoned = new ArrayList<RecordId>();
+        for (var message : pending) {
+            if (!message.getConsumerName().equals(this.consumerName) && message.getElapsedTimeSinceLastDelivery().compareTo(this.claimIdle) >= 0) {
+                abandoned.add(message.getId());
+            }
+        }
+
+        if (abandoned.isEmpty()) {
+            return;
+        }
+
+        log.warn("claiming {} write-behind entries abandoned by other nodes", abandoned.size());
+        this.flushRecords(this.redisTemplate.opsForStream().claim(STREAM_KEY, GROUP, this.consumerName, this.claimIdle,
+            abandoned.toArray(RecordId[]::new)));
+    }
+
+    private List<MapRecord<String, Object, Object>> read(ReadOffset offset) {
+        var records = this.redisTemplate.opsForStream().read(Consumer.from(GROUP, this.consumerName),
+            StreamReadOptions.empty().count(this.batchSize), StreamOffset.create(STREAM_KEY, offset));
+
+        return (records != null) ? records : List.of();
+    }
+
+    private void flushRecords(List<MapRecord<String, Object, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        var start = System.nanoTime();
+        List<Object[]> rows = records.stream().map(this::toRow).toList();
+        var done = new ArrayList<RecordId>(records.size());
+        try {
+            this.transactionTemplate.executeWithoutResult((status) -> this.jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+            this.flushedCounter.increment(rows.size());
+            records.forEach((record) -> done.add(record.getId()));
+        } catch (DataIntegrityViolationException ex) {
+            // one bad row fails the whole batch, the rows are retried one by one so only the bad ones are dropped
+            log.warn("write-behind batch of {} messages was rejected, retrying row by row", rows.size(), ex);
+            for (int i = 0; i < rows.size(); i++) {
+                var row = rows.get(i);
+                try {
+                    this.transactionTemplate.executeWithoutResult((status) -> this.jdbcTemplate.update(INSERT_SQL, row));
+                    this.flushedCounter.increment();
+                    done.add(records.get(i).getId());
+                } catch (DataIntegrityViolationException rowEx) {
+                    log.error("dropping buffered message {} that could not be inserted", row[0], rowEx);
+                    this.droppedCounter.increment();
+                    done.add(records.get(i).getId());
+                } catch (Exception rowEx) {
+                    log.warn("buffered message {} could not be inserted, it stays pending", row[0], rowEx);
+                    this.retryPending = true;
+                }
+            }
+        } catch (RuntimeException ex) {
+            // nothing is acknowledged, the whole batch is read again on the next flush
+            this.retryPending = true;
+            throw ex;
+        } finally {
+            this.flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (done.isEmpty()) {
+            return;
+        }
+
+        var ids = done.toArray(RecordId[]::new);
+        this.redisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+        this.redisTemplate.opsForStream().delete(STREAM_KEY, ids);
+        this.buffered.addAndGet(-ids.length);
+    }
+
+    private OrgMessageHistoryViewDTO toHistoryView(Map<Object, Object> fields) {
+        var createdAt = Instant.ofEpochMilli(Long.parseLong((String) fields.get("createdAt")));
+
+        return new OrgMessageHistoryViewDTO(Integer.valueOf((String) fields.get("id")), (String) fields.get("content"),
+            false, createdAt, createdAt, Long.valueOf((String) fields.get("senderId")),
+            this.nullIfEmpty(fields.get("senderFirstName")), this.nullIfEmpty(fields.get("senderLastName")),
+            this.nullIfEmpty(fields.get("senderAvatarUrl")));
+    }
+
+    // entries buffered before the sender fields were added have none
+    private String nullIfEmpty(Object value) {
+        return (value == null || "".equals(value)) ? null : (String) value;
+    }
+
+    private Object[] toRow(MapRecord<String, Object, Object> record) {
+        var fields = record.getValue();
+        var createdAt = Timestamp.from(Instant.ofEpochMilli(Long.parseLong((String) fields.get("createdAt"))));
+
+        return new Object[] {
+            Integer.valueOf((String) fields.get("id")),
+            fields.get("content"),
+            Long.valueOf((String) fields.get("senderId")),
+            Integer.valueOf((String) fields.get("organizationId")),
+            Integer.valueOf((String) fields.get("channelId")),
+            createdAt,
+            createdAt
+        };
+    }
+}
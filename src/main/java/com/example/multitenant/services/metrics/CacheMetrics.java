@@ -0,0 +1,45 @@
+package com.example.multitenant.services.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * hit/miss and load time metrics of the caches:
+ * - 'app.cache.requests' (cache, layer, result, tier): the lookups of the near (in-process) and the redis layers.
+ * - 'app.cache.load' (cache, tier): the time spent loading a missing value from its source (the database mostly).
+ *
+ * the cache name is a constant given by the caller ('org:roles'), never derived from the key: a key may hold more than
+ * ids (e.g. a list of role ids) and every distinct value would become a new series.
+ */
+@RequiredArgsConstructor
+@Component
+public class CacheMetrics {
+    public static final String NEAR_LAYER = "near";
+    public static final String REDIS_LAYER = "redis";
+
+    private final MeterRegistry meterRegistry;
+    private final TenantMetricTags tenantMetricTags;
+
+    public void hit(String layer, String cacheName) {
+        this.request(layer, cacheName, "hit");
+    }
+
+    public void miss(String layer, String cacheName) {
+        this.request(layer, cacheName, "miss");
+    }
+
+    public void recordLoad(String cacheName, long nanos) {
+        this.meterRegistry.timer("app.cache.load", this.tenantMetricTags.current().and("cache", cacheName))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void request(String layer, String cacheName, String result) {
+        var tags = this.tenantMetricTags.current().and(Tags.of("cache", cacheName, "layer", layer, "result", result));
+        this.meterRegistry.counter("app.cache.requests", tags).increment();
+    }
+}
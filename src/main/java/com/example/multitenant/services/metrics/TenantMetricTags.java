@@ -0,0 +1,93 @@
+package com.example.multitenant.services.metrics;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.multitenant.models.enums.StripePlan;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * the tenant tags of the app metrics: 'tier' (the plan of the tenant) on every tenant metric and 'tenant' (its id)
+ * only when 'app.metrics.tenant-id-tag.enabled' is set, the id multiplies the series by the number of tenants.
+ *
+ * the tier is never looked up here (a metric must not cost a redis call), the services that resolve the plan of
+ * a tenant remember it and the tier of a tenant not seen yet is 'unknown'. outside of a tenant request it is 'none'.
+ */
+@Component
+public class TenantMetricTags {
+    public static final String TIER_TAG = "tier";
+    public static final String TENANT_TAG = "tenant";
+
+    private static final String TENANT_HEADER = "X-Tenant-ID";
+    private static final String NO_TENANT = "none";
+    private static final String UNKNOWN_TIER = "unknown";
+
+    private final boolean tenantIdEnabled;
+    private final Cache<Integer, StripePlan> tiers;
+
+    public TenantMetricTags(
+        @Value("${app.metrics.tenant-id-tag.enabled:false}") boolean tenantIdEnabled,
+        @Value("${app.metrics.tier-cache-ttl:PT30M}") Duration tierCacheTtl) {
+
+        this.tenantIdEnabled = tenantIdEnabled;
+        this.tiers = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(tierCacheTtl)
+            .build();
+    }
+
+    public void rememberTier(Integer tenantId, StripePlan plan) {
+        if (tenantId != null && plan != null) {
+            this.tiers.put(tenantId, plan);
+        }
+    }
+
+    // a tier that is not a known plan (e.g. a renamed stripe product) stays 'unknown'
+    public void rememberTier(Integer tenantId, String tier) {
+        try {
+            this.rememberTier(tenantId, StripePlan.fromValue(tier));
+        } catch (IllegalArgumentException ex) {
+            // not remembered
+        }
+    }
+
+    // the tags of the tenant of the current http request
+    public Tags current() {
+        return this.of(this.currentTenantId());
+    }
+
+    public Tags of(Integer tenantId) {
+        if (tenantId == null) {
+            return this.tenantIdEnabled ? Tags.of(TIER_TAG, NO_TENANT, TENANT_TAG, NO_TENANT) : Tags.of(TIER_TAG, NO_TENANT);
+        }
+
+        var plan = this.tiers.getIfPresent(tenantId);
+        var tier = (plan != null) ? plan.toString() : UNKNOWN_TIER;
+
+        return this.tenantIdEnabled ? Tags.of(TIER_TAG, tier, TENANT_TAG, tenantId.toString()) : Tags.of(TIER_TAG, tier);
+    }
+
+    private Integer currentTenantId() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+
+        var header = attributes.getRequest().getHeader(TENANT_HEADER);
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Integer.valueOf(header.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
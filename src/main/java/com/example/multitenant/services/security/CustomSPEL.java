@@ -1,16 +1,9 @@
 package com.example.multitenant.services.security;
 
-import org.apache.catalina.security.SecurityUtil;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
-import com.example.multitenant.dtos.auth.UserPrincipal;
-import com.example.multitenant.models.User;
 import com.example.multitenant.services.cache.*;
-import com.example.multitenant.utils.AppUtils;
-import com.example.multitenant.utils.SecurityUtils;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 public class CustomSPEL {
     private final AuthCacheService authCacheService;
+    private final RequestAuthContextService requestAuthContextService;
 
     public boolean hasAnyRole(Authentication auth) {
         return auth.getAuthorities().stream()
@@ -27,43 +21,43 @@ public class CustomSPEL {
     }
 
     public boolean hasOrgAuthority(String permission) {
-        var user = SecurityUtils.getUserFromAuth();
+        var user = this.requestAuthContextService.getUser();
         if (user == null) {
             return false;
         }
 
-        var tenantId = AppUtils.getTenantId();
-        var userId = user.getId();
+        var permissionIndex = OrgPermissions.indexOf(permission);
+        if (permissionIndex < 0) {
+            // not part of the permissions vocabulary, fallback to scanning the permissions names
+            var tenantId = this.requestAuthContextService.getTenantId();
+            var perms = this.authCacheService.getUserOrgPermissions(tenantId, user.getId());
+            return perms.stream().anyMatch((perm) -> perm.equals(permission));
+        }
 
-        var perms = this.authCacheService.getUserOrgPermissions(tenantId, userId);
+        var permsBits = this.requestAuthContextService.getUserPermissionBits();
 
-        return perms.stream().anyMatch((perm) -> perm.equals(permission));
+        return PermissionBits.has(permsBits, permissionIndex);
     }
 
     public boolean hasOrgRole(String roleName) {
-        var user = SecurityUtils.getUserFromAuth();
+        var user = this.requestAuthContextService.getUser();
         if (user == null) {
             return false;
         }
 
-        var tenantId = AppUtils.getTenantId();
-        var userId = user.getId();
-
-        var roles = this.authCacheService.getUserOrgRoles(tenantId, userId);
+        var roles = this.requestAuthContextService.getUserOrgRoles();
 
         return roles.stream().anyMatch((role) -> role.getName().equals(roleName));
     }
 
     public boolean hasCategoryAccess(Integer categoryId) {
-        var user = SecurityUtils.getUserFromAuth();
+        var user = this.requestAuthContextService.getUser();
         if (user == null) {
             return false;
         }
 
-        var tenantId = AppUtils.getTenantId();
-        var userId = user.getId();
-
-        var userRolesIds = this.authCacheService.getUserOrgRoles(tenantId, userId)
+        var tenantId = this.requestAuthContextService.getTenantId();
+        var userRolesIds = this.requestAuthContextService.getUserOrgRoles()
                                             .stream()
                                             .map((role) -> role.getId())
                                             .toList();
@@ -73,4 +67,4 @@ public class CustomSPEL {
 
         return authoriedRolesIds.stream().anyMatch((roleId)-> userRolesIds.contains(roleId));
     }
-}
\ No newline at end of file
+}
@@ -29,4 +29,8 @@ public class GlobalPermissions {
     public static final String DASH_RESTRICTION_VIEW = "app-dashboard:restriction:view";
     public static final String DASH_RESTRICTION_CREATE = "app-dashboard:restriction:create";
     public static final String DASH_RESTRICTION_UPDATE = "app-dashboard:restriction:update";
+
+    public static final String DASH_CACHE_WARMUP = "app-dashboard:cache:warmup";
+
+    public static final String DASH_OBSERVABILITY_MANAGE = "app-dashboard:observability:manage";
 }
\ No newline at end of file
@@ -1,5 +1,9 @@
 package com.example.multitenant.services.security;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.stereotype.Component;
 
 @Component
@@ -33,4 +37,37 @@ public class OrgPermissions {
     public static final String RESTRICTION_VIEW = "organization:restriction:view";
     public static final String RESTRICTION_CREATE = "organization:restriction:create";
     public static final String RESTRICTION_UPDATE = "organization:restriction:update";
+
+    /**
+     * the fixed permissions vocabulary, the position of each permission is its bit index
+     * inside the roles permissions bitsets (see {@link PermissionBits}).
+     * new permissions must be appended to the end to keep the indexes stable.
+     */
+    private static final List<String> VOCABULARY = List.of(
+        ROLE_VIEW, ROLE_CREATE, ROLE_UPDATE, ROLE_DELETE, ROLE_ASSIGN, ROLE_UN_ASSIGN,
+        PERMISSION_ASSIGN, PERMISSION_UN_ASSIGN,
+        DASH_ORGANIZATION_UPDATE,
+        USER_INVITE, USER_KICK,
+        TRANSFER_OWNERSHIP,
+        CATEGORY_VIEW, CATEGORY_CREATE, CATEGORY_UPDATE, CATEGORY_DELETE,
+        CHANNEL_CREATE, CHANNEL_UPDATE, CHANNEL_DELETE,
+        RESTRICTION_VIEW, RESTRICTION_CREATE, RESTRICTION_UPDATE
+    );
+
+    private static final Map<String, Integer> INDEXES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < VOCABULARY.size(); i++) {
+            INDEXES.put(VOCABULARY.get(i), i);
+        }
+    }
+
+    // returns -1 when the permission is not part of the vocabulary
+    public static int indexOf(String permission) {
+        return INDEXES.getOrDefault(permission, -1);
+    }
+
+    public static int size() {
+        return VOCABULARY.size();
+    }
 }
@@ -0,0 +1,49 @@
+package com.example.multitenant.services.security;
+
+import java.util.Collection;
+
+/**
+ * compact bitset representation of a set of organization permissions,
+ * the bit of each permission is its index inside {@link OrgPermissions}.
+ */
+public final class PermissionBits {
+    private static final int WORD_SIZE = Long.SIZE;
+
+    private PermissionBits() {}
+
+    public static long[] empty() {
+        return new long[wordsCount()];
+    }
+
+    // permissions that are not part of the vocabulary are ignored
+    public static long[] of(Collection<String> permissions) {
+        var bits = empty();
+        for (var permission : permissions) {
+            var index = OrgPermissions.indexOf(permission);
+            if (index >= 0) {
+                bits[index / WORD_SIZE] |= 1L << (index % WORD_SIZE);
+            }
+        }
+
+        return bits;
+    }
+
+    public static void orInto(long[] target, long[] source) {
+        for (int i = 0; i < target.length && i < source.length; i++) {
+            target[i] |= source[i];
+        }
+    }
+
+    public static boolean has(long[] bits, int index) {
+        var word = index / WORD_SIZE;
+        if (index < 0 || word >= bits.length) {
+            return false;
+        }
+
+        return (bits[word] & (1L << (index % WORD_SIZE))) != 0;
+    }
+
+    private static int wordsCount() {
+        return (OrgPermissions.size() + WORD_SIZE - 1) / WORD_SIZE;
+    }
+}
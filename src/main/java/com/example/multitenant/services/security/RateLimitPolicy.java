@@ -0,0 +1,36 @@
+package com.example.multitenant.services.security;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * a precompiled bucket configuration, the suppliers are created once so the hot path does not allocate them per request.
+ */
+public record RateLimitPolicy(
+    String name,
+    BucketConfiguration configuration,
+    Supplier<BucketConfiguration> configurationSupplier,
+    Supplier<CompletableFuture<BucketConfiguration>> asyncConfigurationSupplier) {
+
+    public static RateLimitPolicy of(String name, long capacity, Duration period) {
+        var configuration = BucketConfiguration.builder()
+            .addLimit((limit) -> limit.capacity(capacity).refillGreedy(capacity, period))
+            .build();
+        var future = CompletableFuture.completedFuture(configuration);
+
+        return new RateLimitPolicy(name, configuration, () -> configuration, () -> future);
+    }
+
+    // the time the slowest limit takes to refill one token
+    public long nanosPerToken() {
+        long nanos = 0;
+        for (var bandwidth : this.configuration.getBandwidths()) {
+            nanos = Math.max(nanos, bandwidth.getRefillPeriodNanos() / Math.max(1, bandwidth.getRefillTokens()));
+        }
+
+        return nanos;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.multitenant.services.security;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.config.StripePlansConfig;
+import com.example.multitenant.models.enums.RateLimitBucket;
+import com.example.multitenant.models.enums.RateLimitEndpointGroup;
+import com.example.multitenant.models.enums.StripePlan;
+import com.example.multitenant.services.cache.StripeSubsecriptionsCacheService;
+import com.example.multitenant.services.metrics.TenantMetricTags;
+import com.example.multitenant.utils.AppUtils;
+import com.example.multitenant.utils.SecurityUtils;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * selects the rate limit policies of a request, every request is classified into a {@link RateLimitEndpointGroup} and consumes:
+ *
+ * - one token from the identity bucket of the group, keyed by the user id when authenticated otherwise by the client ip.
+ * - one token from the tenant aggregate bucket when the group is tenant scoped, its size depends on the tenant plan
+ *   ('stripe.tiers.<plan>.rate-limit.*') and is shared by all the users of the tenant.
+ *
+ * the policies are built once at startup, the plan is part of the tenant bucket key so a plan change starts a new bucket
+ * instead of reconfiguring the old one. the tenant bucket is only consumed by authenticated requests so anonymous clients
+ * can not drain the bucket of another tenant by sending its id.
+ */
+@Slf4j
+@Service
+public class RateLimitPolicyService {
+    private static final String TENANT_HEADER = "X-Tenant-ID";
+
+    private final RateLimiterService rateLimiterService;
+    private final StripeSubsecriptionsCacheService stripeSubsecriptionsCacheService;
+    private final MeterRegistry meterRegistry;
+    private final TenantMetricTags tenantMetricTags;
+
+    private final Map<RateLimitBucket, RateLimitPolicy> identityPolicies = new EnumMap<>(RateLimitBucket.class);
+    private final Map<StripePlan, Map<RateLimitBucket, RateLimitPolicy>> tenantPolicies = new EnumMap<>(StripePlan.class);
+    private final LoadingCache<Integer, StripePlan> tenantPlans;
+
+    public RateLimitPolicyService(RateLimiterService rateLimiterService, StripeSubsecriptionsCacheService stripeSubsecriptionsCacheService,
+        StripePlansConfig stripePlansConfig, MeterRegistry meterRegistry, TenantMetricTags tenantMetricTags,
+        @Value("${app.rate-limit.period:PT1M}") Duration period,
+        @Value("${app.rate-limit.identity.auth:30}") long authCapacity,
+        @Value("${app.rate-limit.identity.webhook:600}") long webhookCapacity,
+        @Value("${app.rate-limit.identity.general:200}") long generalCapacity,
+        @Value("${app.rate-limit.identity.write:60}") long writeCapacity,
+        @Value("${app.rate-limit.plan-cache-ttl:PT1M}") Duration planCacheTtl) {
+
+        this.rateLimiterService = rateLimiterService;
+        this.stripeSubsecriptionsCacheService = stripeSubsecriptionsCacheService;
+        this.meterRegistry = meterRegistry;
+        this.tenantMetricTags = tenantMetricTags;
+
+        this.identityPolicies.put(RateLimitBucket.AUTH, RateLimitPolicy.of("identity:auth", authCapacity, period));
+        this.identityPolicies.put(RateLimitBucket.WEBHOOK, RateLimitPolicy.of("identity:webhook", webhookCapacity, period));
+        this.identityPolicies.put(RateLimitBucket.GENERAL, RateLimitPolicy.of("identity:general", generalCapacity, period));
+        this.identityPolicies.put(RateLimitBucket.WRITE, RateLimitPolicy.of("identity:write", writeCapacity, period));
+
+        for (var plan : StripePlan.values()) {
+            var policies = new EnumMap<RateLimitBucket, RateLimitPolicy>(RateLimitBucket.class);
+            for (var bucket : new RateLimitBucket[] { RateLimitBucket.GENERAL, RateLimitBucket.WRITE }) {
+                var capacity = stripePlansConfig.getTenantRateLimit(bucket, plan);
+                policies.put(bucket, RateLimitPolicy.of("tenant:" + plan + ":" + bucket, capacity, period));
+            }
+
+            this.tenantPolicies.put(plan, policies);
+        }
+
+        this.tenantPlans = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(planCacheTtl)
+            .build(this::fetchPlan);
+    }
+
+    public boolean tryConsume(HttpServletRequest request) {
+        var group = this.classify(request);
+        var bucket = group.getBucket();
+        var principal = SecurityUtils.getPrincipal();
+
+        var identityKey = (principal != null)
+            ? "user:" + principal.getUser().getId() + ":" + bucket
+            : "ip:" + AppUtils.getClientIp(request) + ":" + bucket;
+
+        if (!this.rateLimiterService.tryConsume(identityKey, this.identityPolicies.get(bucket))) {
+            this.recordDecision(group, "identity", "rejected");
+            this.recordRejection(group, "identity", (principal != null) ? this.parseTenantId(request) : null);
+            return false;
+        }
+
+        var tenantId = (principal != null && group.isTenantScoped()) ? this.parseTenantId(request) : null;
+        if (tenantId != null) {
+            var plan = this.tenantPlans.get(tenantId);
+            var tenantKey = "tenant:" + tenantId + ":plan:" + plan + ":" + bucket;
+
+            if (!this.rateLimiterService.tryConsume(tenantKey, this.tenantPolicies.get(plan).get(bucket))) {
+                this.recordDecision(group, "tenant", "rejected");
+                this.recordRejection(group, "tenant", tenantId);
+                return false;
+            }
+        }
+
+        this.recordDecision(group, tenantId != null ? "tenant" : "identity", "allowed");
+        return true;
+    }
+
+    public RateLimitEndpointGroup classify(HttpServletRequest request) {
+        var path = request.getRequestURI();
+        if (path.startsWith("/webhook")) {
+            return RateLimitEndpointGroup.WEBHOOK;
+        }
+
+        if (path.startsWith("/api/auth")) {
+            return RateLimitEndpointGroup.AUTH;
+        }
+
+        if (path.startsWith("/ws")) {
+            return RateLimitEndpointGroup.WEBSOCKET;
+        }
+
+        var method = request.getMethod();
+        if ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method) || "OPTIONS".equalsIgnoreCase(method)) {
+            return RateLimitEndpointGroup.READ;
+        }
+
+        return RateLimitEndpointGroup.WRITE;
+    }
+
+    private StripePlan fetchPlan(Integer tenantId) {
+        try {
+            var subscription = this.stripeSubsecriptionsCacheService.getSubscription(tenantId);
+            var plan = (subscription != null) ? StripePlan.fromValue(subscription.getTier()) : StripePlan.FREE;
+            this.tenantMetricTags.rememberTier(tenantId, plan);
+
+            return plan;
+        } catch (Exception ex) {
+            log.warn("failed to resolve the plan of tenant {}, the free plan rate limits are used", tenantId, ex);
+            return StripePlan.FREE;
+        }
+    }
+
+    private Integer parseTenantId(HttpServletRequest request) {
+        var header = request.getHeader(TENANT_HEADER);
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Integer.valueOf(header.trim());
+        } catch (NumberFormatException ex) {
+            // the tenant header filter rejects it later in the chain
+            return null;
+        }
+    }
+
+    private void recordDecision(RateLimitEndpointGroup group, String scope, String result) {
+        this.meterRegistry.counter("app.rate-limit.decisions", "group", group.toString(), "scope", scope, "result", result).increment();
+    }
+
+    // the identity rejections of an authenticated tenant request are tagged with its tenant too
+    private void recordRejection(RateLimitEndpointGroup group, String scope, Integer tenantId) {
+        var tags = this.tenantMetricTags.of(tenantId).and("group", group.toString()).and("scope", scope);
+        this.meterRegistry.counter("app.rate-limit.rejected", tags).increment();
+    }
+}
@@ -1,31 +1,221 @@
 package com.example.multitenant.services.security;
 
 import java.time.Duration;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import io.github.bucket4j.Bucket;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import io.github.bucket4j.BucketConfiguration;
+import com.example.multitenant.models.enums.RateLimitMode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.github.bucket4j.Bucket;
 import io.github.bucket4j.distributed.proxy.ProxyManager;
-import jakarta.servlet.http.HttpServletRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * consumes tokens from the rate limit bucket of a key (see {@link RateLimitPolicyService} for the keys and the policies),
+ * the mode is set by 'app.rate-limit.mode' (see {@link RateLimitMode}).
+ *
+ * in the hybrid mode every key has a local pool of tokens leased from its shared redis bucket in batches of 'lease.batch-size',
+ * requests consume from the pool with a CAS and when the pool drops below 'lease.low-watermark' the next batch is reserved
+ * asynchronously, so only about 1 / batch-size of the requests touch redis. an empty pool is refilled with one synchronous
+ * call that also takes the token of the request, and when redis has no token left the key is rejected locally until one
+ * token could have been refilled, so a throttled key costs at most one redis call per refill interval instead of one
+ * (or two) per request. the global limit is never exceeded because
+ * tokens are reserved from redis before they are used, the error is the other way around: tokens leased by a node and left
+ * unused (until the lease is evicted) are not available to the other nodes, this is exposed by the 'app.rate-limit.leased.tokens' gauge
+ * and the 'app.rate-limit.leased.tokens.expired' counter.
+ */
+@Slf4j
 @Service
 public class RateLimiterService {
     private String prefix = "spring:java-app:bucket:v1:";
-    @Autowired
-    private ProxyManager<String> proxyManager;
-
-    private Supplier<BucketConfiguration> getNormalUsersConfig() {
-        return ()-> BucketConfiguration.builder()
-            .addLimit((r)-> {
-                return r.capacity(200L).refillGreedy(200, Duration.ofMinutes(1L));
-            })
+
+    private final ProxyManager<String> proxyManager;
+    private final RateLimitMode mode;
+    private final long leaseBatchSize;
+    private final long leaseLowWatermark;
+
+    private final Cache<String, TokenLease> leases;
+    private final Cache<String, Bucket> localBuckets;
+    private final AtomicLong outstandingLeasedTokens = new AtomicLong();
+
+    private final Counter redisCallsCounter;
+    private final Counter redisCallsAvoidedCounter;
+    private final Counter expiredLeasedTokensCounter;
+
+    public RateLimiterService(ProxyManager<String> proxyManager, MeterRegistry meterRegistry,
+        @Value("${app.rate-limit.mode:REDIS}") RateLimitMode mode,
+        @Value("${app.rate-limit.lease.batch-size:20}") long leaseBatchSize,
+        @Value("${app.rate-limit.lease.low-watermark:5}") long leaseLowWatermark,
+        @Value("${app.rate-limit.local.max-clients:100000}") long maxLocalClients,
+        @Value("${app.rate-limit.local.idle-timeout:PT2M}") Duration localIdleTimeout) {
+
+        this.proxyManager = proxyManager;
+        this.mode = mode;
+        this.leaseBatchSize = leaseBatchSize;
+        this.leaseLowWatermark = leaseLowWatermark;
+
+        this.leases = Caffeine.newBuilder()
+            .maximumSize(maxLocalClients)
+            .expireAfterAccess(localIdleTimeout)
+            .removalListener((String key, TokenLease lease, RemovalCause cause) -> this.onLeaseRemoved(lease))
             .build();
+
+        this.localBuckets = Caffeine.newBuilder()
+            .maximumSize(maxLocalClients)
+            .expireAfterAccess(localIdleTimeout)
+            .build();
+
+        this.redisCallsCounter = Counter.builder("app.rate-limit.redis.calls")
+            .description("rate limiter calls made to the shared redis buckets")
+            .register(meterRegistry);
+        this.redisCallsAvoidedCounter = Counter.builder("app.rate-limit.redis.calls.avoided")
+            .description("requests admitted from a local token lease or rejected by a local exhaustion mark without calling redis")
+            .register(meterRegistry);
+        this.expiredLeasedTokensCounter = Counter.builder("app.rate-limit.leased.tokens.expired")
+            .description("tokens leased from redis that were never used before the lease was evicted")
+            .register(meterRegistry);
+        Gauge.builder("app.rate-limit.leased.tokens", this.outstandingLeasedTokens, AtomicLong::get)
+            .description("tokens currently leased from redis and not yet used on this node")
+            .register(meterRegistry);
+    }
+
+    // the key must include everything that changes the policy (e.g. the tenant plan), buckets are never reconfigured
+    public boolean tryConsume(String key, RateLimitPolicy policy) {
+        return switch (this.mode) {
+            case REDIS -> this.tryConsumeFromRedis(key, policy);
+            case HYBRID -> this.tryConsumeFromLease(key, policy);
+            case LOCAL -> this.localBuckets.get(key, (k) -> this.createLocalBucket(policy)).tryConsume(1);
+        };
+    }
+
+    public Bucket getBucket(String key, RateLimitPolicy policy) {
+        return (Bucket) proxyManager.builder().build(prefix + key, policy.configurationSupplier());
+    }
+
+    private boolean tryConsumeFromRedis(String key, RateLimitPolicy policy) {
+        this.redisCallsCounter.increment();
+        return this.getBucket(key, policy).tryConsume(1);
+    }
+
+    private boolean tryConsumeFromLease(String key, RateLimitPolicy policy) {
+        var lease = this.leases.get(key, (k) -> new TokenLease());
+
+        while (true) {
+            var available = lease.tokens.get();
+            if (available <= 0) {
+                break;
+            }
+
+            if (lease.tokens.compareAndSet(available, available - 1)) {
+                this.outstandingLeasedTokens.decrementAndGet();
+                this.redisCallsAvoidedCounter.increment();
+
+                if (available - 1 <= this.leaseLowWatermark) {
+                    this.refillAsync(key, policy, lease);
+                }
+
+                return true;
+            }
+        }
+
+        // the pool is empty (first request of the key or the batches were consumed faster than refilled)
+        if (System.nanoTime() - lease.exhaustedUntil < 0) {
+            this.redisCallsAvoidedCounter.increment();
+            return false;
+        }
+
+        return this.leaseAndConsume(key, policy, lease);
+    }
+
+    // one round trip: reserves the next batch and the token of this request together
+    private boolean leaseAndConsume(String key, RateLimitPolicy policy, TokenLease lease) {
+        this.redisCallsCounter.increment();
+        var reserved = this.getBucket(key, policy).tryConsumeAsMuchAsPossible(this.leaseBatchSize);
+        if (reserved <= 0) {
+            this.markExhausted(policy, lease);
+            return false;
+        }
+
+        this.addLeasedTokens(key, lease, reserved - 1);
+        return true;
     }
-    
-    public Bucket getBucketByIP(String ip) {
-        return (Bucket) proxyManager.builder().build(prefix + ip, getNormalUsersConfig());
+
+    private void refillAsync(String key, RateLimitPolicy policy, TokenLease lease) {
+        if (!lease.refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.redisCallsCounter.increment();
+        this.proxyManager.asAsync().builder()
+            .build(prefix + key, policy.asyncConfigurationSupplier())
+            .tryConsumeAsMuchAsPossible(this.leaseBatchSize)
+            .whenComplete((reserved, ex) -> {
+                if (ex != null) {
+                    log.warn("failed to lease rate limit tokens for key {}", key, ex);
+                } else if (reserved == null || reserved == 0) {
+                    this.markExhausted(policy, lease);
+                } else {
+                    this.addLeasedTokens(key, lease, reserved);
+                }
+
+                lease.refilling.set(false);
+            });
+    }
+
+    private void addLeasedTokens(String key, TokenLease lease, long tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+
+        if (this.leases.getIfPresent(key) != lease) {
+            // the lease was evicted while the batch was being reserved
+            this.expiredLeasedTokensCounter.increment(tokens);
+            return;
+        }
+
+        lease.tokens.addAndGet(tokens);
+        this.outstandingLeasedTokens.addAndGet(tokens);
+    }
+
+    private void markExhausted(RateLimitPolicy policy, TokenLease lease) {
+        lease.exhaustedUntil = System.nanoTime() + policy.nanosPerToken();
+    }
+
+    // local buckets are lock-free (CAS based) by default
+    private Bucket createLocalBucket(RateLimitPolicy policy) {
+        var builder = Bucket.builder();
+        for (var bandwidth : policy.configuration().getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+
+        return builder.build();
+    }
+
+    private void onLeaseRemoved(TokenLease lease) {
+        if (lease == null) {
+            return;
+        }
+
+        var unused = lease.tokens.getAndSet(0);
+        if (unused > 0) {
+            this.outstandingLeasedTokens.addAndGet(-unused);
+            this.expiredLeasedTokensCounter.increment(unused);
+        }
+    }
+
+    private static class TokenLease {
+        private final AtomicLong tokens = new AtomicLong();
+        private final AtomicBoolean refilling = new AtomicBoolean(false);
+        // redis had no token left for the key, requests are rejected locally until then (System.nanoTime)
+        private volatile long exhaustedUntil = System.nanoTime();
     }
-}
\ No newline at end of file
+}
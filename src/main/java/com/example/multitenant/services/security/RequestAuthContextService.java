@@ -0,0 +1,212 @@
+package com.example.multitenant.services.security;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.multitenant.dtos.organizationroles.OrgRoleCacheDTO;
+import com.example.multitenant.models.User;
+import com.example.multitenant.models.enums.StripePlan;
+import com.example.multitenant.services.cache.AuthCacheService;
+import com.example.multitenant.services.cache.RestrictionsCacheSerivce;
+import com.example.multitenant.services.cache.StripeSubsecriptionsCacheService;
+import com.example.multitenant.services.metrics.TenantMetricTags;
+import com.example.multitenant.utils.AppUtils;
+import com.example.multitenant.utils.SecurityUtils;
+import com.example.multitenant.utils.VirtualThreadsUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * resolves the tenant/user authorization data once per http request and memoizes it inside the request attributes,
+ * so the SpEL checks, the aspects and the controllers of the same request do not repeat the same redis lookups.
+ *
+ * outside of an http request (websocket handlers, async tasks) every call goes directly to the underlying service.
+ */
+@Slf4j
+@Service
+public class RequestAuthContextService {
+    private static final String CONTEXT_ATTRIBUTE = RequestAuthContextService.class.getName() + ".CONTEXT";
+    private static final String TENANT_HEADER = "X-Tenant-ID";
+
+    private static final String TENANT_ID = "tenant-id";
+    private static final String USER = "user";
+    private static final String USER_ROLES = "user-roles";
+    private static final String PERMISSION_BITS = "permission-bits";
+    private static final String RESTRICTED = "restricted";
+    private static final String PLAN = "plan";
+    // the lookups backed by the caches, the tenant id and the user come from the request itself and save no call
+    private static final Set<String> CACHE_LOOKUPS = Set.of(USER_ROLES, PERMISSION_BITS, RESTRICTED, PLAN);
+
+    private final AuthCacheService authCacheService;
+    private final RestrictionsCacheSerivce restrictionsCacheSerivce;
+    private final StripeSubsecriptionsCacheService stripeSubsecriptionsCacheService;
+    private final MeterRegistry meterRegistry;
+    private final TenantMetricTags tenantMetricTags;
+    private final DistributionSummary savedLookupsSummary;
+    private final boolean preloadEnabled;
+
+    public RequestAuthContextService(AuthCacheService authCacheService, RestrictionsCacheSerivce restrictionsCacheSerivce,
+        StripeSubsecriptionsCacheService stripeSubsecriptionsCacheService, MeterRegistry meterRegistry,
+        TenantMetricTags tenantMetricTags,
+        @Value("${app.auth-context.preload:false}") boolean preloadEnabled) {
+
+        this.authCacheService = authCacheService;
+        this.restrictionsCacheSerivce = restrictionsCacheSerivce;
+        this.stripeSubsecriptionsCacheService = stripeSubsecriptionsCacheService;
+        this.meterRegistry = meterRegistry;
+        this.tenantMetricTags = tenantMetricTags;
+        this.preloadEnabled = preloadEnabled;
+        this.savedLookupsSummary = DistributionSummary.builder("app.auth.context.saved.lookups")
+            .description("cache lookups served from the request auth context instead of the auth caches per request")
+            .register(meterRegistry);
+    }
+
+    public Integer getTenantId() {
+        return this.memoize(TENANT_ID, () -> AppUtils.getTenantId());
+    }
+
+    public User getUser() {
+        return this.memoize(USER, () -> SecurityUtils.getUserFromAuth());
+    }
+
+    public List<OrgRoleCacheDTO> getUserOrgRoles() {
+        this.preloadIfEnabled();
+        return this.memoize(USER_ROLES, () -> this.authCacheService.getUserOrgRoles(this.getTenantId(), this.getUser().getId()));
+    }
+
+    public long[] getUserPermissionBits() {
+        return this.memoize(PERMISSION_BITS, () -> this.authCacheService.getUserOrgPermissionBits(this.getTenantId(), this.getUserOrgRoles()));
+    }
+
+    public boolean isRestricted(Long userId) {
+        if (this.getContext() == null) {
+            return this.restrictionsCacheSerivce.getIsRestricted(userId);
+        }
+
+        var user = this.getUser();
+        if (user == null || userId == null || user.getId() != userId) {
+            return this.restrictionsCacheSerivce.getIsRestricted(userId);
+        }
+
+        return this.isRestricted();
+    }
+
+    public boolean isRestricted() {
+        return this.memoize(RESTRICTED, () -> this.restrictionsCacheSerivce.getIsRestricted(this.getUser().getId()));
+    }
+
+    public String getPlan() {
+        this.preloadIfEnabled();
+        return this.memoize(PLAN, () -> this.fetchPlan(this.getTenantId()));
+    }
+
+    private String fetchPlan(Integer tenantId) {
+        var sub = this.stripeSubsecriptionsCacheService.getSubscription(tenantId);
+        var plan = (sub != null) ? sub.getTier() : StripePlan.FREE.toString();
+        this.tenantMetricTags.rememberTier(tenantId, plan);
+
+        return plan;
+    }
+
+    // resolves the user roles, restriction flag and the plan concurrently on the first tenant lookup of the request
+    private void preloadIfEnabled() {
+        if (!this.preloadEnabled) {
+            return;
+        }
+
+        var context = this.getContext();
+        if (context == null || context.preloaded || !this.hasTenantHeader()) {
+            return;
+        }
+
+        context.preloaded = true;
+        var tenantId = this.getTenantId();
+        var userId = this.getUser().getId();
+
+        var result = VirtualThreadsUtils.run(
+            () -> this.authCacheService.getUserOrgRoles(tenantId, userId),
+            () -> this.restrictionsCacheSerivce.getIsRestricted(userId),
+            () -> this.fetchPlan(tenantId)
+        );
+
+        context.preloadedValues.put(USER_ROLES, result.getLeft());
+        context.preloadedValues.put(RESTRICTED, result.getMiddle());
+        context.preloadedValues.put(PLAN, result.getRight());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T memoize(String lookup, Supplier<T> loader) {
+        var context = this.getContext();
+        if (context == null) {
+            return loader.get();
+        }
+
+        var cached = context.values.get(lookup);
+        if (cached != null) {
+            if (CACHE_LOOKUPS.contains(lookup)) {
+                context.savedLookups.incrementAndGet();
+            }
+
+            this.meterRegistry.counter("app.auth.context.lookups", "lookup", lookup, "result", "hit").increment();
+            return (T) cached;
+        }
+
+        // the first read of a preloaded value is the call the preload made, not one it saved
+        var preloaded = context.preloadedValues.remove(lookup);
+        var value = (preloaded != null) ? (T) preloaded : loader.get();
+        if (value != null) {
+            context.values.put(lookup, value);
+        }
+
+        this.meterRegistry.counter("app.auth.context.lookups", "lookup", lookup, "result", "miss").increment();
+        return value;
+    }
+
+    private RequestAuthContext getContext() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+
+        var context = (RequestAuthContext) attributes.getAttribute(CONTEXT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (context == null) {
+            var newContext = new RequestAuthContext();
+            attributes.setAttribute(CONTEXT_ATTRIBUTE, newContext, RequestAttributes.SCOPE_REQUEST);
+            attributes.registerDestructionCallback(CONTEXT_ATTRIBUTE,
+                () -> this.savedLookupsSummary.record(newContext.savedLookups.get()), RequestAttributes.SCOPE_REQUEST);
+
+            context = newContext;
+        }
+
+        return context;
+    }
+
+    private boolean hasTenantHeader() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletRequestAttributes) {
+            var header = servletRequestAttributes.getRequest().getHeader(TENANT_HEADER);
+            return header != null && !header.isBlank();
+        }
+
+        return false;
+    }
+
+    private static class RequestAuthContext {
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+        private final Map<String, Object> preloadedValues = new ConcurrentHashMap<>();
+        private final AtomicInteger savedLookups = new AtomicInteger();
+        private volatile boolean preloaded = false;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.multitenant.services.websocket;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authorization.AuthorizationDeniedException;
+import org.springframework.stereotype.Service;
+
+import com.example.multitenant.dtos.websocket.ChatActivityDTO;
+import com.example.multitenant.exceptions.ResourceNotFoundException;
+import com.example.multitenant.exceptions.UnauthorizedUserException;
+import com.example.multitenant.models.User;
+import com.example.multitenant.repository.ConversationsRepository;
+import com.example.multitenant.services.cache.AuthCacheService;
+import com.example.multitenant.services.channels.ChannelsService;
+import com.example.multitenant.services.conversations.ConversationInboxService;
+import com.example.multitenant.services.membership.MemberShipService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ephemeral chat activity (typing indicators and read receipts) of the channels and the conversations.
+ *
+ * nothing is persisted and no message row is touched, the events of a channel/conversation are aggregated in memory
+ * and sent as one activity frame every 'flush-interval' (typing users + last read message per user):
+ * - the typing events of a user are debounced, a user is reported typing at most once every 'typing-debounce'.
+ * - only the latest read receipt of a user is kept per frame, the channel read receipts are debounced like the typing
+ *   events and a debounced one only updates the frame that is still pending.
+ * - a channel event is accepted only from a member whose roles can access the category of the channel.
+ * - a conversation read receipt also clears the unread counter of the conversation in the reader inbox.
+ */
+@Slf4j
+@Service
+public class ChatActivityService {
+    private final WebSocketService webSocketService;
+    private final ConversationsRepository conversationsRepository;
+    private final ConversationInboxService conversationInboxService;
+    private final MemberShipService memberShipService;
+    private final ChannelsService channelsService;
+    private final AuthCacheService authCacheService;
+
+    // scope (channel/conversation) -> activity waiting for the next frame, only mutated inside 'compute'
+    private final Map<String, ActivityBatch> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> recentTyping;
+    private final LoadingCache<Integer, ConvParticipants> convParticipants;
+    // 'orgId:categoryId:channelId:userId' -> access, the events are too frequent to check it in the database each time
+    private final Cache<String, Boolean> channelAccess;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("chat-activity").daemon().factory());
+
+    private final Counter receivedCounter;
+    private final Counter framesCounter;
+
+    public ChatActivityService(WebSocketService webSocketService, ConversationsRepository conversationsRepository,
+        ConversationInboxService conversationInboxService, MemberShipService memberShipService, ChannelsService channelsService,
+        AuthCacheService authCacheService, MeterRegistry meterRegistry,
+        @Value("${app.websocket.activity.flush-interval:PT0.5S}") Duration flushInterval,
+        @Value("${app.websocket.activity.typing-debounce:PT2S}") Duration typingDebounce) {
+
+        this.webSocketService = webSocketService;
+        this.conversationsRepository = conversationsRepository;
+        this.conversationInboxService = conversationInboxService;
+        this.memberShipService = memberShipService;
+        this.channelsService = channelsService;
+        this.authCacheService = authCacheService;
+
+        this.recentTyping = Caffeine.newBuilder()
+            .expireAfterWrite(typingDebounce)
+            .build();
+        // the participants of a conversation never change
+        this.convParticipants = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build(this::fetchParticipants);
+        this.channelAccess = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+
+        this.receivedCounter = Counter.builder("app.websocket.activity.received")
+            .description("typing and read receipt events received from the clients")
+            .register(meterRegistry);
+        this.framesCounter = Counter.builder("app.websocket.activity.frames")
+            .description("aggregated activity frames sent to the channels and conversations")
+            .register(meterRegistry);
+
+        // the flush must survive a failure, an exception would cancel the schedule
+        this.executor.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void channelTyping(Integer tenantId, Integer categoryId, Integer channelId, long userId) {
+        this.checkChannelAccess(tenantId, categoryId, channelId, userId);
+        var scope = channelScope(tenantId, categoryId, channelId);
+        if (this.isDebounced(scope + ":typing", userId)) {
+            return;
+        }
+
+        this.record(scope, () -> ActivityBatch.forChannel(tenantId, categoryId, channelId), (batch) -> batch.typing.add(userId));
+    }
+
+    public void channelRead(Integer tenantId, Integer categoryId, Integer channelId, long userId, Integer messageId) {
+        this.checkChannelAccess(tenantId, categoryId, channelId, userId);
+        var scope = channelScope(tenantId, categoryId, channelId);
+        Consumer<ActivityBatch> update = (batch) -> batch.reads.merge(userId, messageId, Math::max);
+        if (this.isDebounced(scope + ":read", userId)) {
+            // the latest receipt still makes it into the pending frame, it never starts a new one
+            this.receivedCounter.increment();
+            this.pending.computeIfPresent(scope, (key, batch) -> {
+                update.accept(batch);
+                return batch;
+            });
+
+            return;
+        }
+
+        this.record(scope, () -> ActivityBatch.forChannel(tenantId, categoryId, channelId), update);
+    }
+
+    public void conversationTyping(Integer conversationId, User user) {
+        var participants = this.getParticipants(conversationId, user);
+        var scope = "conv:" + conversationId;
+        if (this.isDebounced(scope, user.getId())) {
+            return;
+        }
+
+        this.record(scope, () -> ActivityBatch.forConversation(conversationId, participants), (batch) -> batch.typing.add(user.getId()));
+    }
+
+    public void conversationRead(Integer conversationId, User user, Integer messageId) {
+        var participants = this.getParticipants(conversationId, user);
+        this.record("conv:" + conversationId, () -> ActivityBatch.forConversation(conversationId, participants),
+            (batch) -> batch.reads.merge(user.getId(), messageId, Math::max));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private boolean isDebounced(String scope, long userId) {
+        var key = scope + ":" + userId;
+        if (this.recentTyping.getIfPresent(key) != null) {
+            return true;
+        }
+
+        this.recentTyping.put(key, Boolean.TRUE);
+        return false;
+    }
+
+    private void record(String scope, Supplier<ActivityBatch> factory, Consumer<ActivityBatch> update) {
+        this.receivedCounter.increment();
+        this.pending.compute(scope, (key, batch) -> {
+            var current = (batch != null) ? batch : factory.get();
+            update.accept(current);
+
+            return current;
+        });
+    }
+
+    private void flush() {
+        for (var scope : new ArrayList<>(this.pending.keySet())) {
+            var batch = this.pending.remove(scope);
+            if (batch == null) {
+                continue;
+            }
+
+            try {
+                this.send(batch);
+                this.framesCounter.increment();
+            } catch (Exception ex) {
+                log.error("failed to send the chat activity of {}", scope, ex);
+            }
+        }
+    }
+
+    private void send(ActivityBatch batch) {
+        var activity = new ChatActivityDTO(batch.channelId, batch.conversationId, new ArrayList<>(batch.typing), batch.reads);
+        if (batch.channelId != null) {
+            this.webSocketService.publishChannelActivity(activity, batch.tenantId, batch.categoryId);
+            return;
+        }
+
+        this.webSocketService.publishConvActivity(activity, batch.participants.user1Email());
+        this.webSocketService.publishConvActivity(activity, batch.participants.user2Email());
+
+        for (var reader : batch.reads.keySet()) {
+            this.conversationInboxService.markAsRead(reader, batch.conversationId);
+        }
+    }
+
+    // the scope holds the tenant and the category so a frame is always published on the topic of its own channel
+    private static String channelScope(Integer tenantId, Integer categoryId, Integer channelId) {
+        return "channel:" + tenantId + ":" + categoryId + ":" + channelId;
+    }
+
+    private void checkChannelAccess(Integer tenantId, Integer categoryId, Integer channelId, long userId) {
+        var key = tenantId + ":" + categoryId + ":" + channelId + ":" + userId;
+        var hasAccess = this.channelAccess.get(key, (k) -> this.hasChannelAccess(tenantId, categoryId, channelId, userId));
+        if (!Boolean.TRUE.equals(hasAccess)) {
+            throw new AuthorizationDeniedException("you do not have access to this channel");
+        }
+    }
+
+    // the channel must belong to the tenant and the category, and one of the user roles must be authorized on the category
+    private boolean hasChannelAccess(Integer tenantId, Integer categoryId, Integer channelId, long userId) {
+        if (!this.memberShipService.isMember(tenantId, userId)) {
+            return false;
+        }
+
+        try {
+            this.channelsService.findByIdAndOrganizationId(channelId, tenantId, categoryId);
+            var authorizedRolesIds = this.authCacheService.getOrgCategoryWithAuthorizedRolesList(tenantId, categoryId);
+
+            return this.authCacheService.getUserOrgRoles(tenantId, userId).stream()
+                .anyMatch((role) -> authorizedRolesIds.contains(role.getId()));
+        } catch (ResourceNotFoundException | UnauthorizedUserException ex) {
+            return false;
+        }
+    }
+
+    private ConvParticipants getParticipants(Integer conversationId, User user) {
+        var participants = this.convParticipants.get(conversationId);
+        if (participants == null) {
+            throw new ResourceNotFoundException("conversation", conversationId);
+        }
+
+        if (participants.user1Id() != user.getId() && participants.user2Id() != user.getId()) {
+            throw new AuthorizationDeniedException("you are not part of this conversation");
+        }
+
+        return participants;
+    }
+
+    private ConvParticipants fetchParticipants(Integer conversationId) {
+        var conv = this.conversationsRepository.findByIdWithLastMessageAndUsers(conversationId);
+        if (conv == null) {
+            return null;
+        }
+
+        return new ConvParticipants(conv.getUser1().getId(), conv.getUser1().getEmail(), conv.getUser2().getId(), conv.getUser2().getEmail());
+    }
+
+    private record ConvParticipants(long user1Id, String user1Email, long user2Id, String user2Email) {}
+
+    private static class ActivityBatch {
+        private Integer tenantId;
+        private Integer categoryId;
+        private Integer channelId;
+        private Integer conversationId;
+        private ConvParticipants participants;
+        private final Set<Long> typing = new HashSet<>();
+        private final Map<Long, Integer> reads = new HashMap<>();
+
+        private static ActivityBatch forChannel(Integer tenantId, Integer categoryId, Integer channelId) {
+            var batch = new ActivityBatch();
+            batch.tenantId = tenantId;
+            batch.categoryId = categoryId;
+            batch.channelId = channelId;
+
+            return batch;
+        }
+
+        private static ActivityBatch forConversation(Integer conversationId, ConvParticipants participants) {
+            var batch = new ActivityBatch();
+            batch.conversationId = conversationId;
+            batch.participants = participants;
+
+            return batch;
+        }
+    }
+}
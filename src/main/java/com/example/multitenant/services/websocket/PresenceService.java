@@ -0,0 +1,424 @@
+package com.example.multitenant.services.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.example.multitenant.dtos.websocket.PresenceDiffDTO;
+import com.example.multitenant.services.membership.MemberShipService;
+import com.example.multitenant.utils.SecurityUtils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * cluster-wide presence of the users connected to the websocket endpoint.
+ *
+ * every session is kept in a redis sorted set per user scored by its expiry, the node that owns the session renews
+ * it every 'heartbeat-interval' so the sessions of a crashed node expire after 'ttl'. the user is online while
+ * at least one of its sessions is live (the online users are a sorted set scored by expiry), the organizations of the
+ * online users are listed in another sorted set ('orgId:userId' scored by the organization id) so the online members
+ * of an organization are read in O(online) without scanning the memberships.
+ *
+ * the organizations a user is listed in are kept in redis with its sessions and all the keys of a user change in one
+ * script (connect, disconnect, renew, join/leave of an organization), so concurrent changes on different nodes can
+ * not leave a user online in an organization without a live session or the other way around. the users whose sessions
+ * all expired (their node crashed) are swept on the heartbeat and taken offline like a disconnect, until then the
+ * reads skip them by their expiry. all the presence keys share one hash tag, presence lives on a single cluster slot.
+ *
+ * the online/offline changes are coalesced per organization and broadcasted to '/topic/tenants/{id}/presence' at most
+ * once every 'broadcast-interval' by each node. all the state changes of the sessions of this node run on a single
+ * thread so the connect/disconnect of a session are applied in order, the memberships of a connecting user are read
+ * from the database on a virtual thread and not on it.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+    // every key of a script is passed in KEYS, they all share the '{presence}' hash tag so a script runs on one slot
+    // of a redis cluster. the online memberships are the members 'orgId:userId' of a single sorted set scored by the
+    // organization id, the scripts reach the entries of any organization of the user through it
+
+    // KEYS[1] = user sessions, KEYS[2] = user organizations, KEYS[3] = online users, KEYS[4] = online memberships
+    // ARGV[1] = session id, ARGV[2] = expiry (ms), ARGV[3] = now (ms), ARGV[4] = ttl (ms), ARGV[5] = user id, ARGV[6..] = organization ids
+    // returns the live sessions of the user before this one, 0 means the user just came online
+    private static final RedisScript<Long> CONNECT_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[3])
+        local before = redis.call('ZCARD', KEYS[1])
+        redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+        redis.call('PEXPIRE', KEYS[1], ARGV[4])
+        redis.call('ZADD', KEYS[3], ARGV[2], ARGV[5])
+        for _, orgId in ipairs(redis.call('SMEMBERS', KEYS[2])) do
+            redis.call('ZREM', KEYS[4], orgId .. ':' .. ARGV[5])
+        end
+        redis.call('DEL', KEYS[2])
+        for i = 6, #ARGV do
+            redis.call('SADD', KEYS[2], ARGV[i])
+            redis.call('ZADD', KEYS[4], ARGV[i], ARGV[i] .. ':' .. ARGV[5])
+        end
+        return before
+        """, Long.class);
+
+    // KEYS[1] = user sessions, KEYS[2] = user organizations, KEYS[3] = online users, KEYS[4] = online memberships
+    // ARGV[1] = session id (empty when sweeping the expired sessions), ARGV[2] = now (ms), ARGV[3] = user id
+    // returns the organizations the user went offline in, empty while the user has a live session
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DISCONNECT_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('ZREM', KEYS[1], ARGV[1])
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[2])
+        if redis.call('ZCARD', KEYS[1]) > 0 then
+            return {}
+        end
+        local orgIds = redis.call('SMEMBERS', KEYS[2])
+        for _, orgId in ipairs(orgIds) do
+            redis.call('ZREM', KEYS[4], orgId .. ':' .. ARGV[3])
+        end
+        redis.call('DEL', KEYS[2])
+        redis.call('ZREM', KEYS[3], ARGV[3])
+        return orgIds
+        """, List.class);
+
+    // KEYS[1] = user sessions, KEYS[2] = user organizations, KEYS[3] = online users, KEYS[4] = online memberships
+    // ARGV[1] = expiry (ms), ARGV[2] = now (ms), ARGV[3] = ttl (ms), ARGV[4] = user id, ARGV[5..] = session ids
+    // returns 0 when the sessions of the user had already expired (it was swept offline) and have to connect again.
+    // the memberships are not touched, they are live as long as the user is in the online users
+    private static final String RENEW_SCRIPT = """
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[2])
+        if redis.call('ZCARD', KEYS[1]) == 0 then
+            return 0
+        end
+        for i = 5, #ARGV do
+            redis.call('ZADD', KEYS[1], ARGV[1], ARGV[i])
+        end
+        redis.call('PEXPIRE', KEYS[1], ARGV[3])
+        redis.call('ZADD', KEYS[3], ARGV[1], ARGV[4])
+        return 1
+        """;
+
+    // KEYS[1] = user sessions, KEYS[2] = user organizations, KEYS[3] = online memberships
+    // ARGV[1] = user id, ARGV[2] = organization id, ARGV[3] = now (ms)
+    // returns 1 when the user is online and was added to the organization
+    private static final RedisScript<Long> JOIN_ORG_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[3])
+        if redis.call('ZCARD', KEYS[1]) == 0 then
+            return 0
+        end
+        redis.call('SADD', KEYS[2], ARGV[2])
+        return redis.call('ZADD', KEYS[3], ARGV[2], ARGV[2] .. ':' .. ARGV[1])
+        """, Long.class);
+
+    // KEYS[1] = user organizations, KEYS[2] = online memberships, ARGV[1] = user id, ARGV[2] = organization id
+    // returns 1 when the user was listed online in the organization
+    private static final RedisScript<Long> LEAVE_ORG_SCRIPT = new DefaultRedisScript<>("""
+        redis.call('SREM', KEYS[1], ARGV[2])
+        return redis.call('ZREM', KEYS[2], ARGV[2] .. ':' .. ARGV[1])
+        """, Long.class);
+
+    private static final String KEY_PREFIX = "{presence}:";
+    private static final String ONLINE_USERS_KEY = KEY_PREFIX + "users:online";
+    private static final String ONLINE_MEMBERSHIPS_KEY = KEY_PREFIX + "memberships:online";
+    private static final int SWEEP_BATCH_SIZE = 500;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MemberShipService memberShipService;
+    private final WebSocketService webSocketService;
+    private final Duration ttl;
+
+    // sessions connected to this node (session id -> user id)
+    private final Map<String, Long> localSessions = new ConcurrentHashMap<>();
+    // sessions whose memberships are being resolved, a session disconnected meanwhile is never registered
+    private final Map<String, Long> resolvingSessions = new HashMap<>();
+    // organization id -> (user id -> online), the latest change of a user wins
+    private final Map<Integer, Map<Long, Boolean>> pendingDiffs = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("presence").daemon().factory());
+    private final ExecutorService membershipResolver = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("presence-memberships-", 0).factory());
+
+    public PresenceService(RedisTemplate<String, String> redisTemplate, MemberShipService memberShipService,
+        WebSocketService webSocketService, MeterRegistry meterRegistry,
+        @Value("${app.websocket.presence.heartbeat-interval:PT15S}") Duration heartbeatInterval,
+        @Value("${app.websocket.presence.ttl:PT45S}") Duration ttl,
+        @Value("${app.websocket.presence.broadcast-interval:PT1S}") Duration broadcastInterval) {
+
+        this.redisTemplate = redisTemplate;
+        this.memberShipService = memberShipService;
+        this.webSocketService = webSocketService;
+        this.ttl = ttl;
+
+        Gauge.builder("app.websocket.presence.sessions", this.localSessions, Map::size)
+            .description("websocket sessions connected to this node")
+            .register(meterRegistry);
+
+        this.executor.scheduleWithFixedDelay(this.safely(this::renewSessions), heartbeatInterval.toMillis(),
+            heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        this.executor.scheduleWithFixedDelay(this.safely(this::sweepExpiredUsers), heartbeatInterval.toMillis(),
+            heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        this.executor.scheduleWithFixedDelay(this.safely(this::broadcastDiffs), broadcastInterval.toMillis(),
+            broadcastInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // the ids of the online members of the organization
+    public List<Long> getOnlineMemberIds(Integer orgId) {
+        var memberships = this.redisTemplate.opsForZSet().rangeByScore(ONLINE_MEMBERSHIPS_KEY, orgId, orgId);
+        if (memberships == null || memberships.isEmpty()) {
+            return List.of();
+        }
+
+        var userIds = memberships.stream().map((membership) -> membership.substring(membership.indexOf(':') + 1)).toList();
+        var expiries = this.redisTemplate.opsForZSet().score(ONLINE_USERS_KEY, userIds.toArray());
+
+        // users of crashed nodes that were not swept yet
+        var now = System.currentTimeMillis();
+        var online = new ArrayList<Long>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            var expiry = expiries.get(i);
+            if (expiry != null && expiry > now) {
+                online.add(Long.valueOf(userIds.get(i)));
+            }
+        }
+
+        return online;
+    }
+
+    // called once the user became a member of the organization, lists the user online there if it is connected
+    public void joinOrganization(Integer orgId, long userId) {
+        var keys = List.of(this.getUserSessionsKey(userId), this.getUserOrgsKey(userId), ONLINE_MEMBERSHIPS_KEY);
+        var added = this.redisTemplate.execute(JOIN_ORG_SCRIPT, keys, String.valueOf(userId), String.valueOf(orgId),
+            String.valueOf(System.currentTimeMillis()));
+
+        if (added != null && added == 1) {
+            this.addDiff(userId, List.of(orgId), true);
+        }
+    }
+
+    // called once the user left (or was kicked from) the organization
+    public void leaveOrganization(Integer orgId, long userId) {
+        var keys = List.of(this.getUserOrgsKey(userId), ONLINE_MEMBERSHIPS_KEY);
+        var removed = this.redisTemplate.execute(LEAVE_ORG_SCRIPT, keys, String.valueOf(userId), String.valueOf(orgId));
+
+        if (removed != null && removed == 1) {
+            this.addDiff(userId, List.of(orgId), false);
+        }
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        var sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        var principal = event.getUser();
+        if (sessionId == null || principal == null) {
+            return;
+        }
+
+        var userId = SecurityUtils.getUserFromPrincipal(principal).getId();
+        this.executor.execute(this.safely(() -> this.resolve(sessionId, userId)));
+    }
+
+    @EventListener
+    public void onSessionDisconnected(SessionDisconnectEvent event) {
+        var sessionId = event.getSessionId();
+        this.executor.execute(this.safely(() -> this.disconnect(sessionId)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.membershipResolver.shutdownNow();
+
+        // the sessions of this node are closed with it, the users are taken offline right away instead of after the ttl
+        this.executor.execute(this.safely(() -> {
+            this.resolvingSessions.clear();
+            new ArrayList<>(this.localSessions.keySet()).forEach(this::disconnect);
+            this.broadcastDiffs();
+        }));
+
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // reads the memberships of the user off the presence thread, then connects the session on it
+    private void resolve(String sessionId, long userId) {
+        this.resolvingSessions.put(sessionId, userId);
+        this.membershipResolver.execute(() -> {
+            try {
+                var orgIds = this.memberShipService.findUserOrgIds(userId);
+                this.executor.execute(this.safely(() -> this.connect(sessionId, userId, orgIds)));
+            } catch (Exception ex) {
+                log.error("failed to resolve the organizations of user {}", userId, ex);
+                this.executor.execute(() -> this.resolvingSessions.remove(sessionId));
+            }
+        });
+    }
+
+    private void connect(String sessionId, long userId, List<Integer> orgIds) {
+        if (this.resolvingSessions.remove(sessionId) == null) {
+            // disconnected while its memberships were resolved
+            return;
+        }
+
+        this.localSessions.put(sessionId, userId);
+
+        var now = System.currentTimeMillis();
+        var args = new ArrayList<String>(orgIds.size() + 5);
+        args.add(sessionId);
+        args.add(String.valueOf(now + this.ttl.toMillis()));
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(this.ttl.toMillis()));
+        args.add(String.valueOf(userId));
+        orgIds.forEach((orgId) -> args.add(String.valueOf(orgId)));
+
+        var before = this.redisTemplate.execute(CONNECT_SCRIPT, this.getUserKeys(userId), args.toArray());
+        if (before != null && before == 0) {
+            this.addDiff(userId, orgIds, true);
+        }
+    }
+
+    private void disconnect(String sessionId) {
+        if (this.resolvingSessions.remove(sessionId) != null) {
+            return;
+        }
+
+        var userId = this.localSessions.remove(sessionId);
+        if (userId != null) {
+            this.takeOffline(userId, sessionId);
+        }
+    }
+
+    // runs the disconnect script, an empty session id only takes the user offline if all its sessions expired
+    private void takeOffline(long userId, String sessionId) {
+        List<?> orgIds = this.redisTemplate.execute(DISCONNECT_SCRIPT, this.getUserKeys(userId), sessionId,
+            String.valueOf(System.currentTimeMillis()), String.valueOf(userId));
+
+        if (orgIds != null && !orgIds.isEmpty()) {
+            this.addDiff(userId, orgIds.stream().map((orgId) -> Integer.valueOf(orgId.toString())).toList(), false);
+        }
+    }
+
+    // pushes the expiry of the sessions of this node (and of their users in their organizations) in one round trip
+    private void renewSessions() {
+        if (this.localSessions.isEmpty()) {
+            return;
+        }
+
+        var sessionsByUser = new HashMap<Long, List<String>>();
+        this.localSessions.forEach((sessionId, userId) -> sessionsByUser.computeIfAbsent(userId, (key) -> new ArrayList<>()).add(sessionId));
+
+        var users = new ArrayList<>(sessionsByUser.keySet());
+        var now = System.currentTimeMillis();
+        var script = this.bytes(RENEW_SCRIPT);
+
+        var results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+            for (var userId : users) {
+                var keysAndArgs = new ArrayList<byte[]>();
+                this.getUserKeys(userId).forEach((key) -> keysAndArgs.add(this.bytes(key)));
+                keysAndArgs.add(this.bytes(String.valueOf(now + this.ttl.toMillis())));
+                keysAndArgs.add(this.bytes(String.valueOf(now)));
+                keysAndArgs.add(this.bytes(String.valueOf(this.ttl.toMillis())));
+                keysAndArgs.add(this.bytes(String.valueOf(userId)));
+                sessionsByUser.get(userId).forEach((sessionId) -> keysAndArgs.add(this.bytes(sessionId)));
+
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 4, keysAndArgs.toArray(byte[][]::new));
+            }
+
+            return null;
+        });
+
+        // a user swept offline while this node could not renew (e.g. a long pause) comes back online with fresh memberships
+        for (int i = 0; i < users.size(); i++) {
+            if (Long.valueOf(0).equals(results.get(i))) {
+                var userId = users.get(i);
+                for (var sessionId : sessionsByUser.get(userId)) {
+                    this.localSessions.remove(sessionId);
+                    this.resolve(sessionId, userId);
+                }
+            }
+        }
+    }
+
+    // the users whose sessions all expired without a disconnect (their node crashed), any node may sweep them
+    private void sweepExpiredUsers() {
+        var expired = this.redisTemplate.opsForZSet().rangeByScore(ONLINE_USERS_KEY, Double.NEGATIVE_INFINITY,
+            System.currentTimeMillis(), 0, SWEEP_BATCH_SIZE);
+        if (expired == null) {
+            return;
+        }
+
+        for (var userId : expired) {
+            this.takeOffline(Long.parseLong(userId), "");
+        }
+    }
+
+    private void addDiff(long userId, Collection<Integer> orgIds, boolean online) {
+        for (var orgId : orgIds) {
+            this.pendingDiffs.computeIfAbsent(orgId, (key) -> new ConcurrentHashMap<>()).put(userId, online);
+        }
+    }
+
+    private void broadcastDiffs() {
+        for (var orgId : new ArrayList<>(this.pendingDiffs.keySet())) {
+            var changes = this.pendingDiffs.remove(orgId);
+            if (changes == null || changes.isEmpty()) {
+                continue;
+            }
+
+            var online = new ArrayList<Long>();
+            var offline = new ArrayList<Long>();
+            changes.forEach((userId, isOnline) -> (isOnline ? online : offline).add(userId));
+
+            this.webSocketService.publishPresenceDiff(new PresenceDiffDTO(online, offline), orgId);
+        }
+    }
+
+    private Runnable safely(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                log.error("presence task failed", ex);
+            }
+        };
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> getUserKeys(long userId) {
+        return List.of(this.getUserSessionsKey(userId), this.getUserOrgsKey(userId), ONLINE_USERS_KEY, ONLINE_MEMBERSHIPS_KEY);
+    }
+
+    private String getUserSessionsKey(long userId) {
+        return KEY_PREFIX + "user:" + userId + ":sessions";
+    }
+
+    // no expiry, it is deleted with the user by the disconnect (or the sweep of its expired sessions)
+    private String getUserOrgsKey(long userId) {
+        return KEY_PREFIX + "user:" + userId + ":orgs";
+    }
+}
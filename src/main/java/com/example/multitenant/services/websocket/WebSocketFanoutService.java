@@ -0,0 +1,196 @@
+package com.example.multitenant.services.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.multitenant.models.enums.WebSocketBrokerMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * delivers the server side published websocket messages according to 'app.websocket.broker' (see {@link WebSocketBrokerMode}).
+ *
+ * the payload is encoded to json exactly once per publish, the same byte[] is handed to the broker (no message converter runs)
+ * and the broker shares it between the messages of all the subscribers, so there is no per-subscriber conversion.
+ *
+ * in the REDIS mode the encoded payload is published once to a redis pub/sub channel as a small binary frame
+ * (destination, user, payload) and each node (the publisher included) delivers the same bytes to its own broker,
+ * topic subscribers and user sessions connected to any node receive it. the frames are handed to the broker one at a
+ * time on the subscription thread (see RedisConfig), so a node delivers them in the order they were published.
+ * in the SIMPLE and RELAY modes the payload goes directly to the broker.
+ */
+@Slf4j
+@Service
+public class WebSocketFanoutService implements MessageListener {
+    public static final String FANOUT_CHANNEL = "ws:fanout";
+    private static final String USER_PREFIX = "/user/";
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final SimpUserRegistry simpUserRegistry;
+    private final WebSocketBrokerMode brokerMode;
+    private final boolean recordFanoutSize;
+    private final double fanoutSizeSampleRate;
+
+    private final Counter publishedCounter;
+    private final Counter receivedCounter;
+    private final Timer encodeTimer;
+    private final DistributionSummary payloadSizeSummary;
+    private final DistributionSummary fanoutSizeSummary;
+
+    public WebSocketFanoutService(SimpMessagingTemplate messagingTemplate, RedisTemplate<String, byte[]> redisTemplate,
+        ObjectMapper objectMapper, SimpUserRegistry simpUserRegistry, RedisMessageListenerContainer listenerContainer,
+        MeterRegistry meterRegistry,
+        @Value("${app.websocket.broker:SIMPLE}") WebSocketBrokerMode brokerMode,
+        @Value("${app.websocket.metrics.fanout-size:false}") boolean recordFanoutSize,
+        @Value("${app.websocket.metrics.fanout-size-sample-rate:0.01}") double fanoutSizeSampleRate) {
+
+        this.messagingTemplate = messagingTemplate;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.simpUserRegistry = simpUserRegistry;
+        this.brokerMode = brokerMode;
+        // the relay broker is shared, the local registry does not know its subscriptions
+        this.recordFanoutSize = recordFanoutSize && brokerMode != WebSocketBrokerMode.RELAY;
+        this.fanoutSizeSampleRate = fanoutSizeSampleRate;
+
+        this.publishedCounter = Counter.builder("app.websocket.fanout.published")
+            .description("websocket messages published to the redis fan-out channel")
+            .register(meterRegistry);
+        this.receivedCounter = Counter.builder("app.websocket.fanout.received")
+            .description("websocket messages received from the redis fan-out channel and delivered to the local broker")
+            .register(meterRegistry);
+        this.encodeTimer = Timer.builder("app.websocket.encode")
+            .description("time spent encoding the published websocket payloads (once per message)")
+            .register(meterRegistry);
+        this.payloadSizeSummary = DistributionSummary.builder("app.websocket.payload.size")
+            .description("size of the encoded websocket payloads")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.fanoutSizeSummary = DistributionSummary.builder("app.websocket.fanout.size")
+            .description("subscriptions of this node that received a topic broadcast (sampled)")
+            .register(meterRegistry);
+
+        if (brokerMode == WebSocketBrokerMode.REDIS) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(FANOUT_CHANNEL));
+        }
+    }
+
+    public void send(String destination, Object payload) {
+        this.dispatch(destination, null, this.encode(payload));
+    }
+
+    public void sendToUser(String user, String destination, Object payload) {
+        this.dispatch(destination, user, this.encode(payload));
+    }
+
+    // delivers a payload encoded earlier by {@link #encode(Object)}, the user is null for topic destinations
+    public void sendEncoded(String destination, String user, byte[] payload) {
+        this.dispatch(destination, user, payload);
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        try (var input = new DataInputStream(new ByteArrayInputStream(message.getBody()))) {
+            var destination = input.readUTF();
+            var user = input.readBoolean() ? input.readUTF() : null;
+            var payload = input.readAllBytes();
+
+            this.receivedCounter.increment();
+            this.deliverLocally(destination, user, payload);
+        } catch (Exception ex) {
+            log.error("failed to deliver the fanned out websocket message", ex);
+        }
+    }
+
+    private void dispatch(String destination, String user, byte[] payload) {
+        if (this.brokerMode != WebSocketBrokerMode.REDIS) {
+            this.deliverLocally(destination, user, payload);
+            return;
+        }
+
+        try {
+            this.redisTemplate.convertAndSend(FANOUT_CHANNEL, this.toFrame(destination, user, payload));
+            this.publishedCounter.increment();
+        } catch (Exception ex) {
+            // the message is still delivered to the clients of this node
+            log.error("failed to publish the websocket message to {} over redis, delivering locally only", destination, ex);
+            this.deliverLocally(destination, user, payload);
+        }
+    }
+
+    // users that are not connected to this node have no local sessions, the broker drops their copy
+    private void deliverLocally(String destination, String user, byte[] payload) {
+        var target = (user != null) ? USER_PREFIX + user.replace("/", "%2F") + destination : destination;
+        this.messagingTemplate.send(target, this.toMessage(payload));
+
+        // counting the subscriptions scans the whole user registry, only a sample of the broadcasts pays for it
+        if (this.recordFanoutSize && user == null && destination.startsWith(TOPIC_PREFIX)
+            && ThreadLocalRandom.current().nextDouble() < this.fanoutSizeSampleRate) {
+            this.fanoutSizeSummary.record(this.simpUserRegistry.findSubscriptions((sub) -> destination.equals(sub.getDestination())).size());
+        }
+    }
+
+    public byte[] encode(Object payload) {
+        var start = System.nanoTime();
+        try {
+            var bytes = this.objectMapper.writeValueAsBytes(payload);
+            this.payloadSizeSummary.record(bytes.length);
+
+            return bytes;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("failed to encode the websocket payload", ex);
+        } finally {
+            this.encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the payload is not copied, the broker builds the per-subscription messages around the same byte[]
+    private org.springframework.messaging.Message<byte[]> toMessage(byte[] payload) {
+        var accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private byte[] toFrame(String destination, String user, byte[] payload) throws IOException {
+        var buffer = new ByteArrayOutputStream(payload.length + destination.length() + 64);
+        try (var output = new DataOutputStream(buffer)) {
+            output.writeUTF(destination);
+            output.writeBoolean(user != null);
+            if (user != null) {
+                output.writeUTF(user);
+            }
+            output.write(payload);
+        }
+
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.multitenant.services.websocket;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.multitenant.models.WebSocketOutboxEvent;
+import com.example.multitenant.repository.WebSocketOutboxRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * transactional outbox of the websocket messages, enabled by 'app.websocket.outbox.enabled'.
+ *
+ * publishing never touches the broker on the caller thread, the payload is encoded once and stored as a
+ * {@link WebSocketOutboxEvent} row. inside a transaction the row is part of it, so a rolled back write never produces
+ * an event and a committed one is delivered even if the node stops right after the commit. outside of one (the write
+ * is already committed) the row is stored on its own.
+ * the only events kept in memory are the ones of the messages buffered by the write-behind ({@link #publishBuffered}),
+ * their insert is not committed yet so there is no transaction to record them in, and they are lost with the node
+ * like the buffered messages themselves.
+ *
+ * a dispatcher thread per node delivers both, woken up after each commit and every 'poll-interval' otherwise.
+ * the rows are drained in batches of 'batch-size' by one node at a time (postgres session advisory lock, no transaction
+ * is open while the broker is called) in id order. the events of a batch are grouped by stream (topic destination or
+ * user), the streams are delivered in parallel and the events of a stream in order:
+ * - the stored rows are delivered at least once, only the delivered rows are deleted. after a failed delivery the rest
+ *   of its stream is kept as well and the stream is retried from that row on the next drain.
+ * - the in-memory events are delivered at most once, a failed one is only logged.
+ *
+ * the in-memory queue is delivered again right before each batch of rows, an event queued on this node before a row
+ * was committed is therefore delivered first (e.g. a buffered new message before its edit). there is no such order
+ * between the in-memory events of a node and the rows committed by the other nodes.
+ */
+@Slf4j
+@Service
+public class WebSocketOutboxService {
+    // pg advisory lock key of the outbox drainer
+    private static final long DRAIN_LOCK_KEY = 0x77736f7574626f78L;
+
+    private final WebSocketFanoutService webSocketFanoutService;
+    private final WebSocketOutboxRepository webSocketOutboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final int maxQueued;
+
+    private final LinkedBlockingQueue<WebSocketOutboxEvent> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService streamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Thread dispatcher;
+
+    private final Counter dispatchedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+
+    public WebSocketOutboxService(WebSocketFanoutService webSocketFanoutService, WebSocketOutboxRepository webSocketOutboxRepository,
+        JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+        @Value("${app.websocket.outbox.enabled:true}") boolean enabled,
+        @Value("${app.websocket.outbox.batch-size:200}") int batchSize,
+        @Value("${app.websocket.outbox.poll-interval:PT0.5S}") Duration pollInterval,
+        @Value("${app.websocket.outbox.max-queued:10000}") int maxQueued) {
+
+        this.webSocketFanoutService = webSocketFanoutService;
+        this.webSocketOutboxRepository = webSocketOutboxRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.maxQueued = maxQueued;
+
+        this.dispatchedCounter = Counter.builder("app.websocket.outbox.dispatched")
+            .description("websocket messages delivered by the outbox dispatcher")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("app.websocket.outbox.failed")
+            .description("websocket messages the outbox dispatcher failed to deliver")
+            .register(meterRegistry);
+        this.batchTimer = Timer.builder("app.websocket.outbox.batch")
+            .description("time spent delivering a batch of outbox websocket messages")
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.outbox.queued", this.queue, LinkedBlockingQueue::size)
+            .description("websocket messages waiting in the in-memory outbox queue")
+            .register(meterRegistry);
+    }
+
+    public void publish(String destination, Object payload) {
+        this.enqueue(destination, null, payload);
+    }
+
+    public void publishToUser(String user, String destination, Object payload) {
+        this.enqueue(destination, user, payload);
+    }
+
+    // at most once, for the messages buffered by the write-behind only
+    public void publishBuffered(String destination, Object payload) {
+        var encoded = this.webSocketFanoutService.encode(payload);
+        if (!this.enabled) {
+            this.webSocketFanoutService.sendEncoded(destination, null, encoded);
+            return;
+        }
+
+        var event = newEvent(destination, null, encoded);
+        if (this.queue.size() >= this.maxQueued) {
+            // the broker is not keeping up, delivering on the caller thread slows the producers down
+            log.warn("websocket outbox queue is full, delivering {} on the caller thread", destination);
+            this.deliver(event);
+            return;
+        }
+
+        this.queue.add(event);
+        this.wakeUp();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.enabled || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.dispatcher = Thread.ofPlatform().name("websocket-outbox-dispatcher").daemon().start(this::runDispatcher);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.running.compareAndSet(true, false)) {
+            var current = this.dispatcher;
+            if (current != null) {
+                LockSupport.unpark(current);
+                try {
+                    current.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        this.streamExecutor.shutdown();
+    }
+
+    private void enqueue(String destination, String user, Object payload) {
+        var encoded = this.webSocketFanoutService.encode(payload);
+        if (!this.enabled) {
+            this.webSocketFanoutService.sendEncoded(destination, user, encoded);
+            return;
+        }
+
+        var event = newEvent(destination, user, encoded);
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            // the row is committed by the repository right away
+            this.webSocketOutboxRepository.save(event);
+            this.wakeUp();
+            return;
+        }
+
+        this.webSocketOutboxRepository.save(event);
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            }
+        );
+    }
+
+    private void wakeUp() {
+        var current = this.dispatcher;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private void runDispatcher() {
+        while (this.running.get()) {
+            LockSupport.parkNanos(this.pollInterval.toNanos());
+            this.dispatchPending();
+        }
+
+        // delivers what is left before the node stops, the remaining rows are drained by the other nodes
+        this.dispatchPending();
+    }
+
+    private void dispatchPending() {
+        try {
+            this.dispatchQueued();
+
+            int drained;
+            do {
+                drained = this.drainOutboxBatch();
+            } while (drained >= this.batchSize);
+        } catch (Exception ex) {
+            log.error("websocket outbox dispatch failed, the stored events will be retried", ex);
+        }
+    }
+
+    // returns the number of rows delivered, 0 when another node is draining the outbox
+    private int drainOutboxBatch() {
+        // the session lock lives on this connection, the rows are read and deleted through the repository
+        var drained = this.jdbcTemplate.execute((ConnectionCallback<Integer>) (connection) -> {
+            try (var lock = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, DRAIN_LOCK_KEY);
+                try (var result = lock.executeQuery()) {
+                    if (!result.next() || !result.getBoolean(1)) {
+                        return 0;
+                    }
+                }
+            }
+
+            try {
+                var events = this.webSocketOutboxRepository.findOldest(PageRequest.of(0, this.batchSize));
+                if (events.isEmpty()) {
+                    return 0;
+                }
+
+                // the in-memory events queued before these rows were committed are in the queue by now
+                this.dispatchQueued();
+                var delivered = this.dispatchBatch(events);
+                if (!delivered.isEmpty()) {
+                    this.webSocketOutboxRepository.deleteAllByIdInBatch(delivered.stream().map(WebSocketOutboxEvent::getId).toList());
+                }
+
+                return delivered.size();
+            } finally {
+                try (var unlock = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, DRAIN_LOCK_KEY);
+                    unlock.execute();
+                }
+            }
+        });
+
+        return (drained != null) ? drained : 0;
+    }
+
+    private void dispatchQueued() {
+        while (!this.queue.isEmpty()) {
+            var events = new ArrayList<WebSocketOutboxEvent>(this.batchSize);
+            this.queue.drainTo(events, this.batchSize);
+            this.dispatchBatch(events);
+        }
+    }
+
+    // returns the delivered events, a stream stops at its first failed event
+    private List<WebSocketOutboxEvent> dispatchBatch(List<WebSocketOutboxEvent> events) {
+        var start = System.nanoTime();
+
+        var streams = new LinkedHashMap<String, List<WebSocketOutboxEvent>>();
+        for (var event : events) {
+            streams.computeIfAbsent(event.getStreamKey(), (key) -> new ArrayList<>()).add(event);
+        }
+
+        var delivered = new ArrayList<WebSocketOutboxEvent>(events.size());
+        if (streams.size() == 1) {
+            delivered.addAll(this.deliverStream(events));
+        } else {
+            var futures = new ArrayList<Future<List<WebSocketOutboxEvent>>>(streams.size());
+            for (var stream : streams.values()) {
+                futures.add(this.streamExecutor.submit(() -> this.deliverStream(stream)));
+            }
+
+            for (var future : futures) {
+                try {
+                    delivered.addAll(future.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while dispatching the websocket outbox", ex);
+                } catch (Exception ex) {
+                    log.error("websocket outbox stream dispatch failed", ex);
+                }
+            }
+        }
+
+        this.batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return delivered;
+    }
+
+    private List<WebSocketOutboxEvent> deliverStream(List<WebSocketOutboxEvent> stream) {
+        var delivered = new ArrayList<WebSocketOutboxEvent>(stream.size());
+        for (var event : stream) {
+            if (!this.deliver(event)) {
+                break;
+            }
+
+            delivered.add(event);
+        }
+
+        return delivered;
+    }
+
+    private boolean deliver(WebSocketOutboxEvent event) {
+        try {
+            this.webSocketFanoutService.sendEncoded(event.getDestination(), event.getTargetUser(), event.getPayload());
+            this.dispatchedCounter.increment();
+            return true;
+        } catch (Exception ex) {
+            log.error("failed to deliver the outbox websocket message to {}", event.getDestination(), ex);
+            this.failedCounter.increment();
+            return false;
+        }
+    }
+
+    private static WebSocketOutboxEvent newEvent(String destination, String user, byte[] payload) {
+        var event = new WebSocketOutboxEvent();
+        event.setStreamKey((user != null) ? "user:" + user : destination);
+        event.setDestination(destination);
+        event.setTargetUser(user);
+        event.setPayload(payload);
+
+        return event;
+    }
+}
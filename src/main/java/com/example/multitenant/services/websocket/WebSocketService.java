@@ -3,7 +3,6 @@ package com.example.multitenant.services.websocket;
 import java.util.List;
 
 import org.hibernate.Hibernate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.user.SimpUser;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Service;
@@ -11,6 +10,8 @@ import org.springframework.stereotype.Service;
 import com.example.multitenant.dtos.conversationmessages.ConversationMessageDeleteDTO;
 import com.example.multitenant.dtos.conversationmessages.ConversationMessageViewDTO;
 import com.example.multitenant.dtos.messages.*;
+import com.example.multitenant.dtos.websocket.ChatActivityDTO;
+import com.example.multitenant.dtos.websocket.PresenceDiffDTO;
 import com.example.multitenant.dtos.websocket.WebSocketMessage;
 import com.example.multitenant.models.*;
 import com.example.multitenant.models.enums.*;
@@ -18,16 +19,23 @@ import com.example.multitenant.models.enums.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+// the publish methods only enqueue the message, it is delivered by the outbox dispatcher (see WebSocketOutboxService),
+// except the ephemeral frames (presence diffs, typing, read receipts) which are never stored and go to the fan-out directly
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class WebSocketService {
-    private final SimpMessagingTemplate messagingTemplate;
+    private final WebSocketOutboxService webSocketOutboxService;
+    private final WebSocketFanoutService webSocketFanoutService;
 
     private String getTenantTopic(Integer tenantId, Integer categoryId) {
         return "/topic/tenants/" + tenantId + "/categories/" +categoryId;
     }
 
+    private String getTenantPresenceTopic(Integer tenantId) {
+        return "/topic/tenants/" + tenantId + "/presence";
+    }
+
     private String getUserNotificationsQueue() {
         // frontend will listen to "/user/queue/notifications", we not using "user" explicitly 
         // because we are going to use method "convertAndSendToUser"
@@ -44,12 +52,13 @@ public class WebSocketService {
 
     public void publishNewOrgMessage(OrgMessage message, Integer tenantId, Integer categoryId) {
         var topic = getTenantTopic(tenantId, categoryId);
+        this.webSocketOutboxService.publish(topic, newOrgMessageEvent(message));
+    }
 
-        var wsMsg = new WebSocketMessage<OrgMessageViewDTO>();
-        wsMsg.setPayload(message.toViewDTO());
-        wsMsg.setEvent(getOrgEventName(MessageAction.CREATE.name()));
-
-        this.messagingTemplate.convertAndSend(topic, wsMsg);
+    // the message is still buffered by the write-behind, there is no transaction to record the event in
+    public void publishBufferedOrgMessage(OrgMessage message, Integer tenantId, Integer categoryId) {
+        var topic = getTenantTopic(tenantId, categoryId);
+        this.webSocketOutboxService.publishBuffered(topic, newOrgMessageEvent(message));
     }
 
     public void publishUpdatedOrgMessage(OrgMessage message, Integer tenantId, Integer categoryId) {
@@ -59,7 +68,7 @@ public class WebSocketService {
         wsMsg.setPayload(message.toViewDTO());
         wsMsg.setEvent(getOrgEventName(MessageAction.UPDATE.name()));
 
-        this.messagingTemplate.convertAndSend(topic, wsMsg);
+        this.webSocketOutboxService.publish(topic, wsMsg);
     }
 
     public void publishDeletedOrgMessage(Integer messageId, Integer tenantId, Integer categoryId) {
@@ -69,7 +78,7 @@ public class WebSocketService {
         wsMsg.setPayload(new OrgMessageDeleteDTO(tenantId));
         wsMsg.setEvent(getOrgEventName(MessageAction.DELETE.name()));
         
-        this.messagingTemplate.convertAndSend(topic, wsMsg);
+        this.webSocketOutboxService.publish(topic, wsMsg);
     }
 
     public void publishNewConvMessage(ConversationMessage message, User target) {
@@ -79,7 +88,7 @@ public class WebSocketService {
         wsMsg.setPayload(message.toViewDTO());
         wsMsg.setEvent(getConvEventName(MessageAction.CREATE.name()));
 
-        this.messagingTemplate.convertAndSendToUser(
+        this.webSocketOutboxService.publishToUser(
             target.getEmail(), 
             dest,
             wsMsg
@@ -93,7 +102,7 @@ public class WebSocketService {
         wsMsg.setPayload(message.toViewDTO());
         wsMsg.setEvent(getConvEventName(MessageAction.UPDATE.name()));
 
-        this.messagingTemplate.convertAndSendToUser(
+        this.webSocketOutboxService.publishToUser(
             target.getEmail(), 
             dest,
             wsMsg
@@ -107,10 +116,52 @@ public class WebSocketService {
         wsMsg.setPayload(new ConversationMessageDeleteDTO(messageId));
         wsMsg.setEvent(getConvEventName(MessageAction.DELETE.name()));
 
-        this.messagingTemplate.convertAndSendToUser(
+        this.webSocketOutboxService.publishToUser(
             target.getEmail(), 
             dest,
             wsMsg
         );
     }
+
+    public void publishPresenceDiff(PresenceDiffDTO diff, Integer tenantId) {
+        var topic = getTenantPresenceTopic(tenantId);
+
+        var wsMsg = new WebSocketMessage<PresenceDiffDTO>();
+        wsMsg.setPayload(diff);
+        wsMsg.setEvent("presence:DIFF");
+
+        this.webSocketFanoutService.send(topic, wsMsg);
+    }
+
+    public void publishChannelActivity(ChatActivityDTO activity, Integer tenantId, Integer categoryId) {
+        var topic = getTenantTopic(tenantId, categoryId);
+
+        var wsMsg = new WebSocketMessage<ChatActivityDTO>();
+        wsMsg.setPayload(activity);
+        wsMsg.setEvent(getOrgEventName("ACTIVITY"));
+
+        this.webSocketFanoutService.send(topic, wsMsg);
+    }
+
+    public void publishConvActivity(ChatActivityDTO activity, String targetEmail) {
+        var dest = getUserNotificationsQueue();
+
+        var wsMsg = new WebSocketMessage<ChatActivityDTO>();
+        wsMsg.setPayload(activity);
+        wsMsg.setEvent(getConvEventName("ACTIVITY"));
+
+        this.webSocketFanoutService.sendToUser(
+            targetEmail,
+            dest,
+            wsMsg
+        );
+    }
+
+    private WebSocketMessage<OrgMessageViewDTO> newOrgMessageEvent(OrgMessage message) {
+        var wsMsg = new WebSocketMessage<OrgMessageViewDTO>();
+        wsMsg.setPayload(message.toViewDTO());
+        wsMsg.setEvent(getOrgEventName(MessageAction.CREATE.name()));
+
+        return wsMsg;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.example.multitenant.services.websocket;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * measures the per-session send pressure, spring buffers the frames of a session while a previous send is in progress
+ * and closes the session (SESSION_NOT_RELIABLE) once 'app.websocket.send-buffer-size-limit' or 'send-time-limit' is exceeded.
+ *
+ * the socket write time of each frame is recorded ('app.websocket.session.send'), slow writes are what fill the buffers.
+ * every session tracks its own in-progress write, a session id tag would be one series per connection so the gauges
+ * report the sessions under pressure instead:
+ * - 'app.websocket.session.send.in-flight.max': the bytes of the largest write in progress on a session.
+ * - 'app.websocket.session.send.stalled.max': how long the oldest write in progress on a session has been running.
+ * - 'app.websocket.session.send.busy': the sessions with a write in progress.
+ * the sessions closed because of a full buffer are counted by 'app.websocket.session.overflow'.
+ */
+@Component
+public class WebSocketSessionMetricsDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+    private final Timer sendTimer;
+    private final DistributionSummary frameSizeSummary;
+    private final Counter overflowCounter;
+    private final Map<String, MeteredSession> sessions = new ConcurrentHashMap<>();
+
+    public WebSocketSessionMetricsDecoratorFactory(MeterRegistry meterRegistry) {
+        this.sendTimer = Timer.builder("app.websocket.session.send")
+            .description("time spent writing a frame to a websocket session")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+        this.frameSizeSummary = DistributionSummary.builder("app.websocket.session.frame.size")
+            .description("size of the frames written to the websocket sessions")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.overflowCounter = Counter.builder("app.websocket.session.overflow")
+            .description("websocket sessions closed because their send buffer or send time limit was exceeded")
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.session.send.in-flight.max", this, WebSocketSessionMetricsDecoratorFactory::maxInFlightBytes)
+            .description("bytes of the largest frame currently being written to a websocket session")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.session.send.stalled.max", this, WebSocketSessionMetricsDecoratorFactory::maxStalledSeconds)
+            .description("age of the oldest frame write still in progress on a websocket session")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.session.send.busy", this, WebSocketSessionMetricsDecoratorFactory::busySessions)
+            .description("websocket sessions with a frame write in progress")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+                var metered = new MeteredSession(session);
+                sessions.put(session.getId(), metered);
+                super.afterConnectionEstablished(metered);
+            }
+
+            @Override
+            public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                if (CloseStatus.SESSION_NOT_RELIABLE.equalsCode(closeStatus)) {
+                    overflowCounter.increment();
+                }
+
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    // the gauges are computed when they are scraped, not on the send path
+    private double maxInFlightBytes() {
+        long max = 0;
+        for (var session : this.sessions.values()) {
+            max = Math.max(max, session.inFlightBytes.get());
+        }
+
+        return max;
+    }
+
+    private double maxStalledSeconds() {
+        var now = System.nanoTime();
+        long max = 0;
+        for (var session : this.sessions.values()) {
+            var startedAt = session.writeStartedAt.get();
+            if (startedAt != 0) {
+                max = Math.max(max, now - startedAt);
+            }
+        }
+
+        return max / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private double busySessions() {
+        return this.sessions.values().stream().filter((session) -> session.writeStartedAt.get() != 0).count();
+    }
+
+    private class MeteredSession extends WebSocketSessionDecorator {
+        private final AtomicLong inFlightBytes = new AtomicLong();
+        // 0 when no write is in progress
+        private final AtomicLong writeStartedAt = new AtomicLong();
+
+        private MeteredSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(@NonNull WebSocketMessage<?> message) throws IOException {
+            var size = message.getPayloadLength();
+            this.inFlightBytes.addAndGet(size);
+
+            var start = System.nanoTime();
+            this.writeStartedAt.set(start);
+            try {
+                super.sendMessage(message);
+            } finally {
+                var elapsed = System.nanoTime() - start;
+                this.writeStartedAt.set(0);
+                this.inFlightBytes.addAndGet(-size);
+                sendTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                frameSizeSummary.record(size);
+            }
+        }
+    }
+}
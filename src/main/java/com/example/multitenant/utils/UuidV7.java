@@ -0,0 +1,44 @@
+package com.example.multitenant.utils;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * time-ordered UUIDs (RFC 9562 version 7): 48 bits of unix milliseconds then random bits.
+ * consecutive ids land on the right edge of the primary key b-tree instead of random pages, and ordering by the id
+ * orders by creation time (millisecond precision).
+ */
+public class UuidV7 {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static UUID generate() {
+        return of(System.currentTimeMillis(), RANDOM.nextLong(), RANDOM.nextLong());
+    }
+
+    /**
+     * a version 7 id at the given time whose random bits are taken from the given id, the same inputs always give
+     * the same id (used to re-key existing rows idempotently).
+     */
+    public static UUID fromTimestamp(Instant timestamp, UUID source) {
+        return of(timestamp.toEpochMilli(), source.getMostSignificantBits(), source.getLeastSignificantBits());
+    }
+
+    // the smallest version 7 id of the given time, every id generated at or after it is greater
+    public static UUID lowerBound(Instant timestamp) {
+        return of(timestamp.toEpochMilli(), 0L, 0L);
+    }
+
+    public static Instant timestampOf(UUID id) {
+        return Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16);
+    }
+
+    private static UUID of(long epochMillis, long randomHigh, long randomLow) {
+        // unix_ts_ms (48) | ver (4) | rand_a (12)
+        var msb = (epochMillis << 16) | 0x7000L | (randomHigh & 0x0FFFL);
+        // var (2) | rand_b (62)
+        var lsb = (randomLow & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+        return new UUID(msb, lsb);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.multitenant.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.example.multitenant.utils.UuidV7;
+
+/**
+ * compares the two audit log storages ('app.logs.storage') on a real postgres, it is not a JMH benchmark because the
+ * measured cost is the one of the database: the tables are created in a scratch schema (dropped at the end), the same
+ * 'logs' role assignment logs spread over 'organizations' are inserted in both, then the first page and a deep page of
+ * the audit log of an organization are read 'reads' times.
+ *
+ * JOINED: 'events_logs' (random ids) + 'roles_assignments_logs', the page joins both tables on the id.
+ * JSONB: 'audit_events' (UUIDv7 ids) with the fields in a jsonb payload, the page is one range scan.
+ * the insert time, the read latencies and the size of the tables with their indexes are printed per storage.
+ *
+ * run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.AuditLogStorageBenchmark
+ *   -Durl=jdbc:postgresql://localhost:5432/multitenant -Duser=postgres -Dpassword=postgres -Dlogs=1000000 -Dorganizations=100
+ */
+public class AuditLogStorageBenchmark {
+    private static final String SCHEMA = "audit_logs_bench";
+    private static final int BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 50;
+
+    public static void main(String[] args) throws Exception {
+        var url = System.getProperty("url", "jdbc:postgresql://localhost:5432/multitenant");
+        var user = System.getProperty("user", "postgres");
+        var password = System.getProperty("password", "postgres");
+        var logs = Integer.getInteger("logs", 1_000_000);
+        var organizations = Integer.getInteger("organizations", 100);
+        var reads = Integer.getInteger("reads", 200);
+
+        try (var connection = DriverManager.getConnection(url, user, password)) {
+            execute(connection, "DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            execute(connection, "CREATE SCHEMA " + SCHEMA);
+            execute(connection, "SET search_path TO " + SCHEMA);
+            try {
+                createTables(connection);
+
+                var start = System.nanoTime();
+                insertJoined(connection, logs, organizations);
+                report("JOINED insert", logs, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                insertJsonb(connection, logs, organizations);
+                report("JSONB insert", logs, System.nanoTime() - start);
+
+                execute(connection, "ANALYZE");
+                readPages(connection, "JOINED", organizations, reads, """
+                    SELECT e.id, e.event_type, e.timestamp, r.assigned_from_id, r.assigned_to_id, r.role_id
+                    FROM events_logs e JOIN roles_assignments_logs r ON r.id = e.id
+                    WHERE e.organization_id = ? ORDER BY e.timestamp DESC, e.id DESC OFFSET ? LIMIT ?
+                    """);
+                readPages(connection, "JSONB", organizations, reads, """
+                    SELECT id, event_type, timestamp, payload::text FROM audit_events
+                    WHERE organization_id = ? ORDER BY id DESC OFFSET ? LIMIT ?
+                    """);
+
+                printSize(connection, "JOINED", "events_logs", "roles_assignments_logs");
+                printSize(connection, "JSONB", "audit_events");
+            } finally {
+                execute(connection, "DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            }
+        }
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        execute(connection, """
+            CREATE TABLE events_logs (
+                id UUID PRIMARY KEY,
+                log_type VARCHAR(31) NOT NULL,
+                event_type VARCHAR(50) NOT NULL,
+                timestamp TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                organization_id INTEGER
+            )
+            """);
+        execute(connection, "CREATE INDEX ON events_logs (organization_id, timestamp DESC, id DESC)");
+        execute(connection, """
+            CREATE TABLE roles_assignments_logs (
+                id UUID PRIMARY KEY REFERENCES events_logs (id),
+                organization_id INTEGER,
+                assigned_from_id BIGINT,
+                assigned_to_id BIGINT,
+                role_id INTEGER
+            )
+            """);
+        execute(connection, """
+            CREATE TABLE audit_events (
+                id UUID PRIMARY KEY,
+                organization_id INTEGER,
+                log_type VARCHAR(31) NOT NULL,
+                event_type VARCHAR(50) NOT NULL,
+                timestamp TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                payload JSONB NOT NULL
+            )
+            """);
+        execute(connection, "CREATE INDEX ON audit_events (organization_id, id DESC)");
+    }
+
+    // the same generated logs for both storages: one per millisecond ending now, the organization is round robin
+    private static Instant timestampOf(int index, int logs) {
+        return Instant.now().minusMillis(logs - index);
+    }
+
+    private static void insertJoined(Connection connection, int logs, int organizations) throws SQLException {
+        connection.setAutoCommit(false);
+        try (var base = connection.prepareStatement("INSERT INTO events_logs (id, log_type, event_type, timestamp, organization_id) VALUES (?, ?, ?, ?, ?)");
+            var subtype = connection.prepareStatement("INSERT INTO roles_assignments_logs (id, organization_id, assigned_from_id, assigned_to_id, role_id) VALUES (?, ?, ?, ?, ?)")) {
+
+            for (int i = 0; i < logs; i++) {
+                var id = UUID.randomUUID();
+                var organizationId = i % organizations + 1;
+                base.setObject(1, id);
+                base.setString(2, "ROLE_ASSIGNMENT");
+                base.setString(3, "ROLE_ASSIGNED");
+                base.setTimestamp(4, Timestamp.from(timestampOf(i, logs)));
+                base.setInt(5, organizationId);
+                base.addBatch();
+
+                subtype.setObject(1, id);
+                subtype.setInt(2, organizationId);
+                subtype.setLong(3, i % 1000);
+                subtype.setLong(4, (i + 1) % 1000);
+                subtype.setInt(5, i % 10);
+                subtype.addBatch();
+
+                if ((i + 1) % BATCH_SIZE == 0 || i == logs - 1) {
+                    base.executeBatch();
+                    subtype.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void insertJsonb(Connection connection, int logs, int organizations) throws SQLException {
+        connection.setAutoCommit(false);
+        try (var statement = connection.prepareStatement("""
+            INSERT INTO audit_events (id, organization_id, log_type, event_type, timestamp, payload)
+            VALUES (?, ?, ?, ?, ?, CAST(? AS JSONB))
+            """)) {
+
+            for (int i = 0; i < logs; i++) {
+                var timestamp = timestampOf(i, logs);
+                statement.setObject(1, UuidV7.fromTimestamp(timestamp, UUID.randomUUID()));
+                statement.setInt(2, i % organizations + 1);
+                statement.setString(3, "ROLE_ASSIGNMENT");
+                statement.setString(4, "ROLE_ASSIGNED");
+                statement.setTimestamp(5, Timestamp.from(timestamp));
+                statement.setString(6, """
+                    {"assignedFrom":{"id":%d,"firstName":"first","lastName":"last"},"assignedToId":%d,"roleId":%d,"roleName":"role"}
+                    """.formatted(i % 1000, (i + 1) % 1000, i % 10));
+                statement.addBatch();
+
+                if ((i + 1) % BATCH_SIZE == 0 || i == logs - 1) {
+                    statement.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // the first page then a page 'deep' in the log of a random organization
+    private static void readPages(Connection connection, String storage, int organizations, int reads, String sql) throws SQLException {
+        var firstPages = new ArrayList<Long>(reads);
+        var deepPages = new ArrayList<Long>(reads);
+        try (var statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < reads; i++) {
+                var organizationId = ThreadLocalRandom.current().nextInt(organizations) + 1;
+                firstPages.add(readPage(statement, organizationId, 0));
+                deepPages.add(readPage(statement, organizationId, PAGE_SIZE * 20));
+            }
+        }
+
+        printLatencies(storage + " first page", firstPages);
+        printLatencies(storage + " page 20", deepPages);
+    }
+
+    private static long readPage(PreparedStatement statement, int organizationId, int offset) throws SQLException {
+        var start = System.nanoTime();
+        statement.setInt(1, organizationId);
+        statement.setInt(2, offset);
+        statement.setInt(3, PAGE_SIZE);
+        try (var rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rs.getString(1);
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static void printSize(Connection connection, String storage, String... tables) throws SQLException {
+        var total = 0L;
+        try (var statement = connection.prepareStatement("SELECT pg_total_relation_size(?)")) {
+            for (var table : tables) {
+                statement.setString(1, SCHEMA + "." + table);
+                try (var rs = statement.executeQuery()) {
+                    rs.next();
+                    total += rs.getLong(1);
+                }
+            }
+        }
+
+        System.out.printf("%s size (tables + indexes): %.1f MB%n", storage, total / (1024.0 * 1024.0));
+    }
+
+    private static void report(String label, int logs, long nanos) {
+        var duration = Duration.ofNanos(nanos);
+        System.out.printf("%s: %d logs in %d ms (%.0f logs/s)%n", label, logs, duration.toMillis(), logs / (nanos / 1_000_000_000.0));
+    }
+
+    private static void printLatencies(String label, List<Long> latencies) {
+        latencies.sort(null);
+        System.out.printf("%s: p50=%.2fms p99=%.2fms max=%.2fms%n", label,
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        var index = (int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.multitenant.benchmarks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import com.example.multitenant.dtos.categories.CategoryViewDTO;
+import com.example.multitenant.dtos.organizationroles.OrgRoleCacheDTO;
+import com.example.multitenant.models.enums.CacheCodecFormat;
+import com.example.multitenant.services.cache.CacheValueCodec;
+import com.example.multitenant.services.security.OrgPermissions;
+
+/**
+ * compares the old jdk serialization of the redis caches values with the {@link CacheValueCodec} formats,
+ * with and without lz4 compression, the encoded size per entry is printed on setup of every trial.
+ *
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.CacheCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CacheCodecBenchmark {
+
+    @Param({"JDK", "SMILE", "CBOR"})
+    private String format;
+
+    // 0 disables the lz4 compression
+    @Param({"0", "256"})
+    private int compressionThreshold;
+
+    @Param({"user-roles", "roles-permissions", "categories"})
+    private String payload;
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+    private CacheValueCodec codec;
+    private Object value;
+    private Class<?> valueType;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.value = this.createPayload();
+        this.valueType = this.value.getClass();
+        if (!this.isJdk()) {
+            this.codec = new CacheValueCodec(CacheCodecFormat.valueOf(this.format), this.compressionThreshold);
+        }
+
+        this.encoded = this.encode();
+        System.out.printf("%n[%s/%s/lz4>=%d] bytes per entry: %d%n", this.payload, this.format, this.compressionThreshold, this.encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        if (this.isJdk()) {
+            return this.jdkSerializer.serialize(this.value);
+        }
+
+        return this.codec.encode(this.value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        if (this.isJdk()) {
+            return this.jdkSerializer.deserialize(this.encoded);
+        }
+
+        return this.codec.decode(this.encoded, this.valueType);
+    }
+
+    private boolean isJdk() {
+        return this.format.equals("JDK");
+    }
+
+    private Object createPayload() {
+        return switch (this.payload) {
+            case "user-roles" -> {
+                var roles = new ArrayList<OrgRoleCacheDTO>();
+                for (int i = 1; i <= 5; i++) {
+                    var role = new OrgRoleCacheDTO();
+                    role.setId(i);
+                    role.setName("role-" + i);
+                    roles.add(role);
+                }
+
+                yield roles;
+            }
+            case "roles-permissions" -> {
+                var perms = List.of(OrgPermissions.ROLE_VIEW, OrgPermissions.ROLE_CREATE, OrgPermissions.CATEGORY_VIEW,
+                    OrgPermissions.CHANNEL_CREATE, OrgPermissions.USER_INVITE, OrgPermissions.RESTRICTION_VIEW);
+
+                var map = new HashMap<String, List<String>>();
+                for (int i = 1; i <= 10; i++) {
+                    map.put("role-" + i, new ArrayList<>(perms));
+                }
+
+                yield map;
+            }
+            case "categories" -> {
+                var categories = new ArrayList<CategoryViewDTO>();
+                for (int i = 1; i <= 30; i++) {
+                    categories.add(new CategoryViewDTO(i, "category-" + i, 1, i, Instant.now(), Instant.now()));
+                }
+
+                yield categories;
+            }
+            default -> throw new IllegalArgumentException("unknown payload: " + this.payload);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(CacheCodecBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
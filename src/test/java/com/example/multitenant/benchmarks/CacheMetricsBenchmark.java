@@ -0,0 +1,76 @@
+package com.example.multitenant.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.multitenant.models.enums.StripePlan;
+import com.example.multitenant.services.metrics.CacheMetrics;
+import com.example.multitenant.services.metrics.TenantMetricTags;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * the cost the cache metrics add to every cache lookup (tenant tags and the counter lookup in the registry)
+ * for a tenant request on an auth cache, with and without the opt-in tenant id tag ('tenants' distinct tenants).
+ * the lookup itself is a near cache hit in the 100ns range, the metrics should stay well under it.
+ *
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.CacheMetricsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CacheMetricsBenchmark {
+    @Param({"false", "true"})
+    private boolean tenantIdTag;
+
+    @Param({"100"})
+    private int tenants;
+
+    private CacheMetrics cacheMetrics;
+    private MockHttpServletRequest[] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var tenantMetricTags = new TenantMetricTags(this.tenantIdTag, Duration.ofMinutes(30));
+        this.cacheMetrics = new CacheMetrics(new SimpleMeterRegistry(), tenantMetricTags);
+
+        this.requests = new MockHttpServletRequest[this.tenants];
+        for (int tenant = 0; tenant < this.tenants; tenant++) {
+            tenantMetricTags.rememberTier(tenant, StripePlan.values()[tenant % StripePlan.values().length]);
+            this.requests[tenant] = new MockHttpServletRequest();
+            this.requests[tenant].addHeader("X-Tenant-ID", String.valueOf(tenant));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public void hit() {
+        var tenant = this.next++ % this.tenants;
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(this.requests[tenant]));
+        this.cacheMetrics.hit(CacheMetrics.NEAR_LAYER, "user:roles");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(CacheMetricsBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.multitenant.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.LogFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.example.multitenant.models.enums.WebSocketExecutorMode;
+
+/**
+ * simulates the client inbound channel under a slow database: every message is handled by a handler blocked for
+ * 'dbLatencyMillis' like a @MessageMapping doing jpa work, the measured time is the handling of a burst of
+ * 'sessions' x 'messagesPerSession' messages.
+ *
+ * POOL: the spring default inbound executor (2 x cpus threads), the burst queues behind the blocked threads.
+ * VIRTUAL: a virtual thread per message ('app.websocket.channels.inbound-executor=VIRTUAL').
+ * both preserve the receive order of a session like 'setPreserveReceiveOrder' does, a session out of order fails the run.
+ * the per-message latency percentiles (send -> handled) are printed at the end of each trial.
+ *
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.InboundChannelExecutorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class InboundChannelExecutorBenchmark {
+    private static final String SEQUENCE_HEADER = "sequence";
+    private static final String SENT_AT_HEADER = "sentAt";
+
+    @Param({"POOL", "VIRTUAL"})
+    private WebSocketExecutorMode executor;
+
+    @Param({"5", "50"})
+    private int dbLatencyMillis;
+
+    @Param({"200"})
+    private int sessions;
+
+    @Param({"5"})
+    private int messagesPerSession;
+
+    private ThreadPoolTaskExecutor poolExecutor;
+    private MessageChannel inboundChannel;
+    private final ConcurrentHashMap<String, AtomicInteger> lastSequences = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private volatile CountDownLatch pending;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ExecutorSubscribableChannel channel;
+        if (this.executor == WebSocketExecutorMode.VIRTUAL) {
+            channel = new ExecutorSubscribableChannel(new VirtualThreadTaskExecutor("bench-inbound-"));
+        } else {
+            // same sizing as the spring default inbound channel executor
+            this.poolExecutor = new ThreadPoolTaskExecutor();
+            this.poolExecutor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+            this.poolExecutor.setAllowCoreThreadTimeOut(true);
+            this.poolExecutor.setThreadNamePrefix("bench-inbound-");
+            this.poolExecutor.initialize();
+            channel = new ExecutorSubscribableChannel(this.poolExecutor);
+        }
+
+        channel.subscribe((message) -> {
+            var sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            var sequence = (Integer) message.getHeaders().get(SEQUENCE_HEADER);
+            var last = this.lastSequences.computeIfAbsent(sessionId, (key) -> new AtomicInteger(-1));
+            if (!last.compareAndSet(sequence - 1, sequence)) {
+                throw new IllegalStateException("session " + sessionId + " handled message " + sequence + " out of order");
+            }
+
+            this.sleep(this.dbLatencyMillis);
+
+            this.latencies.add(System.nanoTime() - (Long) message.getHeaders().get(SENT_AT_HEADER));
+            this.pending.countDown();
+        });
+
+        OrderedMessageChannelDecorator.configureInterceptor(channel, true);
+        this.inboundChannel = new OrderedMessageChannelDecorator(channel, LogFactory.getLog(InboundChannelExecutorBenchmark.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        var sorted = new ArrayList<>(this.latencies);
+        sorted.sort(null);
+        System.out.printf("%n%s dbLatency=%dms per-message latency p50=%.1fms p99=%.1fms max=%.1fms%n",
+            this.executor, this.dbLatencyMillis, percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+
+        if (this.poolExecutor != null) {
+            this.poolExecutor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        this.lastSequences.clear();
+        this.pending = new CountDownLatch(this.sessions * this.messagesPerSession);
+
+        for (int sequence = 0; sequence < this.messagesPerSession; sequence++) {
+            for (int session = 0; session < this.sessions; session++) {
+                var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                accessor.setSessionId("session-" + session);
+                accessor.setDestination("/app/conversations/1");
+                accessor.setHeader(SEQUENCE_HEADER, sequence);
+                accessor.setHeader(SENT_AT_HEADER, System.nanoTime());
+                accessor.setLeaveMutable(true);
+
+                this.inboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+            }
+        }
+
+        if (!this.pending.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("the burst was not handled in time");
+        }
+    }
+
+    private void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        var index = (int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(InboundChannelExecutorBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
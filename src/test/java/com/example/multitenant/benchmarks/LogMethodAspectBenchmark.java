@@ -0,0 +1,119 @@
+package com.example.multitenant.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import com.example.multitenant.common.annotations.contract.LogMethod;
+import com.example.multitenant.common.annotations.impl.LogMethodImpl;
+
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * the overhead of the @LogMethod aspect on a cache getter returning the roles with permissions of an organization
+ * ('roles' roles of 'permissionsPerRole' permissions, like AuthCacheService.getOrgRolesWithPermissions).
+ *
+ * NONE: the getter without the aspect.
+ * DISABLED_LEVEL: the aspect with the logger of the class above DEBUG (the production default), only the timer is recorded.
+ * SAMPLED: DEBUG enabled and 1% of the calls logged with the truncated rendering.
+ * EVERY_CALL: DEBUG enabled and every call logged, close to the cost of the previous aspect (INFO and the full toString).
+ * the logs go to the logback appenders of the test classpath, run with the output redirected.
+ *
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.LogMethodAspectBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class LogMethodAspectBenchmark {
+    public enum AspectMode { NONE, DISABLED_LEVEL, SAMPLED, EVERY_CALL }
+
+    @Param({"NONE", "DISABLED_LEVEL", "SAMPLED", "EVERY_CALL"})
+    private AspectMode mode;
+
+    @Param({"20"})
+    private int roles;
+
+    @Param({"30"})
+    private int permissionsPerRole;
+
+    private RolesCache cache;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var permissions = new HashMap<String, List<String>>();
+        for (int role = 0; role < this.roles; role++) {
+            var rolePermissions = new ArrayList<String>();
+            for (int permission = 0; permission < this.permissionsPerRole; permission++) {
+                rolePermissions.add("org-dashboard:permission-" + permission + ":view");
+            }
+
+            permissions.put("role-" + role, rolePermissions);
+        }
+
+        var target = (this.mode == AspectMode.SAMPLED) ? new SampledRolesCache(permissions) : new RolesCache(permissions);
+        var logger = (Logger) LoggerFactory.getLogger(target.getClass());
+        logger.setLevel((this.mode == AspectMode.SAMPLED || this.mode == AspectMode.EVERY_CALL)
+            ? ch.qos.logback.classic.Level.DEBUG : ch.qos.logback.classic.Level.INFO);
+
+        if (this.mode == AspectMode.NONE) {
+            this.cache = target;
+            return;
+        }
+
+        var factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new LogMethodImpl(new SimpleMeterRegistry(), true, List.of()));
+        this.cache = factory.getProxy();
+    }
+
+    @Benchmark
+    public Map<String, List<String>> getOrgRolesWithPermissions() {
+        return this.cache.getOrgRolesWithPermissions(1);
+    }
+
+    public static class RolesCache {
+        private final Map<String, List<String>> permissions;
+
+        public RolesCache(Map<String, List<String>> permissions) {
+            this.permissions = permissions;
+        }
+
+        @LogMethod
+        public Map<String, List<String>> getOrgRolesWithPermissions(Integer orgId) {
+            return this.permissions;
+        }
+    }
+
+    public static class SampledRolesCache extends RolesCache {
+        public SampledRolesCache(Map<String, List<String>> permissions) {
+            super(permissions);
+        }
+
+        @Override
+        @LogMethod(sampleRate = 0.01)
+        public Map<String, List<String>> getOrgRolesWithPermissions(Integer orgId) {
+            return super.getOrgRolesWithPermissions(orgId);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(LogMethodAspectBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.multitenant.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.example.multitenant.services.security.OrgPermissions;
+import com.example.multitenant.services.security.PermissionBits;
+
+/**
+ * compares the old permissions check (building a list of all the user roles permissions then scanning it)
+ * with the bitset check used by {@link com.example.multitenant.services.security.CustomSPEL#hasOrgAuthority}.
+ * 
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.PermissionCheckBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PermissionCheckBenchmark {
+    private static final List<String> ALL_PERMISSIONS = List.of(
+        OrgPermissions.ROLE_VIEW, OrgPermissions.ROLE_CREATE, OrgPermissions.ROLE_UPDATE, OrgPermissions.ROLE_DELETE,
+        OrgPermissions.ROLE_ASSIGN, OrgPermissions.ROLE_UN_ASSIGN, OrgPermissions.PERMISSION_ASSIGN,
+        OrgPermissions.PERMISSION_UN_ASSIGN, OrgPermissions.DASH_ORGANIZATION_UPDATE, OrgPermissions.USER_INVITE,
+        OrgPermissions.USER_KICK, OrgPermissions.TRANSFER_OWNERSHIP, OrgPermissions.CATEGORY_VIEW,
+        OrgPermissions.CATEGORY_CREATE, OrgPermissions.CATEGORY_UPDATE, OrgPermissions.CATEGORY_DELETE,
+        OrgPermissions.CHANNEL_CREATE, OrgPermissions.CHANNEL_UPDATE, OrgPermissions.CHANNEL_DELETE,
+        OrgPermissions.RESTRICTION_VIEW, OrgPermissions.RESTRICTION_CREATE, OrgPermissions.RESTRICTION_UPDATE
+    );
+
+    @Param({"1", "5", "20"})
+    private int rolesCount;
+
+    private Map<String, List<String>> rolesWithPermissions;
+    private Map<String, long[]> rolesBits;
+    private List<String> userRoles;
+
+    // the last permission in the vocabulary is the worst case for the list scan
+    private final String checkedPermission = OrgPermissions.RESTRICTION_UPDATE;
+    private final int checkedPermissionIndex = OrgPermissions.indexOf(OrgPermissions.RESTRICTION_UPDATE);
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        this.rolesWithPermissions = new HashMap<>();
+        this.rolesBits = new HashMap<>();
+        this.userRoles = new ArrayList<>();
+
+        for (int i = 0; i < this.rolesCount; i++) {
+            var roleName = "role-" + i;
+            var perms = new ArrayList<String>();
+            for (var perm : ALL_PERMISSIONS) {
+                if (random.nextBoolean()) {
+                    perms.add(perm);
+                }
+            }
+
+            this.rolesWithPermissions.put(roleName, perms);
+            this.rolesBits.put(roleName, PermissionBits.of(perms));
+            this.userRoles.add(roleName);
+        }
+    }
+
+    @Benchmark
+    public boolean listScan() {
+        var permsList = new ArrayList<String>();
+        for (var role : this.userRoles) {
+            permsList.addAll(this.rolesWithPermissions.get(role));
+        }
+
+        return permsList.stream().anyMatch((perm) -> perm.equals(this.checkedPermission));
+    }
+
+    @Benchmark
+    public boolean bitset() {
+        var bits = PermissionBits.empty();
+        for (var role : this.userRoles) {
+            PermissionBits.orInto(bits, this.rolesBits.get(role));
+        }
+
+        return PermissionBits.has(bits, this.checkedPermissionIndex);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(PermissionCheckBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
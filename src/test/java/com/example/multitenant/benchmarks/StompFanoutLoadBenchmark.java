@@ -0,0 +1,135 @@
+package com.example.multitenant.benchmarks;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * load harness for the websocket broker modes ('app.websocket.broker'), it is not a JMH benchmark because the measured
+ * path spans several running nodes: subscribers are spread over all the given nodes, messages are sent through the first
+ * node only and the delivery latency (send -> receive, measured in this jvm) and the delivery ratio are reported per node.
+ *
+ * with the SIMPLE broker only the subscribers of the first node receive the messages, with REDIS or RELAY all of them should.
+ *
+ * run against each mode with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.StompFanoutLoadBenchmark
+ *   -Dnodes=http://localhost:8080,http://localhost:8081 -Dsession=<SESSION cookie of a member of the tenant>
+ *   -DtenantId=1 -DcategoryId=1 -DchannelId=1 -DsubscribersPerNode=100 -Dmessages=200 -Dmode=REDIS
+ */
+public class StompFanoutLoadBenchmark {
+    private static final String TIMESTAMP_PREFIX = "bench:";
+
+    public static void main(String[] args) throws Exception {
+        var nodes = Arrays.asList(System.getProperty("nodes", "http://localhost:8080").split(","));
+        var session = System.getProperty("session", "");
+        var tenantId = Integer.getInteger("tenantId", 1);
+        var categoryId = Integer.getInteger("categoryId", 1);
+        var channelId = Integer.getInteger("channelId", 1);
+        var subscribersPerNode = Integer.getInteger("subscribersPerNode", 100);
+        var messages = Integer.getInteger("messages", 200);
+        var mode = System.getProperty("mode", "unknown");
+
+        var scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+
+        var stompClient = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setTaskScheduler(scheduler);
+
+        var headers = new WebSocketHttpHeaders();
+        headers.add("Cookie", "SESSION=" + session);
+
+        var topic = "/topic/tenants/" + tenantId + "/categories/" + categoryId;
+        var latencies = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Long>>();
+        var sessions = new ArrayList<StompSession>();
+
+        for (var node : nodes) {
+            var nodeLatencies = new ConcurrentLinkedQueue<Long>();
+            latencies.put(node, nodeLatencies);
+
+            for (int i = 0; i < subscribersPerNode; i++) {
+                var stompSession = stompClient.connectAsync(node + "/ws", headers, new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+                stompSession.subscribe(topic, new LatencyRecorder(nodeLatencies));
+                sessions.add(stompSession);
+            }
+        }
+
+        // lets the subscriptions reach the brokers of all the nodes
+        Thread.sleep(1000);
+
+        var sender = sessions.get(0);
+        var destination = "/app/tenants/" + tenantId + "/categories/" + categoryId + "/channels/" + channelId + "/send";
+        for (int i = 0; i < messages; i++) {
+            sender.send(destination, Map.of("content", TIMESTAMP_PREFIX + System.nanoTime()));
+            Thread.sleep(10);
+        }
+
+        Thread.sleep(3000);
+
+        System.out.printf("broker mode: %s, nodes: %d, subscribers per node: %d, messages: %d%n", mode, nodes.size(), subscribersPerNode, messages);
+        for (var node : nodes) {
+            var sorted = latencies.get(node).stream().sorted().toList();
+            var expected = (long) subscribersPerNode * messages;
+
+            System.out.printf("%s delivered %d/%d (%.1f%%) p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms%n",
+                node, sorted.size(), expected, 100.0 * sorted.size() / expected,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        }
+
+        sessions.forEach(StompSession::disconnect);
+        stompClient.stop();
+        scheduler.shutdown();
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        var index = (int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static class LatencyRecorder implements StompFrameHandler {
+        private final ConcurrentLinkedQueue<Long> latencies;
+
+        private LatencyRecorder(ConcurrentLinkedQueue<Long> latencies) {
+            this.latencies = latencies;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return JsonNode.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            var receivedAt = System.nanoTime();
+            var content = ((JsonNode) payload).path("payload").path("content").asText("");
+            if (!content.startsWith(TIMESTAMP_PREFIX)) {
+                return;
+            }
+
+            this.latencies.add(receivedAt - Long.parseLong(content.substring(TIMESTAMP_PREFIX.length())));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.multitenant.benchmarks;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.multitenant.dtos.messages.OrgMessageViewDTO;
+import com.example.multitenant.dtos.websocket.WebSocketMessage;
+import com.example.multitenant.models.OrgMessage;
+import com.example.multitenant.models.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * simulates a topic with many subscribers on one node: the simple broker fans the message out and every
+ * per-subscriber message is turned into a STOMP frame like the outbound channel does before the socket write.
+ *
+ * perSubscriberEncoding: the json is encoded for every subscriber, what delivering the message to each session on its own
+ * (or re-converting it on every node) costs.
+ * preEncoded: the WebSocketFanoutService path, the json is encoded once and the same byte[] is shared by all the subscribers.
+ * a topic convertAndSend also converts once per publish, on one node it costs the same as preEncoded, the encode-once
+ * gain is the REDIS mode and the outbox handing the same bytes to every node instead of converting again.
+ * the per-frame cost (header encoding) is the same in both and is what remains with many subscribers.
+ *
+ * run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.multitenant.benchmarks.TopicBroadcastBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TopicBroadcastBenchmark {
+    private static final String TOPIC = "/topic/tenants/1/categories/1";
+
+    @Param({"1000", "10000"})
+    private int subscribers;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final StompEncoder stompEncoder = new StompEncoder();
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate messagingTemplate;
+    private WebSocketMessage<OrgMessageViewDTO> wsMessage;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+
+        // synchronous channels, the measured time is the full fan-out of one publish
+        var brokerChannel = new ExecutorSubscribableChannel();
+        MessageChannel clientOutboundChannel = (message, timeout) -> {
+            this.blackhole.consume(this.toFrame(message));
+            return true;
+        };
+
+        this.broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutboundChannel, brokerChannel, List.of("/topic"));
+        this.broker.start();
+
+        for (int i = 0; i < this.subscribers; i++) {
+            var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            accessor.setSessionId("session-" + i);
+            accessor.setSubscriptionId("sub-0");
+            accessor.setDestination(TOPIC);
+            this.broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+        }
+
+        this.messagingTemplate = new SimpMessagingTemplate((message, timeout) -> {
+            this.broker.handleMessage(message);
+            return true;
+        });
+
+        var sender = new User();
+        sender.setId(1L);
+        sender.setFirstName("first");
+        sender.setLastName("last");
+
+        var message = new OrgMessage();
+        message.setId(1);
+        message.setSender(sender);
+        message.setContent("a chat message with a realistic length for a busy category channel");
+        message.setCreatedAt(Instant.now());
+        message.setUpdatedAt(Instant.now());
+        var payload = message.toViewDTO();
+
+        this.wsMessage = new WebSocketMessage<>();
+        this.wsMessage.setEvent("org:CREATE");
+        this.wsMessage.setPayload(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.broker.stop();
+    }
+
+    @Benchmark
+    public void perSubscriberEncoding() throws Exception {
+        for (int i = 0; i < this.subscribers; i++) {
+            var payload = this.objectMapper.writeValueAsBytes(this.wsMessage);
+            this.blackhole.consume(this.toFrame(TOPIC, "sub-0", payload));
+        }
+    }
+
+    @Benchmark
+    public void preEncoded() throws Exception {
+        var accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+
+        this.messagingTemplate.send(TOPIC, MessageBuilder.createMessage(this.objectMapper.writeValueAsBytes(this.wsMessage), accessor.getMessageHeaders()));
+    }
+
+    private byte[] toFrame(Message<?> message) {
+        return this.toFrame(SimpMessageHeaderAccessor.getDestination(message.getHeaders()),
+            SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()), (byte[]) message.getPayload());
+    }
+
+    private byte[] toFrame(String destination, String subscriptionId, byte[] payload) {
+        var accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+
+        return this.stompEncoder.encode(accessor.getMessageHeaders(), payload);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+            .include(TopicBroadcastBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.multitenant.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.*;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import com.example.multitenant.models.enums.CacheCodecFormat;
+import com.example.multitenant.services.cache.CacheAsideLoader.CachedValue;
+import com.example.multitenant.services.cache.CacheValueCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * the codec has no spring dependency, it is built directly with the formats and thresholds under test.
+ */
+public class CacheValueCodecTest {
+    private static final int COMPRESSION_THRESHOLD = 256;
+    // header: [magic, version, format id, flags]
+    private static final int VERSION_INDEX = 1;
+    private static final int FLAGS_INDEX = 3;
+
+    public record Sample(String name, List<Integer> values) {}
+
+    @Test
+    @DisplayName("Should decode the value it encoded in every format")
+    void roundTrip() {
+        var value = new Sample("small", List.of(1, 2, 3));
+        for (var format : CacheCodecFormat.values()) {
+            var codec = new CacheValueCodec(format, COMPRESSION_THRESHOLD);
+            var encoded = codec.encode(value);
+
+            assertEquals(format.getId(), encoded[2]);
+            assertEquals(value, codec.decode(encoded, Sample.class));
+        }
+    }
+
+    @Test
+    @DisplayName("Should decode a value written with another format")
+    void decodesOtherFormat() {
+        var value = new Sample("other format", List.of(4, 5));
+        var smile = new CacheValueCodec(CacheCodecFormat.SMILE, COMPRESSION_THRESHOLD);
+        var cbor = new CacheValueCodec(CacheCodecFormat.CBOR, COMPRESSION_THRESHOLD);
+
+        assertEquals(value, cbor.decode(smile.encode(value), Sample.class));
+        assertEquals(value, smile.decode(cbor.encode(value), Sample.class));
+    }
+
+    @Test
+    @DisplayName("Should decode the cache-aside envelope with its generic value")
+    void roundTripEnvelope() {
+        var codec = new CacheValueCodec(CacheCodecFormat.SMILE, COMPRESSION_THRESHOLD);
+        var envelope = new CachedValue<>(new Sample("envelope", List.of(6)), 12, 34);
+
+        var decoded = codec.decode(codec.encode(envelope), new TypeReference<CachedValue<Sample>>() {});
+
+        assertEquals(envelope, decoded);
+    }
+
+    @Test
+    @DisplayName("Should compress the values above the threshold only")
+    void compressesLargeValues() {
+        var codec = new CacheValueCodec(CacheCodecFormat.SMILE, COMPRESSION_THRESHOLD);
+        var small = new Sample("small", List.of(1));
+        var large = new Sample("large ".repeat(200), IntStream.range(0, 200).map((i) -> i % 4).boxed().toList());
+
+        var encodedSmall = codec.encode(small);
+        var encodedLarge = codec.encode(large);
+        var uncompressedLarge = new CacheValueCodec(CacheCodecFormat.SMILE, 0).encode(large);
+
+        assertEquals(0, encodedSmall[FLAGS_INDEX]);
+        assertEquals(1, encodedLarge[FLAGS_INDEX]);
+        assertEquals(0, uncompressedLarge[FLAGS_INDEX]);
+        assertTrue(encodedLarge.length < uncompressedLarge.length);
+        assertEquals(large, codec.decode(encodedLarge, Sample.class));
+        assertEquals(small, codec.decode(encodedSmall, Sample.class));
+    }
+
+    @Test
+    @DisplayName("Should treat a value of a newer codec version as a miss")
+    void newerVersionIsMiss() {
+        var codec = new CacheValueCodec(CacheCodecFormat.SMILE, COMPRESSION_THRESHOLD);
+        var encoded = codec.encode(new Sample("newer", List.of(1)));
+        encoded[VERSION_INDEX]++;
+
+        assertNull(codec.decode(encoded, Sample.class));
+    }
+
+    @Test
+    @DisplayName("Should treat unknown, legacy and corrupted values as a miss")
+    void undecodableIsMiss() {
+        var codec = new CacheValueCodec(CacheCodecFormat.SMILE, COMPRESSION_THRESHOLD);
+        var legacy = new JdkSerializationRedisSerializer().serialize("legacy value");
+        var encoded = codec.encode(new Sample("corrupted", List.of(1, 2, 3)));
+        var corrupted = Arrays.copyOf(encoded, encoded.length - 3);
+
+        assertNull(codec.decode(new byte[] { 1, 2, 3, 4, 5 }, Sample.class));
+        assertNull(codec.decode(legacy, Sample.class));
+        assertNull(codec.decode(corrupted, Sample.class));
+        assertNull(codec.decode(null, Sample.class));
+    }
+}
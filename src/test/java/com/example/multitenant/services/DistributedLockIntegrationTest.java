@@ -0,0 +1,101 @@
+package com.example.multitenant.services;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.*;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.TestConstructor;
+
+import com.example.multitenant.exceptions.DistributedLockException;
+import com.example.multitenant.services.disributedlock.DistributedLockService;
+import com.example.multitenant.testsupport.utils.BaseIntegrationTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * every test locks its own resource type, the leases are short so the renewals happen within the test.
+ */
+@SpringBootTest
+@RequiredArgsConstructor
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DistributedLockIntegrationTest extends BaseIntegrationTest {
+    private static final Duration LEASE = Duration.ofMillis(300);
+    private static final Duration WAIT = Duration.ofMillis(200);
+
+    private final DistributedLockService distributedLockService;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private Integer orgId;
+
+    @BeforeAll
+    public void setUp() {
+        this.orgId = this.organizations.get(0).getId();
+    }
+
+    @Test
+    @DisplayName("Should keep renewing the lease while the lock is held")
+    void renewsLease() throws InterruptedException {
+        var key = this.distributedLockService.getKey(this.orgId, "renewal");
+
+        try (var lock = this.distributedLockService.acquire(this.orgId, "renewal", LEASE, WAIT)) {
+            Thread.sleep(LEASE.toMillis() * 3);
+
+            assertTrue(lock.isHeld());
+            assertEquals(lock.getOwnerToken(), this.redisTemplate.opsForValue().get(key));
+            assertThrows(DistributedLockException.class, () -> this.distributedLockService.acquire(this.orgId, "renewal", LEASE, WAIT));
+        }
+
+        assertNull(this.redisTemplate.opsForValue().get(key));
+    }
+
+    @Test
+    @DisplayName("Should only release the lock owned by the holder")
+    void releasesOwnLockOnly() {
+        var key = this.distributedLockService.getKey(this.orgId, "owner");
+
+        var lock = this.distributedLockService.acquire(this.orgId, "owner", LEASE, WAIT);
+        // the lease expired and another holder took the lock before this one noticed
+        this.redisTemplate.opsForValue().set(key, "another-owner", Duration.ofSeconds(10));
+        lock.close();
+
+        assertFalse(lock.isHeld());
+
+        assertEquals("another-owner", this.redisTemplate.opsForValue().get(key));
+        this.redisTemplate.delete(key);
+    }
+
+    @Test
+    @DisplayName("Should notice a lost lease when renewing it")
+    void detectsLostLease() throws InterruptedException {
+        var key = this.distributedLockService.getKey(this.orgId, "lost");
+
+        try (var lock = this.distributedLockService.acquire(this.orgId, "lost", LEASE, WAIT)) {
+            this.redisTemplate.opsForValue().set(key, "another-owner", Duration.ofSeconds(10));
+            Thread.sleep(LEASE.toMillis());
+
+            assertFalse(lock.isHeld());
+        }
+
+        assertEquals("another-owner", this.redisTemplate.opsForValue().get(key));
+        this.redisTemplate.delete(key);
+    }
+
+    @Test
+    @DisplayName("Should hand the lock over to a waiter once it is released")
+    void waiterAcquiresAfterRelease() {
+        var lock = this.distributedLockService.acquire(this.orgId, "handover", LEASE, WAIT);
+        lock.close();
+
+        try (var next = this.distributedLockService.acquire(this.orgId, "handover", LEASE, WAIT)) {
+            assertTrue(next.isHeld());
+        }
+    }
+}
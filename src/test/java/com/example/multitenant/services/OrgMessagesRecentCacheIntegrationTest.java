@@ -0,0 +1,185 @@
+package com.example.multitenant.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.*;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestConstructor;
+
+import com.example.multitenant.dtos.messages.OrgMessageHistoryViewDTO;
+import com.example.multitenant.dtos.shared.CursorPage;
+import com.example.multitenant.models.*;
+import com.example.multitenant.repository.OrgMessagesRepository;
+import com.example.multitenant.services.categories.CategoriesService;
+import com.example.multitenant.services.channels.ChannelsService;
+import com.example.multitenant.services.messages.OrgMessagesService;
+import com.example.multitenant.testsupport.utils.BaseIntegrationTest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * the latest page served by the recent messages cache must always be the page postgres returns,
+ * every test reads the history once so the channel window is seeded before the writes.
+ */
+@SpringBootTest
+@RequiredArgsConstructor
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OrgMessagesRecentCacheIntegrationTest extends BaseIntegrationTest {
+    private static final int PAGE_SIZE = 3;
+
+    private final OrgMessagesService orgMessagesService;
+    private final OrgMessagesRepository orgMessagesRepository;
+    private final CategoriesService categoriesService;
+    private final ChannelsService channelsService;
+    private final MeterRegistry meterRegistry;
+
+    private Integer orgId;
+    private Integer categoryId;
+    private User sender;
+    private int channelsCount;
+
+    @BeforeAll
+    public void setUp() {
+        var org = this.organizations.get(0);
+        this.orgId = org.getId();
+        this.sender = org.getOwner();
+
+        var category = new Category();
+        category.setName("recent cache");
+        this.categoryId = this.categoriesService.create(category, this.orgId).getId();
+    }
+
+    @Test
+    @DisplayName("Should serve the latest page from the cache after it was seeded")
+    void servesLatestPageFromCache() {
+        var channelId = this.createChannel();
+        this.createMessages(channelId, 5);
+
+        this.assertMatchesDatabase(channelId);
+        var hitsBefore = this.countHits();
+        this.assertMatchesDatabase(channelId);
+
+        assertTrue(this.countHits() > hitsBefore);
+    }
+
+    @Test
+    @DisplayName("Should include messages created after the seed")
+    void reflectsNewMessages() {
+        var channelId = this.createChannel();
+        this.createMessages(channelId, 5);
+        this.assertMatchesDatabase(channelId);
+
+        var created = this.createMessages(channelId, 1).get(0);
+        var page = this.assertMatchesDatabase(channelId);
+
+        assertEquals(created.getId(), page.getData().get(0).getId());
+    }
+
+    @Test
+    @DisplayName("Should reflect the edited content of a cached message")
+    void reflectsEdits() {
+        var channelId = this.createChannel();
+        var messages = this.createMessages(channelId, 5);
+        this.assertMatchesDatabase(channelId);
+
+        var edited = messages.get(messages.size() - 2);
+        this.orgMessagesService.updateContent(edited.getId(), "edited content", this.sender.getId());
+        var page = this.assertMatchesDatabase(channelId);
+
+        var cached = page.getData().stream().filter((msg) -> msg.getId().equals(edited.getId())).findFirst().orElseThrow();
+        assertEquals("edited content", cached.getContent());
+        assertTrue(cached.getIsUpdated());
+    }
+
+    @Test
+    @DisplayName("Should drop a deleted message from the cached page")
+    void reflectsDeletes() {
+        var channelId = this.createChannel();
+        var messages = this.createMessages(channelId, 5);
+        this.assertMatchesDatabase(channelId);
+
+        var deleted = messages.get(messages.size() - 1);
+        this.orgMessagesService.deleteUserMessage(deleted.getId(), this.sender.getId());
+        var page = this.assertMatchesDatabase(channelId);
+
+        assertFalse(page.getData().stream().anyMatch((msg) -> msg.getId().equals(deleted.getId())));
+    }
+
+    @Test
+    @DisplayName("Should return the whole history once deletes shrink the channel below a full page")
+    void deletesBelowPageSize() {
+        var channelId = this.createChannel();
+        var messages = this.createMessages(channelId, PAGE_SIZE + 1);
+        this.assertMatchesDatabase(channelId);
+
+        for (var message : messages.subList(0, 2)) {
+            this.orgMessagesService.deleteUserMessage(message.getId(), this.sender.getId());
+        }
+
+        var page = this.assertMatchesDatabase(channelId);
+        assertEquals(PAGE_SIZE - 1, page.getData().size());
+        assertFalse(page.isHasNext());
+    }
+
+    // compares the page returned by the service (cache) with the same page read from postgres
+    private CursorPage<OrgMessageHistoryViewDTO, Integer> assertMatchesDatabase(Integer channelId) {
+        var page = this.orgMessagesService.getChannelHistory(channelId, this.orgId, null, null, PAGE_SIZE);
+        var expected = this.orgMessagesRepository.findLatestChannelHistory(channelId, this.orgId, PageRequest.of(0, PAGE_SIZE + 1));
+
+        var expectedHasNext = expected.size() > PAGE_SIZE;
+        if (expectedHasNext) {
+            expected = expected.subList(0, PAGE_SIZE);
+        }
+
+        assertEquals(expectedHasNext, page.isHasNext());
+        assertEquals(expected.size(), page.getData().size());
+        for (int i = 0; i < expected.size(); i++) {
+            var expectedMsg = expected.get(i);
+            var actualMsg = page.getData().get(i);
+
+            assertEquals(expectedMsg.getId(), actualMsg.getId());
+            assertEquals(expectedMsg.getContent(), actualMsg.getContent());
+            assertEquals(expectedMsg.getIsUpdated(), actualMsg.getIsUpdated());
+            assertEquals(expectedMsg.getUser().getId(), actualMsg.getUser().getId());
+        }
+
+        return page;
+    }
+
+    private Integer createChannel() {
+        var channel = new Channel();
+        channel.setName("recent " + (++this.channelsCount));
+
+        return this.channelsService.create(channel, this.orgId, this.categoryId).getId();
+    }
+
+    // oldest first
+    private List<OrgMessage> createMessages(Integer channelId, int count) {
+        var messages = new ArrayList<OrgMessage>();
+        for (int i = 0; i < count; i++) {
+            var message = new OrgMessage();
+            message.setContent("message " + i);
+            message.setSender(this.sender);
+            messages.add(this.orgMessagesService.create(message, channelId, this.orgId));
+        }
+
+        return messages;
+    }
+
+    private double countHits() {
+        return this.meterRegistry.find("app.cache.recent-messages.requests").counters().stream()
+            .filter((counter) -> Set.of("hit", "near-hit").contains(counter.getId().getTag("result")))
+            .mapToDouble((counter) -> counter.count())
+            .sum();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.multitenant.services;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.*;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestConstructor;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.example.multitenant.common.annotations.contract.ValidateSubscriptionLimit;
+import com.example.multitenant.common.annotations.impl.SubscriptionLimitImpl;
+import com.example.multitenant.config.StripePlansConfig;
+import com.example.multitenant.controllers.CategoriesController;
+import com.example.multitenant.dtos.categories.CategoryCreateDTO;
+import com.example.multitenant.exceptions.PlanLimitExceededException;
+import com.example.multitenant.models.enums.StripeLimit;
+import com.example.multitenant.models.enums.StripePlan;
+import com.example.multitenant.services.cache.SubscriptionLimitChecker;
+import com.example.multitenant.services.categories.CategoriesService;
+import com.example.multitenant.services.security.RequestAuthContextService;
+import com.example.multitenant.testsupport.utils.BaseIntegrationTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * the aspect is called directly with a mocked join point and the annotation of the create category handler,
+ * the tenant and the plan of the request are stubbed on the auth context.
+ */
+@SpringBootTest
+@RequiredArgsConstructor
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class SubscriptionLimitCheckerIntegrationTest extends BaseIntegrationTest {
+    private static final String PLAN = StripePlan.FREE.getValue();
+
+    private final SubscriptionLimitChecker subscriptionLimitChecker;
+    private final SubscriptionLimitImpl subscriptionLimitImpl;
+    private final CategoriesService categoriesService;
+    private final StripePlansConfig stripePlansConfig;
+    private final RedisTemplate<String, Long> redisTemplate;
+
+    @MockitoSpyBean
+    private RequestAuthContextService requestAuthContextService;
+
+    private Integer orgId;
+    private String counterKey;
+    private long maxAllowed;
+    private ValidateSubscriptionLimit createCategoryLimit;
+
+    @BeforeAll
+    public void setUp() throws NoSuchMethodException {
+        this.orgId = this.organizations.get(0).getId();
+        this.counterKey = "org:limit-checker:" + this.orgId + ":categories-count";
+        this.maxAllowed = this.stripePlansConfig.getMaxAllowed(StripeLimit.CATEGORIES, StripePlan.FREE);
+        this.createCategoryLimit = CategoriesController.class
+            .getMethod("createCategory", CategoryCreateDTO.class)
+            .getAnnotation(ValidateSubscriptionLimit.class);
+    }
+
+    @BeforeEach
+    public void stubRequest() {
+        doReturn(this.orgId).when(this.requestAuthContextService).getTenantId();
+        doReturn(PLAN).when(this.requestAuthContextService).getPlan();
+        this.redisTemplate.delete(this.counterKey);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        this.redisTemplate.delete(this.counterKey);
+    }
+
+    @Test
+    @DisplayName("Should seed a missing counter from the database when reserving")
+    void seedsMissingCounter() {
+        var count = this.categoriesService.countOrganizationCategories(this.orgId);
+
+        var reserved = this.subscriptionLimitChecker.reserve(this.orgId, PLAN, StripeLimit.CATEGORIES);
+
+        assertEquals(count + 1, reserved);
+        assertEquals(count + 1, this.counter());
+    }
+
+    @Test
+    @DisplayName("Should throw and keep the counter when the plan limit is reached")
+    void throwsWhenLimitReached() {
+        this.subscriptionLimitChecker.setOrgCategoriesCount(this.orgId, this.maxAllowed);
+
+        assertThrows(PlanLimitExceededException.class, () -> this.subscriptionLimitChecker.reserve(this.orgId, PLAN, StripeLimit.CATEGORIES));
+        assertEquals(this.maxAllowed, this.counter());
+    }
+
+    @Test
+    @DisplayName("Should not run the handler when the plan limit is reached")
+    void skipsHandlerWhenLimitReached() throws Throwable {
+        this.subscriptionLimitChecker.setOrgCategoriesCount(this.orgId, this.maxAllowed);
+        var joinPoint = mock(ProceedingJoinPoint.class);
+
+        assertThrows(PlanLimitExceededException.class, () -> this.subscriptionLimitImpl.validateGeneralLimit(joinPoint, this.createCategoryLimit));
+        verify(joinPoint, never()).proceed();
+        assertEquals(this.maxAllowed, this.counter());
+    }
+
+    @Test
+    @DisplayName("Should keep the reservation when the handler succeeds")
+    void keepsReservationOnSuccess() throws Throwable {
+        this.subscriptionLimitChecker.setOrgCategoriesCount(this.orgId, 1);
+        var joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+
+        this.subscriptionLimitImpl.validateGeneralLimit(joinPoint, this.createCategoryLimit);
+
+        assertEquals(2, this.counter());
+    }
+
+    @Test
+    @DisplayName("Should release the reservation when the handler returns an error status")
+    void releasesOnErrorStatus() throws Throwable {
+        this.subscriptionLimitChecker.setOrgCategoriesCount(this.orgId, 1);
+        var joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn(ResponseEntity.badRequest().build());
+
+        this.subscriptionLimitImpl.validateGeneralLimit(joinPoint, this.createCategoryLimit);
+
+        assertEquals(1, this.counter());
+    }
+
+    @Test
+    @DisplayName("Should release the reservation when the handler throws")
+    void releasesOnException() throws Throwable {
+        this.subscriptionLimitChecker.setOrgCategoriesCount(this.orgId, 1);
+        var failure = new IllegalStateException("handler failed");
+        var joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenThrow(failure);
+
+        var thrown = assertThrows(IllegalStateException.class, () -> this.subscriptionLimitImpl.validateGeneralLimit(joinPoint, this.createCategoryLimit));
+
+        assertSame(failure, thrown);
+        assertEquals(1, this.counter());
+    }
+
+    private long counter() {
+        return this.redisTemplate.opsForValue().get(this.counterKey);
+    }
+}
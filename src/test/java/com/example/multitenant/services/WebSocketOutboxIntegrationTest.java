@@ -0,0 +1,90 @@
+package com.example.multitenant.services;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.*;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestConstructor;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.multitenant.services.websocket.WebSocketFanoutService;
+import com.example.multitenant.services.websocket.WebSocketOutboxService;
+import com.example.multitenant.testsupport.utils.BaseIntegrationTest;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * the events are published in a transaction of their own (the one of the test is suspended) so the dispatcher sees
+ * the commit or the rollback, every test uses its own destination.
+ */
+@SpringBootTest
+@RequiredArgsConstructor
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class WebSocketOutboxIntegrationTest extends BaseIntegrationTest {
+    // a few poll intervals of the dispatcher
+    private static final long DISPATCH_WAIT_MS = 3000;
+
+    private final WebSocketOutboxService webSocketOutboxService;
+    private final PlatformTransactionManager transactionManager;
+
+    @MockitoSpyBean
+    private WebSocketFanoutService webSocketFanoutService;
+
+    private TransactionTemplate newTransaction;
+
+    @BeforeAll
+    public void setUp() {
+        this.newTransaction = new TransactionTemplate(this.transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Test
+    @DisplayName("Should deliver the event of a committed write")
+    void deliversCommittedEvent() {
+        var destination = this.newDestination();
+
+        this.newTransaction.executeWithoutResult((status) -> this.webSocketOutboxService.publish(destination, Map.of("event", "committed")));
+
+        verify(this.webSocketFanoutService, timeout(DISPATCH_WAIT_MS).times(1)).sendEncoded(eq(destination), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Should not deliver the event of a rolled back write")
+    void skipsRolledBackEvent() {
+        var destination = this.newDestination();
+
+        this.newTransaction.executeWithoutResult((status) -> {
+            this.webSocketOutboxService.publish(destination, Map.of("event", "rolled back"));
+            status.setRollbackOnly();
+        });
+
+        verify(this.webSocketFanoutService, after(DISPATCH_WAIT_MS).never()).sendEncoded(eq(destination), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should deliver the event of a buffered message without a transaction")
+    void deliversBufferedEvent() {
+        var destination = this.newDestination();
+
+        this.webSocketOutboxService.publishBuffered(destination, Map.of("event", "buffered"));
+
+        verify(this.webSocketFanoutService, timeout(DISPATCH_WAIT_MS).times(1)).sendEncoded(eq(destination), isNull(), any());
+        verify(this.webSocketFanoutService, after(DISPATCH_WAIT_MS).times(1)).sendEncoded(eq(destination), isNull(), any());
+    }
+
+    private String newDestination() {
+        return "/topic/outbox-test/" + UUID.randomUUID();
+    }
+}